@@ -0,0 +1,78 @@
+package com.example.travel.benchmark;
+
+import com.example.travel.util.ConnectionPool;
+import com.example.travel.util.DatabaseUpdater;
+import com.example.travel.util.DatasetGenerator;
+import com.example.travel.util.JobProgress;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * A temporary H2 file database filled with synthetic travel records, shared by the benchmarks.
+ * <p>
+ * The records come from a {@link DatasetGenerator} with a fixed seed, so every run measures the
+ * same data.
+ */
+final class BenchmarkDatabase {
+    static final String[] TAGS = DatasetGenerator.TAGS;
+    private static final long SEED = 42;
+
+    private final Path directory;
+    private final DatasetGenerator generator;
+
+    private BenchmarkDatabase(Path directory, DatasetGenerator generator) {
+        this.directory = directory;
+        this.generator = generator;
+    }
+
+    /**
+     * Creates an empty database with the current schema and points the connection pool at it.
+     */
+    static BenchmarkDatabase create() throws Exception {
+        return create(0, 0, 0);
+    }
+
+    /**
+     * Creates a database holding the given number of synthetic records.
+     *
+     * @param pictureKb The approximate size of each record's picture, or 0 for none
+     * @param plannedShare The fraction of unvisited records marked as planned
+     */
+    static BenchmarkDatabase create(int records, int pictureKb, double plannedShare) throws Exception {
+        Path directory = Files.createTempDirectory("travel-benchmark");
+        ConnectionPool.configure("jdbc:h2:file:" + directory.resolve("travel").toAbsolutePath(), "sa", "", 8);
+        DatabaseUpdater.updateSchema();
+        DatasetGenerator generator = new DatasetGenerator(SEED);
+        generator.setPictureKb(pictureKb);
+        generator.setPlannedShare(plannedShare);
+        generator.populate(0, records, JobProgress.NONE);
+        return new BenchmarkDatabase(directory, generator);
+    }
+
+    /**
+     * The generator that filled the database; records with indexes past the record count are new.
+     */
+    DatasetGenerator generator() {
+        return generator;
+    }
+
+    /**
+     * Closes the connection pool and deletes the database files.
+     */
+    void delete() throws IOException {
+        ConnectionPool.shutdown();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    Path directory() {
+        return directory;
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.travel.benchmark;
+
+import com.example.travel.model.RecordFilter;
+import com.example.travel.model.RecordOrder;
+import com.example.travel.model.State;
+import com.example.travel.model.TravelRecord;
+import com.example.travel.util.PagedRecordList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The record table's filters: the query App.applyFilters runs for the table, which counts the
+ * matching records and loads the first page, and the same filter evaluated in memory, as it is
+ * against each saved record.
+ */
+@org.openjdk.jmh.annotations.State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilterBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    private int records;
+
+    /**
+     * The filter applied: none, a state, a search word, or the default hide-visited with a tag.
+     */
+    @Param({"none", "state", "search", "tag"})
+    private String filter;
+
+    private BenchmarkDatabase database;
+    private RecordFilter recordFilter;
+    private List<TravelRecord> loaded;
+
+    @Setup(Level.Trial)
+    public void createDatabase() throws Exception {
+        database = BenchmarkDatabase.create(records, 0, 0.2);
+        recordFilter = switch (filter) {
+            case "none" -> new RecordFilter();
+            case "state" -> new RecordFilter(null, State.CA, null, false);
+            case "search" -> new RecordFilter("spring", null, null, false);
+            case "tag" -> new RecordFilter(null, null, BenchmarkDatabase.TAGS[0], true);
+            default -> throw new IllegalArgumentException("Unknown filter " + filter);
+        };
+        loaded = TravelRecord.findAll();
+        // Build the search index outside the measurement
+        PagedRecordList.query(new RecordFilter("spring", null, null, false), RecordOrder.NEWEST_FIRST);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteDatabase() throws Exception {
+        database.delete();
+    }
+
+    @Benchmark
+    public PagedRecordList.Contents query() throws Exception {
+        return PagedRecordList.query(recordFilter, RecordOrder.NEWEST_FIRST);
+    }
+
+    @Benchmark
+    public void matches(Blackhole blackhole) {
+        for (TravelRecord record : loaded) {
+            blackhole.consume(recordFilter.matches(record));
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.travel.benchmark;
+
+import com.example.travel.util.WordReportGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generating the planned visits report, with its route and downscaled pictures.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReportBenchmark {
+
+    /**
+     * The number of records, a fifth of which are planned and appear in the report.
+     */
+    @Param({"1000", "5000"})
+    private int records;
+
+    @Param({"0", "100"})
+    private int pictureKb;
+
+    private BenchmarkDatabase database;
+    private String reportFile;
+
+    @Setup(Level.Trial)
+    public void createDatabase() throws Exception {
+        database = BenchmarkDatabase.create(records, pictureKb, 0.2);
+        reportFile = database.directory().resolve("report.docx").toString();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteDatabase() throws Exception {
+        database.delete();
+    }
+
+    @Benchmark
+    public void generatePlannedVisitsReport() throws Exception {
+        WordReportGenerator.generatePlannedVisitsReport(reportFile);
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.travel.benchmark;
+
+import com.example.travel.model.RecordFilter;
+import com.example.travel.model.TravelRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saving and loading single records, and loading every record, against a file database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TravelRecordBenchmark {
+
+    @Param({"1000", "10000"})
+    private int records;
+
+    @Param({"0", "100"})
+    private int pictureKb;
+
+    private BenchmarkDatabase database;
+    private long[] ids;
+    private Random random;
+    private int inserted;
+    private final List<TravelRecord> insertedRecords = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void createDatabase() throws Exception {
+        database = BenchmarkDatabase.create(records, pictureKb, 0.2);
+        ids = TravelRecord.findByFilter(new RecordFilter()).stream().mapToLong(TravelRecord::getId).toArray();
+        random = new Random(7);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteDatabase() throws Exception {
+        database.delete();
+    }
+
+    // Keeps the table at its nominal size from one iteration to the next
+    @TearDown(Level.Iteration)
+    public void deleteInserted() throws Exception {
+        for (TravelRecord record : insertedRecords) {
+            record.delete();
+        }
+        insertedRecords.clear();
+    }
+
+    @Benchmark
+    public TravelRecord saveInsert() throws Exception {
+        TravelRecord record = database.generator().generate(records + inserted++);
+        record.save();
+        insertedRecords.add(record);
+        return record;
+    }
+
+    @Benchmark
+    public TravelRecord saveUpdate() throws Exception {
+        TravelRecord record = TravelRecord.findById(ids[random.nextInt(ids.length)]);
+        record.setNotes("Updated " + random.nextInt());
+        record.save();
+        return record;
+    }
+
+    @Benchmark
+    public TravelRecord saveTogglePlan() throws Exception {
+        TravelRecord record = TravelRecord.findById(ids[random.nextInt(ids.length)]);
+        record.setPlan(!record.getPlan());
+        record.save();
+        return record;
+    }
+
+    @Benchmark
+    public TravelRecord findById() throws Exception {
+        return TravelRecord.findById(ids[random.nextInt(ids.length)]);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<TravelRecord> findAll() throws Exception {
+        return TravelRecord.findAll();
+    }
+}
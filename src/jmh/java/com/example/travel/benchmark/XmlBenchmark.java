@@ -0,0 +1,83 @@
+package com.example.travel.benchmark;
+
+import com.example.travel.model.BulkInsertResult;
+import com.example.travel.util.ConnectionPool;
+import com.example.travel.util.XmlUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exporting every record to XML with its picture side-files, and importing the export back.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class XmlBenchmark {
+
+    @Param({"1000", "10000"})
+    private int records;
+
+    @Param({"0", "100"})
+    private int pictureKb;
+
+    private BenchmarkDatabase database;
+    private File exportFile;
+    private File importFile;
+
+    @Setup(Level.Trial)
+    public void createDatabase() throws Exception {
+        database = BenchmarkDatabase.create(records, pictureKb, 0.2);
+        exportFile = database.directory().resolve("export.xml").toFile();
+        importFile = database.directory().resolve("import.xml").toFile();
+        XmlUtils.exportToXml(importFile);
+    }
+
+    /**
+     * Empties the tables before each import, as the records would otherwise already exist.
+     */
+    @State(Scope.Benchmark)
+    public static class EmptyTables {
+        @Setup(Level.Invocation)
+        public void emptyTables(XmlBenchmark benchmark) throws Exception {
+            try (Connection conn = ConnectionPool.getConnection();
+                 Statement stmt = conn.createStatement()) {
+                stmt.execute("DELETE FROM travel_records");
+                stmt.execute("DELETE FROM pictures");
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteDatabase() throws Exception {
+        database.delete();
+    }
+
+    @Benchmark
+    public BulkInsertResult importFromXml(EmptyTables tables) throws Exception {
+        return XmlUtils.importFromXml(importFile);
+    }
+
+    @Benchmark
+    public int exportToXml() throws Exception {
+        return XmlUtils.exportToXml(exportFile);
+    }
+}
@@ -75,6 +75,7 @@ public class AddRecordDialog extends Dialog<TravelRecord> {
 
         grid.add(new Label("Geo:"), 0, 5);
         grid.add(geoField, 1, 5);
+        geoField.setPromptText("Latitude, longitude");
 
         grid.add(new Label("Pictures:"), 0, 6);
 
@@ -145,9 +146,9 @@ public class AddRecordDialog extends Dialog<TravelRecord> {
                 record.setZip(zipField.getText());
                 record.setPhoneNumber(phoneNumberField.getText());
                 record.setGeo(geoField.getText());
-                record.setPicture(imageDropPane.getImageData());
-                record.setPicture2(imageDropPane2.getImageData());
-                record.setPicture3(imageDropPane3.getImageData());
+                record.setPicture(1, imageDropPane.getImageFile());
+                record.setPicture(2, imageDropPane2.getImageFile());
+                record.setPicture(3, imageDropPane3.getImageFile());
                 record.setNotes(notesField.getText());
                 record.setVisited(visitedCheckBox.isSelected());
                 record.setPlan(planCheckBox.isSelected());
@@ -2,8 +2,7 @@ package com.example.travel;
 
 import com.example.travel.model.TravelRecord;
 import javafx.application.Application;
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
+import javafx.application.Platform;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
@@ -12,42 +11,73 @@ import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Priority;
+import javafx.scene.layout.StackPane;
 import javafx.scene.layout.VBox;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 import java.io.File;
-import java.io.IOException;
-import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
-import java.sql.Statement;
-import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
-import jakarta.xml.bind.JAXBException;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import com.example.travel.components.JobsPanel;
+import com.example.travel.util.ConnectionPool;
+import com.example.travel.util.DebouncedQuery;
+import com.example.travel.util.Job;
+import com.example.travel.util.JobManager;
+import com.example.travel.util.PagedRecordList;
+import com.example.travel.util.PersistenceMetrics;
+import com.example.travel.util.StartupLog;
 import com.example.travel.util.XmlUtils;
 import com.example.travel.util.DatabaseUpdater;
 import com.example.travel.util.WordReportGenerator;
+import com.example.travel.model.BulkInsertResult;
+import com.example.travel.model.DistanceMatrix;
+import com.example.travel.model.RecordCache;
+import com.example.travel.model.RecordFilter;
+import com.example.travel.model.RecordOrder;
 import com.example.travel.model.State;
 import com.example.travel.model.Tag;
 import com.example.travel.model.TravelRecord;
 
 public class App extends Application {
 
-    private static final String DB_URL = "jdbc:h2:file:./traveldb;AUTO_SERVER=TRUE";
-    private static final String DB_USER = "sa";
-    private static final String DB_PASSWORD = "";
     private TableView<TravelRecord> table;
-    private ObservableList<TravelRecord> records;
-    private Connection connection;
-    private TextField descriptionFilter;
+    private PagedRecordList records;
+    private TextField searchFilter;
     private ComboBox<State> stateFilter;
     private ComboBox<String> tagFilter;
     private CheckBox hideVisitedFilter;
+    private DebouncedQuery<PagedRecordList.Contents> filterQuery;
+    private RecordOrder currentOrder = RecordOrder.NEWEST_FIRST;
+    private JobManager jobManager;
+    // Startup work done off the FX thread, and the schema check every query waits for; it
+    // completes exceptionally if the database could not be opened or migrated
+    private final ExecutorService startupExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private CompletableFuture<Void> schemaReady;
+    // Saves and deletes run here rather than on the FX thread, one at a time in the order they were made;
+    // the table follows each change through the record cache listener
+    private final ExecutorService writeExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "record-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private boolean firstPageShown;
 
     @Override
     public void start(Stage stage) {
-        initDatabase();
+        StartupLog.mark("JavaFX started");
+        // Open the database and check its schema while the window is built; the tags and the
+        // first page of records load in parallel once it is ready, and the window shows placeholders
+        schemaReady = CompletableFuture.runAsync(this::initDatabase, startupExecutor);
 
         // Set custom application icon
         try {
@@ -60,6 +90,9 @@ public class App extends Application {
         BorderPane root = new BorderPane();
         root.setPadding(new Insets(10));
 
+        // Exports, imports and reports run in the background and are listed in the jobs panel
+        jobManager = new JobManager();
+
         // Create menu bar
         MenuBar menuBar = new MenuBar();
         Menu fileMenu = new Menu("File");
@@ -75,22 +108,16 @@ public class App extends Application {
             );
             File file = fileChooser.showSaveDialog(stage);
             if (file != null) {
-                try {
-                    List<TravelRecord> records = TravelRecord.findAll();
-                    XmlUtils.exportToXml(records, file);
+                Job<Integer> job = jobManager.submit("Export to " + file.getName(),
+                    progress -> XmlUtils.exportToXml(file, progress));
+                job.setOnSucceeded(event -> {
                     Alert alert = new Alert(Alert.AlertType.INFORMATION);
                     alert.setTitle("Export Successful");
                     alert.setHeaderText(null);
-                    alert.setContentText("Records have been exported successfully.");
+                    alert.setContentText(job.getValue() + " records have been exported successfully.");
                     alert.showAndWait();
-                } catch (JAXBException | SQLException | IOException ex) {
-                    ex.printStackTrace();
-                    Alert alert = new Alert(Alert.AlertType.ERROR);
-                    alert.setTitle("Export Error");
-                    alert.setHeaderText("Could not export records");
-                    alert.setContentText(ex.getMessage());
-                    alert.showAndWait();
-                }
+                });
+                job.setOnFailed(event -> showJobError(job, "Export Error", "Could not export records"));
             }
         });
 
@@ -104,22 +131,24 @@ public class App extends Application {
             );
             File file = fileChooser.showOpenDialog(stage);
             if (file != null) {
-                try {
-                    List<TravelRecord> importedRecords = XmlUtils.importFromXml(file);
+                Job<BulkInsertResult> job = jobManager.submit("Import from " + file.getName(),
+                    progress -> XmlUtils.importFromXml(file, progress));
+                job.setOnSucceeded(event -> {
                     refreshTableData();
+                    BulkInsertResult result = job.getValue();
                     Alert alert = new Alert(Alert.AlertType.INFORMATION);
                     alert.setTitle("Import Successful");
                     alert.setHeaderText(null);
-                    alert.setContentText(importedRecords.size() + " travel records have been imported successfully!");
-                    alert.showAndWait();
-                } catch (Exception ex) {
-                    ex.printStackTrace();
-                    Alert alert = new Alert(Alert.AlertType.ERROR);
-                    alert.setTitle("Import Error");
-                    alert.setHeaderText("Could not import records");
-                    alert.setContentText(ex.getMessage());
+                    alert.setContentText(result.getInserted() + " travel records have been imported successfully!"
+                        + describeFailures(result));
                     alert.showAndWait();
-                }
+                });
+                job.setOnFailed(event -> {
+                    refreshTableData();
+                    showJobError(job, "Import Error", "Could not import records");
+                });
+                // Batches inserted before the import was cancelled are kept
+                job.setOnCancelled(event -> refreshTableData());
             }
         });
 
@@ -131,6 +160,9 @@ public class App extends Application {
             refreshTableData();
         });
 
+        MenuItem diagnosticsMenuItem = new MenuItem("Database Diagnostics");
+        diagnosticsMenuItem.setOnAction(e -> new DiagnosticsDialog(stage).showAndWait());
+
         MenuItem reportMenuItem = new MenuItem("Planned Visits Report");
         reportMenuItem.setOnAction(e -> {
             FileChooser fileChooser = new FileChooser();
@@ -141,39 +173,56 @@ public class App extends Application {
             );
             File file = fileChooser.showSaveDialog(stage);
             if (file != null) {
-                try {
-                    WordReportGenerator.generatePlannedVisitsReport(file.getAbsolutePath());
+                Job<Void> job = jobManager.submit("Report " + file.getName(), progress -> {
+                    WordReportGenerator.generatePlannedVisitsReport(file.getAbsolutePath(), progress);
+                    return null;
+                });
+                job.setOnSucceeded(event -> {
                     Alert alert = new Alert(Alert.AlertType.INFORMATION);
                     alert.setTitle("Report Generated");
                     alert.setHeaderText(null);
                     alert.setContentText("Planned visits report has been generated successfully.");
                     alert.showAndWait();
-                } catch (IOException ex) {
-                    ex.printStackTrace();
-                    Alert alert = new Alert(Alert.AlertType.ERROR);
-                    alert.setTitle("Report Generation Error");
-                    alert.setHeaderText("Could not generate report");
-                    alert.setContentText(ex.getMessage());
-                    alert.showAndWait();
-                }
+                });
+                job.setOnFailed(event -> showJobError(job, "Report Generation Error", "Could not generate report"));
             }
         });
 
-        fileMenu.getItems().addAll(exportMenuItem, importMenuItem, new SeparatorMenuItem(), manageTagsMenuItem);
+        fileMenu.getItems().addAll(exportMenuItem, importMenuItem, new SeparatorMenuItem(), manageTagsMenuItem,
+                diagnosticsMenuItem);
         reportMenu.getItems().add(reportMenuItem);
         menuBar.getMenus().addAll(fileMenu, reportMenu);
         root.setTop(menuBar);
 
         // Create TableView
         table = new TableView<>();
-        records = FXCollections.observableArrayList();
+        // Rows are loaded from the database page by page as they scroll into view
+        records = new PagedRecordList(this::showLoadError);
         table.setItems(records);
+        table.setPlaceholder(new Label("Loading records..."));
+
+        // Filter queries run in the background; only the latest result reaches the table
+        filterQuery = new DebouncedQuery<>(Duration.millis(250), this::showContents, this::showLoadError);
+
+        // Saved records update their own row when it is loaded; other changes reload the visible pages
+        RecordCache.addListener(new RecordCache.Listener() {
+            @Override
+            public void recordSaved(TravelRecord record) {
+                runOnFxThread(() -> records.recordSaved(record));
+            }
+
+            @Override
+            public void recordDeleted(Long id) {
+                runOnFxThread(() -> records.recordDeleted(id));
+            }
+        });
 
         // Double click to edit
         table.setRowFactory(tv -> {
             TableRow<TravelRecord> row = new TableRow<>();
             row.setOnMouseClicked(event -> {
-                if (event.getClickCount() == 2 && !row.isEmpty()) {
+                // Rows whose page is still loading have no item yet
+                if (event.getClickCount() == 2 && !row.isEmpty() && row.getItem() != null) {
                     showEditDialog(stage, row.getItem());
                 }
             });
@@ -185,7 +234,13 @@ public class App extends Application {
         table.setMinWidth(800);
 
         // Create a VBox to hold the table and allow it to grow
-        VBox tableContainer = new VBox(table);
+        // Show a loading indicator over the table while a query runs
+        ProgressIndicator loadingIndicator = new ProgressIndicator();
+        loadingIndicator.setMaxSize(60, 60);
+        loadingIndicator.visibleProperty().bind(filterQuery.runningProperty());
+        StackPane tableStack = new StackPane(table, loadingIndicator);
+        VBox tableContainer = new VBox(tableStack);
+        VBox.setVgrow(tableStack, Priority.ALWAYS);
         VBox.setVgrow(tableContainer, Priority.ALWAYS);
         tableContainer.setFillWidth(true);
 
@@ -271,11 +326,33 @@ public class App extends Application {
         table.getColumns().add(geoCol);
         table.getColumns().add(visitedCol);
         table.getColumns().add(planCol);
+
+        // Rows arrive from the database one page at a time, so sorting happens in the query.
+        // The database columns behind each table column:
+        Map<TableColumn<TravelRecord, ?>, String> sortColumns = Map.of(
+            descCol, "description", tagCol, "tag", urlCol, "url", stateCol, "state", cityCol, "city",
+            addressCol, "address", zipCol, "zip", geoCol, "geo", visitedCol, "visited", planCol, "plan");
+        table.setSortPolicy(tableView -> {
+            List<RecordOrder.Key> keys = new ArrayList<>();
+            for (TableColumn<TravelRecord, ?> column : tableView.getSortOrder()) {
+                keys.add(new RecordOrder.Key(sortColumns.get(column),
+                    column.getSortType() == TableColumn.SortType.ASCENDING));
+            }
+            RecordOrder order = new RecordOrder(keys);
+            if (!order.equals(currentOrder)) {
+                currentOrder = order;
+                // The default sort is set before the filters exist; the initial load picks it up
+                if (searchFilter != null) {
+                    refreshTableData();
+                }
+            }
+            return true;
+        });
         table.getSortOrder().add(descCol); // Default sort by description
 
         // Filter fields
-        descriptionFilter = new TextField();
-        descriptionFilter.setPromptText("Filter by description...");
+        searchFilter = new TextField();
+        searchFilter.setPromptText("Search description, city, address, notes...");
         stateFilter = new ComboBox<>();
         stateFilter.setPromptText("Filter by state...");
         stateFilter.getItems().addAll(State.values());
@@ -284,38 +361,27 @@ public class App extends Application {
         // Tag filter
         tagFilter = new ComboBox<>();
         tagFilter.setPromptText("Filter by tag...");
-        try {
-            List<Tag> tags = Tag.findAll();
-            for (Tag tag : tags) {
-                tagFilter.getItems().add(tag.getTag());
-            }
-            tagFilter.getItems().add(0, null); // Add null option for "All tags"
-        } catch (SQLException e) {
-            e.printStackTrace();
-            Alert alert = new Alert(Alert.AlertType.ERROR);
-            alert.setTitle("Error");
-            alert.setHeaderText("Could not load tags");
-            alert.setContentText(e.getMessage());
-            alert.showAndWait();
-        }
+        tagFilter.getItems().add(null); // Add null option for "All tags"
+        // Skipped if the schema check failed; that failure has been reported already
+        schemaReady.thenRunAsync(this::loadTags, startupExecutor);
 
         // Add Hide Visited checkbox
         hideVisitedFilter = new CheckBox("Hide Visited");
         hideVisitedFilter.setSelected(true); // Set to checked by default
 
         // Add filter listeners
-        descriptionFilter.textProperty().addListener((obs, oldVal, newVal) -> 
-            applyFilters(descriptionFilter, stateFilter, tagFilter, hideVisitedFilter));
+        searchFilter.textProperty().addListener((obs, oldVal, newVal) -> 
+            filterQuery.schedule(recordQuery(searchFilter, stateFilter, tagFilter, hideVisitedFilter)));
         stateFilter.valueProperty().addListener((obs, oldVal, newVal) -> 
-            applyFilters(descriptionFilter, stateFilter, tagFilter, hideVisitedFilter));
+            applyFilters(searchFilter, stateFilter, tagFilter, hideVisitedFilter));
         tagFilter.valueProperty().addListener((obs, oldVal, newVal) -> 
-            applyFilters(descriptionFilter, stateFilter, tagFilter, hideVisitedFilter));
+            applyFilters(searchFilter, stateFilter, tagFilter, hideVisitedFilter));
         hideVisitedFilter.selectedProperty().addListener((obs, oldVal, newVal) -> 
-            applyFilters(descriptionFilter, stateFilter, tagFilter, hideVisitedFilter));
+            applyFilters(searchFilter, stateFilter, tagFilter, hideVisitedFilter));
 
         HBox filterBox = new HBox(10);
         filterBox.getChildren().addAll(
-            new Label("Description:"), descriptionFilter,
+            new Label("Search:"), searchFilter,
             new Label("State:"), stateFilter,
             new Label("Tag:"), tagFilter,
             hideVisitedFilter
@@ -346,17 +412,13 @@ public class App extends Application {
 
                 alert.showAndWait().ifPresent(response -> {
                     if (response == ButtonType.OK) {
-                        try {
-                            selectedRecord.delete();
-                            applyFilters(descriptionFilter, stateFilter, tagFilter, hideVisitedFilter); // Refresh with filters
-                        } catch (SQLException ex) {
-                            ex.printStackTrace();
+                        write(selectedRecord::delete, ex -> {
                             Alert errorAlert = new Alert(Alert.AlertType.ERROR);
                             errorAlert.setTitle("Error");
                             errorAlert.setHeaderText("Could not delete record");
                             errorAlert.setContentText(ex.getMessage());
                             errorAlert.showAndWait();
-                        }
+                        });
                     }
                 });
             }
@@ -390,20 +452,20 @@ public class App extends Application {
         visitToggleButton.setOnAction(e -> {
             TravelRecord selectedRecord = table.getSelectionModel().getSelectedItem();
             if (selectedRecord != null) {
-                // Toggle the plan field
-                selectedRecord.setPlan(!selectedRecord.getPlan());
-                selectedRecord.setDateUpdated(LocalDateTime.now());
-                try {
-                    selectedRecord.save();
-                    refreshTableData();
-                } catch (SQLException ex) {
-                    ex.printStackTrace();
+                // Toggle the plan field on a copy; the table's record changes once the copy is saved.
+                // The copy is taken from the latest saved version, so quick repeated toggles all count.
+                write(() -> {
+                    TravelRecord current = RecordCache.get(selectedRecord.getId());
+                    TravelRecord toggled = (current != null ? current : selectedRecord).copy();
+                    toggled.setPlan(!toggled.getPlan());
+                    toggled.save();
+                }, ex -> {
                     Alert alert = new Alert(Alert.AlertType.ERROR);
                     alert.setTitle("Error");
                     alert.setHeaderText("Could not update record");
                     alert.setContentText(ex.getMessage());
                     alert.showAndWait();
-                }
+                });
             }
         });
 
@@ -416,7 +478,7 @@ public class App extends Application {
         centerBox.getChildren().addAll(filterBox, tableContainer);
 
         root.setCenter(centerBox);
-        root.setBottom(buttonBox);
+        root.setBottom(new VBox(buttonBox, new JobsPanel(jobManager)));
 
         Scene scene = new Scene(root, 1024, 768);
 
@@ -426,159 +488,216 @@ public class App extends Application {
         stage.setScene(scene);
         stage.setTitle("Travel Records");
         stage.show();
+        StartupLog.mark("window shown");
 
         // Load initial data
         refreshTableData();
     }
 
     private void initDatabase() {
+        long start = System.nanoTime();
         try {
-            // Create new table with proper BLOB column
-            connection = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD);
-            Statement stmt = connection.createStatement();
-
-            // Create travel records table if it doesn't exist
-            stmt.execute("CREATE TABLE IF NOT EXISTS travel_records ("
-                + "id BIGINT PRIMARY KEY AUTO_INCREMENT,"
-                + "description VARCHAR(255) UNIQUE NOT NULL,"
-                + "url VARCHAR(1024),"
-                + "state VARCHAR(255),"
-                + "city VARCHAR(255),"
-                + "address VARCHAR(255),"
-                + "zip VARCHAR(10),"
-                + "geo VARCHAR(255),"
-                + "picture BLOB,"
-                + "picture2 BLOB,"
-                + "picture3 BLOB,"
-                + "notes TEXT,"
-                + "date_created TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,"
-                + "date_updated TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,"
-                + "visited BOOLEAN DEFAULT FALSE NOT NULL,"
-                + "plan BOOLEAN DEFAULT FALSE NOT NULL"
-                + ")");
-
-            stmt.close();
-
-            // Update database schema if needed (for existing databases)
+            // Create the tables or bring an existing database's schema up to date
             DatabaseUpdater.updateSchema();
-
-            // Update TravelRecord schema to add picture2 and picture3 columns
-            TravelRecord.updateDatabaseSchema();
+            StartupLog.phase("schema checked", start);
+            PersistenceMetrics.registerMBean();
         } catch (Exception e) {
             e.printStackTrace();
-            Alert alert = new Alert(Alert.AlertType.ERROR);
-            alert.setTitle("Database Error");
-            alert.setHeaderText("Could not initialize database");
-            alert.setContentText(e.getMessage());
-            alert.showAndWait();
+            Platform.runLater(() -> {
+                Alert alert = new Alert(Alert.AlertType.ERROR);
+                alert.setTitle("Database Error");
+                alert.setHeaderText("Could not initialize database");
+                alert.setContentText(e.getMessage());
+                alert.showAndWait();
+            });
+            // Fail schemaReady, so the work waiting for it does not run against a broken schema
+            throw new CompletionException(e);
         }
     }
 
-    private void showAddDialog(Stage owner) {
-        AddRecordDialog dialog = new AddRecordDialog(owner);
-        dialog.showAndWait().ifPresent(record -> {
-            try {
-                record.save();
-                refreshTableData();
-            } catch (SQLException e) {
-                e.printStackTrace();
+    private void loadTags() {
+        long start = System.nanoTime();
+        try {
+            List<Tag> tags = Tag.findAll();
+            StartupLog.phase("tags loaded", start);
+            Platform.runLater(() -> {
+                for (Tag tag : tags) {
+                    tagFilter.getItems().add(tag.getTag());
+                }
+            });
+        } catch (SQLException e) {
+            e.printStackTrace();
+            Platform.runLater(() -> {
                 Alert alert = new Alert(Alert.AlertType.ERROR);
                 alert.setTitle("Error");
-                if (e.getMessage().contains("description already exists")) {
-                    alert.setHeaderText("Duplicate Description");
-                    alert.setContentText("A record with this description already exists. Please use a different description.");
-                } else {
-                    alert.setHeaderText("Could not save record");
-                    alert.setContentText(e.getMessage());
-                }
+                alert.setHeaderText("Could not load tags");
+                alert.setContentText(e.getMessage());
                 alert.showAndWait();
+            });
+        }
+    }
+
+    private void showContents(PagedRecordList.Contents contents) {
+        records.setContents(contents);
+        if (!firstPageShown) {
+            firstPageShown = true;
+            table.setPlaceholder(null);
+            StartupLog.mark("first page of records shown");
+        }
+    }
+
+    // Summarizes the records an import skipped, listing the first few
+    private static String describeFailures(BulkInsertResult result) {
+        List<BulkInsertResult.Failure> failures = result.getFailures();
+        if (failures.isEmpty()) {
+            return "";
+        }
+        StringBuilder text = new StringBuilder("\n\n" + failures.size() + " records were skipped:");
+        failures.stream().limit(10).forEach(failure ->
+            text.append("\n").append(failure.description()).append(": ").append(failure.reason()));
+        if (failures.size() > 10) {
+            text.append("\n...");
+        }
+        return text.toString();
+    }
+
+    private static void showJobError(Job<?> job, String title, String header) {
+        Throwable e = job.getException();
+        if (e != null) {
+            e.printStackTrace();
+        }
+        Alert alert = new Alert(Alert.AlertType.ERROR);
+        alert.setTitle(title);
+        alert.setHeaderText(header);
+        alert.setContentText(e != null ? e.getMessage() : null);
+        alert.showAndWait();
+    }
+
+    private void showAddDialog(Stage owner) {
+        AddRecordDialog dialog = new AddRecordDialog(owner);
+        dialog.showAndWait().ifPresent(record -> write(record::save, e -> {
+            Alert alert = new Alert(Alert.AlertType.ERROR);
+            alert.setTitle("Error");
+            if (e.getMessage() != null && e.getMessage().contains("description already exists")) {
+                alert.setHeaderText("Duplicate Description");
+                alert.setContentText("A record with this description already exists. Please use a different description.");
+            } else {
+                alert.setHeaderText("Could not save record");
+                alert.setContentText(e.getMessage());
             }
-        });
+            alert.showAndWait();
+        }));
     }
 
     private void showEditDialog(Stage owner, TravelRecord record) {
         EditRecordDialog dialog = new EditRecordDialog(owner, record);
-        dialog.showAndWait().ifPresent(result -> {
+        dialog.showAndWait().ifPresent(result -> write(result::save, e -> {
+            Alert alert = new Alert(Alert.AlertType.ERROR);
+            alert.setTitle("Error");
+            if (e.getMessage() != null && e.getMessage().contains("description already exists")) {
+                alert.setHeaderText("Duplicate Description");
+                alert.setContentText("A record with this description already exists. Please use a different description.");
+            } else {
+                alert.setHeaderText("Could not save record");
+                alert.setContentText(e.getMessage());
+            }
+            alert.showAndWait();
+        }));
+    }
+
+    /**
+     * A save or delete of records.
+     */
+    @FunctionalInterface
+    private interface RecordWrite {
+        void run() throws SQLException;
+    }
+
+    // Runs a write on the writer thread; a failure is passed to onError on the FX thread
+    private void write(RecordWrite write, Consumer<Exception> onError) {
+        writeExecutor.execute(() -> {
             try {
-                result.save();
-                refreshTableData();
-            } catch (SQLException e) {
+                write.run();
+            } catch (SQLException | RuntimeException e) {
                 e.printStackTrace();
-                Alert alert = new Alert(Alert.AlertType.ERROR);
-                alert.setTitle("Error");
-                if (e.getMessage().contains("description already exists")) {
-                    alert.setHeaderText("Duplicate Description");
-                    alert.setContentText("A record with this description already exists. Please use a different description.");
-                } else {
-                    alert.setHeaderText("Could not save record");
-                    alert.setContentText(e.getMessage());
-                }
-                alert.showAndWait();
+                Platform.runLater(() -> onError.accept(e));
             }
         });
     }
 
-    private void applyFilters(TextField descriptionFilter, ComboBox<State> stateFilter, ComboBox<String> tagFilter, CheckBox hideVisitedFilter) {
-        String descriptionText = descriptionFilter.getText().toLowerCase().trim();
-        State selectedState = stateFilter.getValue();
-        String selectedTag = tagFilter.getValue();
-        boolean hideVisited = hideVisitedFilter.isSelected();
+    private void applyFilters(TextField searchFilter, ComboBox<State> stateFilter, ComboBox<String> tagFilter, CheckBox hideVisitedFilter) {
+        filterQuery.run(recordQuery(searchFilter, stateFilter, tagFilter, hideVisitedFilter));
+    }
 
-        try {
-            List<TravelRecord> allRecords = TravelRecord.findAll();
-            List<TravelRecord> filteredRecords = allRecords.stream()
-                .filter(record -> 
-                    (descriptionText.isEmpty() || 
-                     record.getDescription().toLowerCase().contains(descriptionText)) &&
-                    (selectedState == null || 
-                     (record.getState() != null && 
-                      record.getState().equals(selectedState.name()))) &&
-                    (selectedTag == null ||
-                     (record.getTag() != null &&
-                      record.getTag().equals(selectedTag))) &&
-                    (!hideVisited || record.getVisited() == null || !record.getVisited())
-                )
-                .collect(Collectors.toList());
-
-            table.setItems(FXCollections.observableArrayList(filteredRecords));
-        } catch (SQLException e) {
-            e.printStackTrace();
-            Alert alert = new Alert(Alert.AlertType.ERROR);
-            alert.setTitle("Error");
-            alert.setHeaderText("Could not load records");
-            alert.setContentText(e.getMessage());
-            alert.showAndWait();
+    // Captures the current filter values on the FX thread and returns the query to run in the background
+    private Callable<PagedRecordList.Contents> recordQuery(TextField searchFilter, ComboBox<State> stateFilter, ComboBox<String> tagFilter, CheckBox hideVisitedFilter) {
+        RecordFilter filter = new RecordFilter(searchFilter.getText(), stateFilter.getValue(),
+            tagFilter.getValue(), hideVisitedFilter.isSelected());
+        RecordOrder order = currentOrder;
+        return () -> {
+            try {
+                schemaReady.join();
+            } catch (CompletionException e) {
+                // The database is unusable and has been reported; show an empty table
+                return new PagedRecordList.Contents(filter, order, 0, List.of());
+            }
+            return PagedRecordList.query(filter, order);
+        };
+    }
+
+    private static void runOnFxThread(Runnable action) {
+        if (Platform.isFxApplicationThread()) {
+            action.run();
+        } else {
+            Platform.runLater(action);
         }
     }
 
+    private void showLoadError(Throwable e) {
+        e.printStackTrace();
+        Alert alert = new Alert(Alert.AlertType.ERROR);
+        alert.setTitle("Error");
+        alert.setHeaderText("Could not load records");
+        alert.setContentText(e.getMessage());
+        alert.showAndWait();
+    }
+
     private void refreshTableData() {
-        try {
-            // Instead of just loading all records, apply the current filters
-            if (descriptionFilter != null && stateFilter != null && tagFilter != null && hideVisitedFilter != null) {
-                applyFilters(descriptionFilter, stateFilter, tagFilter, hideVisitedFilter);
-            } else {
-                // This will only happen before the UI is fully initialized
-                records.clear();
-                records.addAll(TravelRecord.findAll());
-            }
-        } catch (Exception e) {
-            Alert alert = new Alert(Alert.AlertType.ERROR);
-            alert.setTitle("Error");
-            alert.setHeaderText("Could not load records");
-            alert.setContentText(e.getMessage());
-            alert.showAndWait();
-        }
+        // Reload the table with the current filters applied
+        applyFilters(searchFilter, stateFilter, tagFilter, hideVisitedFilter);
     }
 
     @Override
     public void stop() {
+        // Let a schema migration still running finish; interrupting it would close the database mid-step
+        startupExecutor.shutdown();
         try {
-            if (connection != null && !connection.isClosed()) {
-                connection.close();
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
+            schemaReady.join();
+        } catch (CompletionException e) {
+            // Already reported when it failed
+        }
+        if (filterQuery != null) {
+            filterQuery.shutdown();
+        }
+        if (jobManager != null) {
+            jobManager.shutdown();
+        }
+        // Finish the saves and deletes already made before the connections close
+        writeExecutor.shutdown();
+        try {
+            writeExecutor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (records != null) {
+            records.shutdown();
+        }
+        DistanceMatrix.save();
+        if (Boolean.getBoolean("travel.db.metrics.logOnExit")) {
+            System.out.println("Connection pool: " + ConnectionPool.getInstance().getMetrics());
+            System.out.println(PersistenceMetrics.report());
         }
+        ConnectionPool.shutdown();
     }
 
     public static void main(String[] args) {
@@ -0,0 +1,105 @@
+package com.example.travel;
+
+import com.example.travel.util.ConnectionPool;
+import com.example.travel.util.PersistenceMetrics;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.control.*;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
+import javafx.stage.Modality;
+import javafx.stage.Stage;
+
+import java.util.Locale;
+import java.util.function.Function;
+
+/**
+ * Shows how long the database operations have taken since the application started, and lets
+ * the slow query log threshold be changed.
+ */
+public class DiagnosticsDialog extends Dialog<Void> {
+    private final TableView<PersistenceMetrics.Summary> operationsTable = new TableView<>();
+    private final ObservableList<PersistenceMetrics.Summary> operations = FXCollections.observableArrayList();
+    private final Label totalsLabel = new Label();
+    private final Label poolLabel = new Label();
+
+    public DiagnosticsDialog(Stage owner) {
+        setTitle("Database Diagnostics");
+        setHeaderText("Time spent in database operations; latencies in milliseconds");
+        initModality(Modality.WINDOW_MODAL);
+        initOwner(owner);
+
+        BorderPane mainPane = new BorderPane();
+        mainPane.setPadding(new Insets(10));
+
+        operationsTable.setItems(operations);
+        operationsTable.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY_FLEX_LAST_COLUMN);
+        TableColumn<PersistenceMetrics.Summary, String> nameColumn = new TableColumn<>("Operation");
+        nameColumn.setCellValueFactory(cellData -> new SimpleStringProperty(cellData.getValue().name()));
+        nameColumn.setPrefWidth(170);
+        operationsTable.getColumns().add(nameColumn);
+        operationsTable.getColumns().add(column("Count", summary -> String.valueOf(summary.count())));
+        operationsTable.getColumns().add(column("Mean", summary -> millis(summary.meanMillis())));
+        operationsTable.getColumns().add(column("p50", summary -> millis(summary.p50Millis())));
+        operationsTable.getColumns().add(column("p95", summary -> millis(summary.p95Millis())));
+        operationsTable.getColumns().add(column("p99", summary -> millis(summary.p99Millis())));
+        operationsTable.getColumns().add(column("Max", summary -> millis(summary.maxMillis())));
+        operationsTable.getColumns().add(column("Statements", summary -> String.valueOf(summary.statements())));
+        operationsTable.getColumns().add(column("Rows", summary -> String.valueOf(summary.rowsRead())));
+        operationsTable.getColumns().add(column("BLOB bytes", summary -> String.valueOf(summary.blobBytesRead())));
+
+        // The slow query threshold applies from the next statement on
+        Spinner<Integer> slowQuerySpinner = new Spinner<>(0, 60_000,
+                (int) Math.min(60_000, PersistenceMetrics.getSlowQueryMillis()), 50);
+        slowQuerySpinner.setPrefWidth(100);
+        slowQuerySpinner.valueProperty().addListener((obs, oldValue, newValue) ->
+                PersistenceMetrics.setSlowQueryMillis(newValue));
+        HBox slowQueryBox = new HBox(10, new Label("Log statements slower than (ms, 0 for none):"), slowQuerySpinner);
+        slowQueryBox.setAlignment(Pos.CENTER_LEFT);
+
+        Button refreshButton = new Button("Refresh");
+        refreshButton.setOnAction(e -> refresh());
+        Button resetButton = new Button("Reset");
+        resetButton.setOnAction(e -> {
+            PersistenceMetrics.reset();
+            refresh();
+        });
+        HBox buttonBox = new HBox(10, refreshButton, resetButton);
+
+        VBox infoPane = new VBox(10, totalsLabel, poolLabel, slowQueryBox, buttonBox);
+        infoPane.setPadding(new Insets(10, 0, 0, 0));
+
+        mainPane.setCenter(operationsTable);
+        mainPane.setBottom(infoPane);
+
+        refresh();
+
+        getDialogPane().setContent(mainPane);
+        getDialogPane().setPrefSize(900, 500);
+        getDialogPane().getButtonTypes().add(ButtonType.CLOSE);
+        setResultConverter(dialogButton -> null);
+    }
+
+    private void refresh() {
+        operations.setAll(PersistenceMetrics.summaries());
+        totalsLabel.setText(String.format(Locale.ROOT, "Statements: %d   Rows read: %d   BLOB bytes read: %d",
+                PersistenceMetrics.getStatements(), PersistenceMetrics.getRowsRead(), PersistenceMetrics.getBlobBytesRead()));
+        poolLabel.setText("Connection pool: " + ConnectionPool.getInstance().getMetrics());
+    }
+
+    private static TableColumn<PersistenceMetrics.Summary, String> column(
+            String title, Function<PersistenceMetrics.Summary, String> value) {
+        TableColumn<PersistenceMetrics.Summary, String> column = new TableColumn<>(title);
+        column.setCellValueFactory(cellData -> new SimpleStringProperty(value.apply(cellData.getValue())));
+        column.setStyle("-fx-alignment: CENTER-RIGHT;");
+        return column;
+    }
+
+    private static String millis(double millis) {
+        return String.format(Locale.ROOT, "%.3f", millis);
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.travel;
 
+import com.example.travel.model.PictureStore;
 import com.example.travel.model.State;
 import com.example.travel.model.TravelRecord;
 import javafx.geometry.Insets;
@@ -63,9 +64,10 @@ public class EditRecordDialog extends Dialog<TravelRecord> {
         phoneNumberField.setText(record.getPhoneNumber());
         geoField.setText(record.getGeo());
         notesArea.setText(record.getNotes());
-        imageDropPane.setImageData(record.getPicture());
-        imageDropPane2.setImageData(record.getPicture2());
-        imageDropPane3.setImageData(record.getPicture3());
+        // Show thumbnails of the stored pictures; the full-size pictures are only loaded if they are replaced
+        showStoredPicture(imageDropPane, record.getPictureHash(1));
+        showStoredPicture(imageDropPane2, record.getPictureHash(2));
+        showStoredPicture(imageDropPane3, record.getPictureHash(3));
         visitedCheckBox.setSelected(record.getVisited() != null ? record.getVisited() : false);
         planCheckBox.setSelected(record.getPlan() != null ? record.getPlan() : false);
 
@@ -108,9 +110,9 @@ public class EditRecordDialog extends Dialog<TravelRecord> {
         phoneNumberField.textProperty().addListener((obs, oldVal, newVal) -> setHasChanges(true));
         geoField.textProperty().addListener((obs, oldVal, newVal) -> setHasChanges(true));
         notesArea.textProperty().addListener((obs, oldVal, newVal) -> setHasChanges(true));
-        imageDropPane.imageDataProperty().addListener((obs, oldVal, newVal) -> setHasChanges(true));
-        imageDropPane2.imageDataProperty().addListener((obs, oldVal, newVal) -> setHasChanges(true));
-        imageDropPane3.imageDataProperty().addListener((obs, oldVal, newVal) -> setHasChanges(true));
+        imageDropPane.imageFileProperty().addListener((obs, oldVal, newVal) -> setHasChanges(true));
+        imageDropPane2.imageFileProperty().addListener((obs, oldVal, newVal) -> setHasChanges(true));
+        imageDropPane3.imageFileProperty().addListener((obs, oldVal, newVal) -> setHasChanges(true));
         visitedCheckBox.selectedProperty().addListener((obs, oldVal, newVal) -> setHasChanges(true));
         planCheckBox.selectedProperty().addListener((obs, oldVal, newVal) -> setHasChanges(true));
         tagComboBox.valueProperty().addListener((obs, oldVal, newVal) -> setHasChanges(true));
@@ -144,6 +146,7 @@ public class EditRecordDialog extends Dialog<TravelRecord> {
 
         grid.add(new Label("Geo:"), 0, 6);
         grid.add(geoField, 1, 6);
+        geoField.setPromptText("Latitude, longitude");
         geoField.setText(record.getGeo());
 
         grid.add(new Label("Pictures:"), 0, 7);
@@ -185,27 +188,39 @@ public class EditRecordDialog extends Dialog<TravelRecord> {
         // Convert the result to TravelRecord object when save is clicked
         setResultConverter(dialogButton -> {
             if (dialogButton == saveButtonType && hasChanges) {
-                record.setDescription(descriptionField.getText());
-                record.setUrl(urlField.getText());
-                record.setState(stateComboBox.getValue() != null ? stateComboBox.getValue().name() : null);
-                record.setCity(cityField.getText());
-                record.setAddress(addressField.getText());
-                record.setZip(zipField.getText());
-                record.setPhoneNumber(phoneNumberField.getText());
-                record.setGeo(geoField.getText());
-                record.setNotes(notesArea.getText());
-                record.setPicture(imageDropPane.getImageData());
-                record.setPicture2(imageDropPane2.getImageData());
-                record.setPicture3(imageDropPane3.getImageData());
-                record.setVisited(visitedCheckBox.isSelected());
-                record.setPlan(planCheckBox.isSelected());
-                record.setTag(tagComboBox.getValue());
-                return record;
+                // Edit a copy; the shared record only changes once the copy is saved
+                TravelRecord edited = record.copy();
+                edited.setDescription(descriptionField.getText());
+                edited.setUrl(urlField.getText());
+                edited.setState(stateComboBox.getValue() != null ? stateComboBox.getValue().name() : null);
+                edited.setCity(cityField.getText());
+                edited.setAddress(addressField.getText());
+                edited.setZip(zipField.getText());
+                edited.setPhoneNumber(phoneNumberField.getText());
+                edited.setGeo(geoField.getText());
+                edited.setNotes(notesArea.getText());
+                if (imageDropPane.isImageChanged()) {
+                    edited.setPicture(1, imageDropPane.getImageFile());
+                }
+                if (imageDropPane2.isImageChanged()) {
+                    edited.setPicture(2, imageDropPane2.getImageFile());
+                }
+                if (imageDropPane3.isImageChanged()) {
+                    edited.setPicture(3, imageDropPane3.getImageFile());
+                }
+                edited.setVisited(visitedCheckBox.isSelected());
+                edited.setPlan(planCheckBox.isSelected());
+                edited.setTag(tagComboBox.getValue());
+                return edited;
             }
             return null;
         });
     }
 
+    private static void showStoredPicture(ImageDropPane pane, String hash) {
+        pane.setStoredPicture(hash, () -> PictureStore.find(hash));
+    }
+
     private void setHasChanges(boolean changed) {
         hasChanges = changed;
         Node saveButton = getDialogPane().lookupButton(saveButtonType);
@@ -1,5 +1,6 @@
 package com.example.travel.components;
 
+import javafx.application.Platform;
 import javafx.geometry.Pos;
 import javafx.scene.control.Label;
 import javafx.scene.image.Image;
@@ -10,11 +11,9 @@ import javafx.scene.input.TransferMode;
 import javafx.scene.layout.VBox;
 import javafx.stage.FileChooser;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.IOException;
-import java.nio.file.Files;
-import java.util.function.Consumer;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
 
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleObjectProperty;
@@ -22,8 +21,11 @@ import javafx.beans.property.SimpleObjectProperty;
 public class ImageDropPane extends VBox {
     private final ImageView imageView;
     private final Label promptLabel;
-    private final ObjectProperty<byte[]> imageData = new SimpleObjectProperty<>();
-    private Consumer<byte[]> onImageChanged;
+    // The picked file is only referenced; the record streams it into the database when saved
+    private final ObjectProperty<Path> imageFile = new SimpleObjectProperty<>();
+    private boolean imageChanged;
+    // Identifies the latest background thumbnail load; older loads are ignored when they finish
+    private Object pendingLoad;
 
     public ImageDropPane() {
         setAlignment(Pos.CENTER);
@@ -31,8 +33,8 @@ public class ImageDropPane extends VBox {
         setStyle("-fx-border-color: #cccccc; -fx-border-style: dashed; -fx-border-width: 2; -fx-padding: 10;");
 
         imageView = new ImageView();
-        imageView.setFitHeight(200);
-        imageView.setFitWidth(200);
+        imageView.setFitHeight(ThumbnailCache.THUMBNAIL_SIZE);
+        imageView.setFitWidth(ThumbnailCache.THUMBNAIL_SIZE);
         imageView.setPreserveRatio(true);
 
         promptLabel = new Label("Drag and drop an image here or click to choose");
@@ -52,11 +54,7 @@ public class ImageDropPane extends VBox {
             );
             File file = fileChooser.showOpenDialog(getScene().getWindow());
             if (file != null) {
-                try {
-                    setImageData(Files.readAllBytes(file.toPath()));
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
+                setImageFile(file);
             }
         });
     }
@@ -76,42 +74,85 @@ public class ImageDropPane extends VBox {
             String filename = file.getName().toLowerCase();
             if (filename.endsWith(".png") || filename.endsWith(".jpg") || 
                 filename.endsWith(".jpeg") || filename.endsWith(".gif")) {
-                try {
-                    setImageData(Files.readAllBytes(file.toPath()));
-                    success = true;
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
+                setImageFile(file);
+                success = true;
             }
         }
         event.setDropCompleted(success);
         event.consume();
     }
 
-    public void setImageData(byte[] data) {
-        this.imageData.set(data);
-        if (data != null && data.length > 0) {
-            Image image = new Image(new ByteArrayInputStream(data));
-            imageView.setImage(image);
+    private void setImageFile(File file) {
+        pendingLoad = null;
+        imageChanged = true;
+        imageFile.set(file.toPath());
+        // Let JavaFX decode the file in the background, straight to preview size
+        showImage(new Image(file.toURI().toString(),
+            ThumbnailCache.THUMBNAIL_SIZE, ThumbnailCache.THUMBNAIL_SIZE, true, true, true));
+    }
+
+    /**
+     * Shows a picture that is already stored, without loading its bytes on the FX thread.
+     * The thumbnail comes from the {@link ThumbnailCache}, or is fetched and decoded in the background.
+     * {@link #getImageFile()} stays null until the user picks a different image.
+     *
+     * @param hash The stored picture's content hash, or null if there is no picture
+     * @param source Supplies the full-size picture bytes if the thumbnail is not cached
+     */
+    public void setStoredPicture(String hash, Callable<byte[]> source) {
+        pendingLoad = null;
+        imageChanged = false;
+        imageFile.set(null);
+        if (hash == null) {
+            showImage(null);
+            return;
+        }
+        Image cached = ThumbnailCache.get(hash);
+        if (cached != null) {
+            showImage(cached);
+            return;
+        }
+
+        Object load = new Object();
+        pendingLoad = load;
+        imageView.setImage(null);
+        promptLabel.setText("Loading image...");
+        ThumbnailCache.load(hash, source).whenComplete((thumbnail, error) -> Platform.runLater(() -> {
+            if (pendingLoad != load) {
+                return;
+            }
+            pendingLoad = null;
+            if (error != null) {
+                System.err.println("Could not load picture " + hash + ": " + error.getMessage());
+            }
+            showImage(thumbnail);
+        }));
+    }
+
+    private void showImage(Image image) {
+        imageView.setImage(image);
+        if (image != null) {
             promptLabel.setText("Click or drag to change image");
         } else {
-            imageView.setImage(null);
             promptLabel.setText("Drag and drop an image here or click to choose");
         }
-        if (onImageChanged != null) {
-            onImageChanged.accept(data);
-        }
     }
 
-    public byte[] getImageData() {
-        return imageData.get();
+    /**
+     * Whether the user has picked an image since the pane was filled with a stored picture.
+     */
+    public boolean isImageChanged() {
+        return imageChanged;
     }
 
-    public ObjectProperty<byte[]> imageDataProperty() {
-        return imageData;
+    /**
+     * The image file the user picked, or null if they have not picked one.
+     */
+    public Path getImageFile() {
+        return imageFile.get();
     }
 
-    public void setOnImageChanged(Consumer<byte[]> handler) {
-        this.onImageChanged = handler;
+    public ObjectProperty<Path> imageFileProperty() {
+        return imageFile;
     }
 }
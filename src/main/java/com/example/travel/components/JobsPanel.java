@@ -0,0 +1,89 @@
+package com.example.travel.components;
+
+import com.example.travel.util.Job;
+import com.example.travel.util.JobManager;
+import javafx.beans.binding.Bindings;
+import javafx.collections.ListChangeListener;
+import javafx.concurrent.Worker;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Lists the jobs of a {@link JobManager} with their progress, and lets the user cancel them
+ * or dismiss them once they have finished. The panel hides itself while there are no jobs.
+ */
+public class JobsPanel extends VBox {
+    private final JobManager jobManager;
+    private final Map<Job<?>, HBox> rows = new HashMap<>();
+
+    public JobsPanel(JobManager jobManager) {
+        this.jobManager = jobManager;
+        setSpacing(5);
+        setPadding(new Insets(10, 0, 0, 0));
+        visibleProperty().bind(Bindings.isNotEmpty(jobManager.getJobs()));
+        managedProperty().bind(visibleProperty());
+
+        jobManager.getJobs().addListener((ListChangeListener<Job<?>>) change -> {
+            while (change.next()) {
+                change.getRemoved().forEach(job -> getChildren().remove(rows.remove(job)));
+                change.getAddedSubList().forEach(this::addRow);
+            }
+        });
+        jobManager.getJobs().forEach(this::addRow);
+    }
+
+    private void addRow(Job<?> job) {
+        Label titleLabel = new Label(job.getTitle());
+        titleLabel.setMinWidth(180);
+
+        ProgressBar progressBar = new ProgressBar();
+        progressBar.setPrefWidth(200);
+        progressBar.progressProperty().bind(job.progressProperty());
+
+        Label messageLabel = new Label();
+        messageLabel.textProperty().bind(job.messageProperty());
+        messageLabel.setMaxWidth(Double.MAX_VALUE);
+        HBox.setHgrow(messageLabel, Priority.ALWAYS);
+
+        Button button = new Button("Cancel");
+        button.setOnAction(e -> {
+            if (job.isDone()) {
+                jobManager.dismiss(job);
+            } else if (job.cancel() && !job.isDone()) {
+                // Stays disabled until the job has stopped and can be dismissed
+                button.setDisable(true);
+            }
+        });
+
+        job.stateProperty().addListener((obs, oldState, newState) -> {
+            if (newState == Worker.State.SUCCEEDED || newState == Worker.State.FAILED
+                    || newState == Worker.State.CANCELLED) {
+                progressBar.progressProperty().unbind();
+                progressBar.setProgress(newState == Worker.State.SUCCEEDED ? 1 : 0);
+                button.setText("Dismiss");
+                button.setDisable(false);
+            }
+            if (newState == Worker.State.FAILED) {
+                messageLabel.textProperty().unbind();
+                messageLabel.setText("Failed: " + (job.getException() != null ? job.getException().getMessage() : "unknown error"));
+            } else if (newState == Worker.State.CANCELLED) {
+                messageLabel.textProperty().unbind();
+                messageLabel.setText("Cancelled");
+            }
+        });
+
+        HBox row = new HBox(10, titleLabel, progressBar, messageLabel, button);
+        row.setAlignment(Pos.CENTER_LEFT);
+        rows.put(job, row);
+        getChildren().add(row);
+    }
+}
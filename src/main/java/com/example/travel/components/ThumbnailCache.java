@@ -0,0 +1,89 @@
+package com.example.travel.components;
+
+import javafx.scene.image.Image;
+
+import java.io.ByteArrayInputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Downscaled previews of stored pictures, decoded in the background and kept in a bounded LRU cache.
+ * <p>
+ * Thumbnails are keyed by the picture's content hash, so records sharing an image share its
+ * thumbnail and an entry can never go stale. The cache holds at most
+ * {@code travel.thumbnails.cacheSize} thumbnails (default 200).
+ */
+public final class ThumbnailCache {
+    public static final int THUMBNAIL_SIZE = 200;
+
+    private static final int MAX_ENTRIES = Integer.getInteger("travel.thumbnails.cacheSize", 200);
+
+    private static final AtomicInteger threadCount = new AtomicInteger();
+
+    // Decoding a full-size photo needs a lot of memory, so only a couple run at once
+    private static final ExecutorService decoder = Executors.newFixedThreadPool(2, runnable -> {
+        Thread thread = new Thread(runnable, "thumbnail-decoder-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final Map<String, Image> thumbnails = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Image> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    private ThumbnailCache() {
+    }
+
+    /**
+     * Returns the cached thumbnail for a picture, or null if it has not been loaded yet.
+     */
+    public static synchronized Image get(String hash) {
+        return thumbnails.get(hash);
+    }
+
+    /**
+     * Loads the thumbnail for a picture, fetching and decoding it in the background if it is not cached.
+     *
+     * @param hash The picture's content hash
+     * @param source Supplies the full-size picture bytes; called on a background thread
+     * @return The thumbnail, or null if the source has no picture
+     */
+    public static CompletableFuture<Image> load(String hash, Callable<byte[]> source) {
+        Image cached = get(hash);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                byte[] data = source.call();
+                if (data == null || data.length == 0) {
+                    return null;
+                }
+                Image thumbnail = decode(data);
+                synchronized (ThumbnailCache.class) {
+                    thumbnails.put(hash, thumbnail);
+                }
+                return thumbnail;
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, decoder);
+    }
+
+    /**
+     * Decodes picture bytes straight to thumbnail size, without materializing the full-size image.
+     * May be called on any thread.
+     */
+    public static Image decode(byte[] data) {
+        return new Image(new ByteArrayInputStream(data), THUMBNAIL_SIZE, THUMBNAIL_SIZE, true, true);
+    }
+}
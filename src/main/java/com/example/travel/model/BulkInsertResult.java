@@ -0,0 +1,47 @@
+package com.example.travel.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a bulk insert: how many records were inserted and why the others were rejected.
+ */
+public class BulkInsertResult {
+
+    /**
+     * A record that could not be inserted.
+     *
+     * @param description The record's description
+     * @param reason Why it was rejected
+     */
+    public record Failure(String description, String reason) {
+    }
+
+    private int inserted;
+    private final List<Failure> failures = new ArrayList<>();
+
+    public int getInserted() {
+        return inserted;
+    }
+
+    public List<Failure> getFailures() {
+        return Collections.unmodifiableList(failures);
+    }
+
+    /**
+     * Adds the counts and failures of another result to this one.
+     */
+    public void add(BulkInsertResult other) {
+        inserted += other.inserted;
+        failures.addAll(other.failures);
+    }
+
+    void addInserted(int count) {
+        inserted += count;
+    }
+
+    void addFailure(String description, String reason) {
+        failures.add(new Failure(description, reason));
+    }
+}
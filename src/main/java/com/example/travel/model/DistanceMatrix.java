@@ -0,0 +1,388 @@
+package com.example.travel.model;
+
+import com.example.travel.util.ConnectionPool;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The great-circle distances between every pair of stops, where a stop is a planned, not yet
+ * visited record with a location.
+ * <p>
+ * Each stop has a slot, and the distances are kept in one square {@code double[]} indexed by slot,
+ * so a lookup is an array read. When a stop is added or moves, only its row and column are
+ * computed again; a record that stops being a stop just gives up its slot for the next one.
+ * The number of stops kept is limited by the {@code travel.distances.maxStops} system property
+ * (default 2000, 32 MB of distances); distances to stops beyond it are computed when asked for.
+ * <p>
+ * The matrix is built on first use and kept up to date by {@link TravelRecord#save()},
+ * {@link TravelRecord#delete()} and {@link TravelRecord#insertAll}. It is written next to a file
+ * database, as {@code <database>.distances}, by {@link #save()}; when it is next built, the
+ * distances between stops that have not moved are read back rather than computed.
+ */
+public final class DistanceMatrix {
+    private static final int MAX_STOPS = Integer.getInteger("travel.distances.maxStops", 2000);
+    private static final int FILE_MAGIC = 0x54444d31; // "TDM1"
+
+    private static final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private static final Map<Long, Integer> slotsById = new HashMap<>();
+    private static final BitSet live = new BitSet();
+    private static long[] ids = new long[0];
+    private static GeoPoint[] points = new GeoPoint[0];
+    // The distance between the stops in slots a and b is at a * capacity + b, and at b * capacity + a
+    private static double[] distances = new double[0];
+    private static int capacity;
+    private static boolean changed;
+    private static volatile boolean built;
+    // Held while the table is scanned, so only one thread builds the matrix
+    private static final Object buildLock = new Object();
+    // While the table is scanned, the stops saved meanwhile: their location, or null if no longer a stop
+    private static Map<Long, GeoPoint> pending;
+
+    private DistanceMatrix() {
+    }
+
+    /**
+     * Writes the distances between located records into a square array. Distances between stops
+     * are copied from the matrix; the others are computed from the records' locations.
+     *
+     * @param records Records that all have a location
+     * @param target Receives the distance between records i and j at {@code i * stride + j}
+     * @param stride The row length of the target
+     */
+    static void copy(List<TravelRecord> records, double[] target, int stride) throws SQLException {
+        ensureBuilt();
+        int n = records.size();
+        int[] slots = new int[n];
+        GeoPoint[] locations = new GeoPoint[n];
+        lock.readLock().lock();
+        try {
+            for (int i = 0; i < n; i++) {
+                TravelRecord record = records.get(i);
+                Integer slot = record.getId() != null ? slotsById.get(record.getId()) : null;
+                locations[i] = record.getLocation();
+                // Only trust the matrix if the record is where the matrix has it
+                slots[i] = slot != null && points[slot].equals(locations[i]) ? slot : -1;
+            }
+            for (int i = 0; i < n; i++) {
+                for (int j = i + 1; j < n; j++) {
+                    double distance = slots[i] >= 0 && slots[j] >= 0
+                            ? distances[slots[i] * capacity + slots[j]]
+                            : locations[i].distanceMiles(locations[j]);
+                    target[i * stride + j] = distance;
+                    target[j * stride + i] = distance;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds, moves or drops a saved record's stop as its plan, visited flag and location require.
+     */
+    static void update(TravelRecord record) {
+        GeoPoint location = record.getLocation();
+        boolean stop = Boolean.TRUE.equals(record.getPlan()) && !Boolean.TRUE.equals(record.getVisited())
+                && location != null;
+        apply(record.getId(), stop ? location : null);
+    }
+
+    /**
+     * Drops a deleted record's stop.
+     */
+    static void remove(Long id) {
+        apply(id, null);
+    }
+
+    // Sets where a record's stop is, or with a null location that it is not a stop
+    private static void apply(Long id, GeoPoint location) {
+        lock.writeLock().lock();
+        try {
+            // Until the matrix is built there is nothing to update; a build in progress replays the change
+            if (!built) {
+                if (pending != null) {
+                    pending.put(id, location);
+                }
+                return;
+            }
+            Integer slot = slotsById.get(id);
+            if (location == null) {
+                if (slot != null) {
+                    removeSlot(id, slot);
+                }
+            } else if (slot == null) {
+                addStop(id, location);
+            } else if (!points[slot].equals(location)) {
+                points[slot] = location;
+                computeRow(slot);
+                changed = true;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the matrix next to the database, if it is a file database and the matrix changed
+     * since it was read or last written.
+     */
+    public static void save() {
+        Path file = file();
+        lock.writeLock().lock();
+        try {
+            if (!built || !changed || file == null) {
+                return;
+            }
+            int[] slots = live.stream().toArray();
+            Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+            ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(
+                    8 + slots.length * 24L + (long) slots.length * (slots.length - 1) / 2 * 8));
+            buffer.putInt(FILE_MAGIC).putInt(slots.length);
+            for (int slot : slots) {
+                buffer.putLong(ids[slot]).putDouble(points[slot].latitude()).putDouble(points[slot].longitude());
+            }
+            // Distances are symmetric; only the upper triangle is written, a row at a time
+            DoubleBuffer triangle = buffer.slice().asDoubleBuffer();
+            double[] row = new double[slots.length];
+            for (int i = 0; i < slots.length; i++) {
+                for (int j = i + 1; j < slots.length; j++) {
+                    row[j] = distances[slots[i] * capacity + slots[j]];
+                }
+                triangle.put(row, i + 1, slots.length - i - 1);
+            }
+            buffer.rewind();
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            changed = false;
+        } catch (IOException e) {
+            System.err.println("Error saving distance matrix: " + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static void ensureBuilt() throws SQLException {
+        if (built) {
+            return;
+        }
+        synchronized (buildLock) {
+            if (!built) {
+                build();
+            }
+        }
+    }
+
+    // Scans the table without holding the lock, so saves are not held up, then installs the stops
+    private static void build() throws SQLException {
+        long start = System.nanoTime();
+        lock.writeLock().lock();
+        try {
+            pending = new LinkedHashMap<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        Map<Long, GeoPoint> scanned = new LinkedHashMap<>();
+        try {
+            RecordFilter stops = new RecordFilter();
+            stops.setPlannedOnly(true);
+            stops.setHideVisited(true);
+            TravelRecord.forEach(stops, false, record -> {
+                GeoPoint location = record.getLocation();
+                if (location != null && scanned.size() < MAX_STOPS) {
+                    scanned.put(record.getId(), location);
+                }
+            });
+        } catch (SQLException | RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                pending = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+
+        lock.writeLock().lock();
+        try {
+            scanned.forEach(DistanceMatrix::assignSlot);
+            // Records saved during the scan may have been read as they were before
+            for (Map.Entry<Long, GeoPoint> change : pending.entrySet()) {
+                Integer slot = slotsById.get(change.getKey());
+                GeoPoint location = change.getValue();
+                if (slot != null && (location == null || !points[slot].equals(location))) {
+                    removeSlot(change.getKey(), slot);
+                }
+                if (location != null && !slotsById.containsKey(change.getKey()) && slotsById.size() < MAX_STOPS) {
+                    // A freed slot may still hold the distances of the stop that had it
+                    computeRow(assignSlot(change.getKey(), location));
+                }
+            }
+            pending = null;
+            int read = readSaved();
+            // Compute whatever the saved matrix did not cover
+            int computed = 0;
+            for (int slot = live.nextSetBit(0); slot >= 0; slot = live.nextSetBit(slot + 1)) {
+                for (int other = live.nextSetBit(slot + 1); other >= 0; other = live.nextSetBit(other + 1)) {
+                    if (Double.isNaN(distances[slot * capacity + other])) {
+                        setDistance(slot, other, points[slot].distanceMiles(points[other]));
+                        computed++;
+                    }
+                }
+            }
+            changed = computed > 0 || read != slotsById.size();
+            built = true;
+            System.out.println("Built distance matrix for " + slotsById.size() + " planned stops in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms (" + computed + " distances computed)");
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Copies the saved distances between stops that are still stops at the same location.
+     *
+     * @return The number of stops in the saved matrix
+     */
+    private static int readSaved() {
+        Path file = file();
+        if (file == null) {
+            return 0;
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+            if (buffer.remaining() < 8 || buffer.getInt() != FILE_MAGIC) {
+                System.err.println("Ignoring unrecognized distance matrix " + file);
+                return 0;
+            }
+            int count = buffer.getInt();
+            // The current slot of each saved stop, or -1 if it is no longer a stop there
+            int[] slots = new int[count];
+            for (int i = 0; i < count; i++) {
+                Integer slot = slotsById.get(buffer.getLong());
+                double latitude = buffer.getDouble();
+                double longitude = buffer.getDouble();
+                slots[i] = slot != null && points[slot].latitude() == latitude
+                        && points[slot].longitude() == longitude ? slot : -1;
+            }
+            DoubleBuffer triangle = buffer.slice().asDoubleBuffer();
+            double[] row = new double[count];
+            for (int i = 0; i < count; i++) {
+                triangle.get(row, i + 1, count - i - 1);
+                if (slots[i] < 0) {
+                    continue;
+                }
+                for (int j = i + 1; j < count; j++) {
+                    if (slots[j] >= 0) {
+                        setDistance(slots[i], slots[j], row[j]);
+                    }
+                }
+            }
+            return count;
+        } catch (NoSuchFileException e) {
+            return 0;
+        } catch (IOException | BufferUnderflowException e) {
+            // A damaged file only costs computing the distances again
+            System.err.println("Error reading distance matrix: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    // The matrix file next to a file database, or null for an in-memory or remote one
+    private static Path file() {
+        String url = ConnectionPool.getInstance().getUrl();
+        if (!url.startsWith("jdbc:h2:")) {
+            return null;
+        }
+        String database = url.substring("jdbc:h2:".length()).split(";", 2)[0];
+        if (database.startsWith("file:")) {
+            database = database.substring("file:".length());
+        } else if (database.matches("(mem|tcp|ssl|zip|nio\\w*|split|async|memFS|memLZF):.*")) {
+            return null;
+        }
+        if (database.startsWith("~")) {
+            database = System.getProperty("user.home") + database.substring(1);
+        }
+        return Paths.get(database + ".distances");
+    }
+
+    private static void addStop(Long id, GeoPoint location) {
+        if (slotsById.size() >= MAX_STOPS) {
+            return;
+        }
+        int slot = assignSlot(id, location);
+        computeRow(slot);
+        changed = true;
+    }
+
+    private static int assignSlot(Long id, GeoPoint location) {
+        int slot = live.nextClearBit(0);
+        if (slot == capacity) {
+            grow(Math.max(16, Math.min(capacity * 2, MAX_STOPS)));
+        }
+        ids[slot] = id;
+        points[slot] = location;
+        setDistance(slot, slot, 0);
+        live.set(slot);
+        slotsById.put(id, slot);
+        return slot;
+    }
+
+    private static void removeSlot(Long id, int slot) {
+        slotsById.remove(id);
+        live.clear(slot);
+        points[slot] = null;
+        changed = true;
+    }
+
+    private static void computeRow(int slot) {
+        for (int other = live.nextSetBit(0); other >= 0; other = live.nextSetBit(other + 1)) {
+            if (other != slot) {
+                setDistance(slot, other, points[slot].distanceMiles(points[other]));
+            }
+        }
+    }
+
+    private static void setDistance(int a, int b, double distance) {
+        distances[a * capacity + b] = distance;
+        distances[b * capacity + a] = distance;
+    }
+
+    // Widens the rows; distances not yet known are NaN
+    private static void grow(int newCapacity) {
+        double[] grown = new double[newCapacity * newCapacity];
+        Arrays.fill(grown, Double.NaN);
+        for (int row = 0; row < capacity; row++) {
+            System.arraycopy(distances, row * capacity, grown, row * newCapacity, capacity);
+        }
+        ids = Arrays.copyOf(ids, newCapacity);
+        points = Arrays.copyOf(points, newCapacity);
+        distances = grown;
+        capacity = newCapacity;
+    }
+
+}
@@ -0,0 +1,121 @@
+package com.example.travel.model;
+
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A position on the earth in decimal degrees, as parsed from a travel record's free-form geo field.
+ *
+ * @param latitude Degrees north of the equator, from -90 to 90
+ * @param longitude Degrees east of Greenwich, from -180 to 180
+ */
+public record GeoPoint(double latitude, double longitude) {
+
+    public static final double EARTH_RADIUS_MILES = 3958.8;
+
+    // Decimal degrees, or degrees, minutes and seconds
+    private static final String DEGREES = "([-+]?\\d{1,3}(?:\\.\\d+)?)\\s*"
+            + "(?:[°º]\\s*(?:(\\d{1,2}(?:\\.\\d+)?)\\s*['′]\\s*(?:(\\d{1,2}(?:\\.\\d+)?)\\s*(?:\"|″|'')\\s*)?)?)?";
+    // One coordinate, with an optional hemisphere before or after but not both; a letter between
+    // two numbers belongs to the second when the first coordinate's hemisphere came before it
+    private static final String COORDINATE = "(?:([NSEW])\\s*" + DEGREES + "|" + DEGREES + "([NSEW])?)";
+    // The number of groups in COORDINATE
+    private static final int GROUPS = 8;
+    private static final Pattern PAIR = Pattern.compile(
+            "\\s*" + COORDINATE + "\\s*[,;/\\s]\\s*" + COORDINATE + "\\s*", Pattern.CASE_INSENSITIVE);
+    // The position in a map link, such as https://www.google.com/maps/@36.0544,-112.1401,12z
+    private static final Pattern MAP_LINK = Pattern.compile("@([-+]?\\d{1,3}\\.\\d+),([-+]?\\d{1,3}\\.\\d+)");
+
+    public GeoPoint {
+        if (!(latitude >= -90 && latitude <= 90) || !(longitude >= -180 && longitude <= 180)) {
+            throw new IllegalArgumentException("Not a position on the earth: " + latitude + ", " + longitude);
+        }
+    }
+
+    /**
+     * Reads a position written as latitude and longitude, such as {@code 36.0544, -112.1401},
+     * {@code 36.0544 N 112.1401 W} or {@code 36°3'15.8"N 112°8'24.4"W}, or as a map link
+     * containing {@code @latitude,longitude}. Coordinates marked E or W first are taken as
+     * longitude first.
+     *
+     * @return The position, or null if the text is empty or not a recognizable position
+     */
+    public static GeoPoint parse(String text) {
+        if (text == null || text.isBlank()) {
+            return null;
+        }
+        Matcher link = MAP_LINK.matcher(text);
+        if (link.find()) {
+            return of(Double.parseDouble(link.group(1)), Double.parseDouble(link.group(2)));
+        }
+        String position = text.strip();
+        if (position.regionMatches(true, 0, "geo:", 0, 4)) {
+            position = position.substring(4);
+        }
+        Matcher pair = PAIR.matcher(position);
+        if (!pair.matches()) {
+            return null;
+        }
+        String firstHemisphere = hemisphere(pair, 1);
+        String secondHemisphere = hemisphere(pair, 1 + GROUPS);
+        double first = degrees(pair, 1, firstHemisphere);
+        double second = degrees(pair, 1 + GROUPS, secondHemisphere);
+        boolean longitudeFirst = "E".equals(firstHemisphere) || "W".equals(firstHemisphere)
+                || "N".equals(secondHemisphere) || "S".equals(secondHemisphere);
+        return longitudeFirst ? of(second, first) : of(first, second);
+    }
+
+    /**
+     * The great-circle distance to another position, by the haversine formula.
+     */
+    public double distanceMiles(GeoPoint other) {
+        double dLatitude = Math.toRadians(other.latitude - latitude);
+        double dLongitude = Math.toRadians(other.longitude - longitude);
+        double a = Math.pow(Math.sin(dLatitude / 2), 2)
+                + Math.cos(Math.toRadians(latitude)) * Math.cos(Math.toRadians(other.latitude))
+                * Math.pow(Math.sin(dLongitude / 2), 2);
+        return 2 * EARTH_RADIUS_MILES * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%.6f, %.6f", latitude, longitude);
+    }
+
+    /**
+     * The position as a well-known-text point, longitude first, for the location column.
+     */
+    String toWkt() {
+        return "POINT (" + longitude + " " + latitude + ")";
+    }
+
+    private static GeoPoint of(double latitude, double longitude) {
+        return latitude >= -90 && latitude <= 90 && longitude >= -180 && longitude <= 180
+                ? new GeoPoint(latitude, longitude) : null;
+    }
+
+    // The hemisphere letter of the coordinate whose groups start at the given index, if any
+    private static String hemisphere(Matcher pair, int group) {
+        String letter = pair.group(group) != null ? pair.group(group) : pair.group(group + 7);
+        return letter != null ? letter.toUpperCase(Locale.ROOT) : null;
+    }
+
+    // The coordinate in signed degrees, or NaN if its minutes or seconds are out of range
+    private static double degrees(Matcher pair, int group, String hemisphere) {
+        // Degrees, minutes and seconds are the groups after a hemisphere written first, or the next three otherwise
+        int first = pair.group(group + 1) != null ? group + 1 : group + 4;
+        double value = Math.abs(Double.parseDouble(pair.group(first)));
+        for (int part = 1; part <= 2; part++) {
+            if (pair.group(first + part) != null) {
+                double units = Double.parseDouble(pair.group(first + part));
+                if (units >= 60) {
+                    return Double.NaN;
+                }
+                value += units / Math.pow(60, part);
+            }
+        }
+        boolean negative = pair.group(first).startsWith("-") || "S".equals(hemisphere) || "W".equals(hemisphere);
+        return negative ? -value : value;
+    }
+}
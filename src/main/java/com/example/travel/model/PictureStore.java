@@ -0,0 +1,313 @@
+package com.example.travel.model;
+
+import com.example.travel.util.ConnectionPool;
+import com.example.travel.util.PersistenceMetrics;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Content-addressed storage for pictures.
+ * <p>
+ * Each distinct image is stored once in the {@code pictures} table under the SHA-256 hash of its bytes,
+ * and travel records refer to it by hash. The XML export names its picture files after the same hash.
+ * <p>
+ * Pictures move between the database and files as streams, so a picture copied to or from disk is
+ * never held in memory whole.
+ */
+public final class PictureStore {
+    private static final String[] HASH_COLUMNS = {"picture_hash", "picture2_hash", "picture3_hash"};
+    private static final String[] LEGACY_COLUMNS = {"picture", "picture2", "picture3"};
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Consumes a stored picture as a stream.
+     *
+     * @param <T> What the reader makes of the picture
+     */
+    @FunctionalInterface
+    public interface PictureReader<T> {
+        /**
+         * @param in The picture's bytes; only valid during the call
+         * @param size The picture's size in bytes
+         */
+        T read(InputStream in, long size) throws IOException;
+    }
+
+    private PictureStore() {
+    }
+
+    /**
+     * Returns the SHA-256 hash of a picture as 64 lowercase hex digits.
+     */
+    public static String hash(byte[] data) {
+        return HexFormat.of().formatHex(sha256().digest(data));
+    }
+
+    /**
+     * Returns the SHA-256 hash of a picture file, reading it a buffer at a time.
+     */
+    public static String hash(Path file) throws IOException {
+        MessageDigest digest = sha256();
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Loads a picture by hash.
+     *
+     * @return The picture bytes, or null if no picture has that hash
+     */
+    public static byte[] find(String hash) throws SQLException {
+        try {
+            // The stored size lets the bytes be read straight into an array of the right length
+            return read(hash, (in, size) -> in.readNBytes(Math.toIntExact(size)));
+        } catch (IOException e) {
+            throw new SQLException("Could not read picture " + hash, e);
+        }
+    }
+
+    /**
+     * Streams a picture from the database to a reader.
+     *
+     * @return What the reader returned, or null if no picture has that hash
+     */
+    public static <T> T read(String hash, PictureReader<T> reader) throws SQLException, IOException {
+        if (hash == null) {
+            return null;
+        }
+        PersistenceMetrics.Operation operation = PersistenceMetrics.start("picture.read");
+        try (Connection conn = ConnectionPool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT data, size FROM pictures WHERE hash = ?")) {
+            stmt.setString(1, hash);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    try (InputStream in = rs.getBinaryStream(1)) {
+                        return reader.read(in, rs.getLong(2));
+                    }
+                }
+            }
+        } finally {
+            operation.close();
+        }
+        return null;
+    }
+
+    /**
+     * Copies a picture to a file. The picture is written to a temporary file first and moved into
+     * place, so the target is never left holding part of a picture.
+     *
+     * @return The number of bytes copied, or -1 if no picture has that hash
+     */
+    public static long copyTo(String hash, Path target) throws SQLException, IOException {
+        Long copied = read(hash, (in, size) -> {
+            Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+            try {
+                long written = Files.copy(in, temporary, StandardCopyOption.REPLACE_EXISTING);
+                Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                return written;
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        });
+        return copied != null ? copied : -1;
+    }
+
+    /**
+     * Stores a picture unless an identical one is already stored. An existing picture is locked
+     * until the caller's transaction ends, so {@link #deleteUnreferenced} cannot remove it before
+     * the record referring to it is committed; the caller must not be in auto-commit mode.
+     *
+     * @return The picture's hash, or null if there is no picture
+     */
+    static String store(Connection conn, byte[] data) throws SQLException {
+        if (data == null || data.length == 0) {
+            return null;
+        }
+        String hash = hash(data);
+        if (!lock(conn, hash)) {
+            insert(conn, hash, new ByteArrayInputStream(data), data.length);
+        }
+        return hash;
+    }
+
+    /**
+     * Stores the picture in a file unless an identical one is already stored, locking it like
+     * {@link #store(Connection, byte[])}. The file is read twice, once to hash it and once to
+     * stream it into the database.
+     *
+     * @return The picture's hash, or null if the file is empty
+     */
+    static String store(Connection conn, Path file) throws SQLException, IOException {
+        long size = Files.size(file);
+        if (size == 0) {
+            return null;
+        }
+        String hash = hash(file);
+        if (!lock(conn, hash)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                insert(conn, hash, in, size);
+            }
+        }
+        return hash;
+    }
+
+    // Locks the picture if it is stored, waiting for a transaction that is deleting it
+    private static boolean lock(Connection conn, String hash) throws SQLException {
+        try (PreparedStatement check = conn.prepareStatement("SELECT 1 FROM pictures WHERE hash = ? FOR UPDATE")) {
+            check.setString(1, hash);
+            try (ResultSet rs = check.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    private static void insert(Connection conn, String hash, InputStream in, long size) throws SQLException {
+        try (PreparedStatement insert = conn.prepareStatement("INSERT INTO pictures (hash, data, size) VALUES (?, ?, ?)")) {
+            insert.setString(1, hash);
+            insert.setBinaryStream(2, in, size);
+            insert.setLong(3, size);
+            insert.executeUpdate();
+        } catch (SQLException e) {
+            // Another connection stored the same picture in the meantime
+            if (!"23505".equals(e.getSQLState())) {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Deletes the given pictures if no travel record refers to them any more. The caller must not
+     * be in auto-commit mode.
+     * <p>
+     * A picture locked by another transaction is skipped: that transaction found it in
+     * {@link #store} and is about to commit a record referring to it, which the reference check
+     * below could not see yet.
+     */
+    static void deleteUnreferenced(Connection conn, Collection<String> hashes) throws SQLException {
+        String sql = "DELETE FROM pictures WHERE hash = ?"
+                + " AND NOT EXISTS (SELECT 1 FROM travel_records WHERE picture_hash = ?)"
+                + " AND NOT EXISTS (SELECT 1 FROM travel_records WHERE picture2_hash = ?)"
+                + " AND NOT EXISTS (SELECT 1 FROM travel_records WHERE picture3_hash = ?)";
+        try (PreparedStatement lock = conn.prepareStatement("SELECT 1 FROM pictures WHERE hash = ? FOR UPDATE SKIP LOCKED");
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (String hash : hashes) {
+                if (hash == null) {
+                    continue;
+                }
+                // Lock first, so the check below runs after any transaction that stored the picture has committed
+                lock.setString(1, hash);
+                try (ResultSet rs = lock.executeQuery()) {
+                    if (!rs.next()) {
+                        continue;
+                    }
+                }
+                for (int i = 1; i <= 4; i++) {
+                    stmt.setString(i, hash);
+                }
+                stmt.executeUpdate();
+            }
+        }
+    }
+
+    /**
+     * Moves any pictures still held in the legacy BLOB columns of travel_records into the store,
+     * one record at a time. Run once by the schema migration that creates the store.
+     */
+    public static void migrateLegacyPictures(Connection conn) throws SQLException {
+        List<Long> ids = new ArrayList<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id FROM travel_records"
+                     + " WHERE picture IS NOT NULL OR picture2 IS NOT NULL OR picture3 IS NOT NULL")) {
+            while (rs.next()) {
+                ids.add(rs.getLong(1));
+            }
+        }
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        // Each picture is hashed as a stream, then copied into the store inside the database
+        for (int slot = 0; slot < LEGACY_COLUMNS.length; slot++) {
+            String column = LEGACY_COLUMNS[slot];
+            String select = "SELECT " + column + " FROM travel_records WHERE id = ?";
+            String copy = "INSERT INTO pictures (hash, data, size) SELECT ?, " + column + ", OCTET_LENGTH(" + column + ")"
+                    + " FROM travel_records WHERE id = ?";
+            String update = "UPDATE travel_records SET " + HASH_COLUMNS[slot] + " = ?, " + column + " = NULL WHERE id = ?";
+            try (PreparedStatement selectStmt = conn.prepareStatement(select);
+                 PreparedStatement copyStmt = conn.prepareStatement(copy);
+                 PreparedStatement updateStmt = conn.prepareStatement(update)) {
+                for (Long id : ids) {
+                    selectStmt.setLong(1, id);
+                    String hash = null;
+                    try (ResultSet rs = selectStmt.executeQuery()) {
+                        if (rs.next()) {
+                            hash = hash(rs.getBinaryStream(1));
+                        }
+                    }
+                    if (hash == null) {
+                        continue;
+                    }
+                    if (!lock(conn, hash)) {
+                        copyStmt.setString(1, hash);
+                        copyStmt.setLong(2, id);
+                        copyStmt.executeUpdate();
+                    }
+                    updateStmt.setString(1, hash);
+                    updateStmt.setLong(2, id);
+                    updateStmt.executeUpdate();
+                }
+            }
+        }
+        System.out.println("Moved the pictures of " + ids.size() + " travel records into the picture store");
+    }
+
+    // The hash of a legacy picture column, or null if it is empty
+    private static String hash(InputStream in) throws SQLException {
+        if (in == null) {
+            return null;
+        }
+        MessageDigest digest = sha256();
+        long size = 0;
+        try (in) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+                size += read;
+            }
+        } catch (IOException e) {
+            throw new SQLException("Could not read a legacy picture", e);
+        }
+        return size > 0 ? HexFormat.of().formatHex(digest.digest()) : null;
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.travel.model;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Canonical in-memory instances of travel records, keyed by id.
+ * <p>
+ * Queries return the cached instance of a record when it has not changed since it was loaded,
+ * so views holding records keep their identity across reloads. {@link TravelRecord#save()} and
+ * {@link TravelRecord#delete()} update the cache and notify the registered listeners, which lets
+ * a view patch the one affected row instead of reloading everything. Entries are weakly held and
+ * disappear once nothing else references the record.
+ */
+public final class RecordCache {
+
+    /**
+     * Receives record changes made through {@link TravelRecord#save()} and {@link TravelRecord#delete()}.
+     * Listeners are called on the thread that made the change.
+     */
+    public interface Listener {
+        void recordSaved(TravelRecord record);
+
+        void recordDeleted(Long id);
+    }
+
+    private static final Map<Long, Entry> records = new ConcurrentHashMap<>();
+    private static final ReferenceQueue<TravelRecord> collected = new ReferenceQueue<>();
+    private static final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private static final class Entry extends WeakReference<TravelRecord> {
+        private final Long id;
+
+        Entry(TravelRecord record) {
+            super(record, collected);
+            this.id = record.getId();
+        }
+    }
+
+    private RecordCache() {
+    }
+
+    public static void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public static void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Returns the cached instance of a record, or null if it is not cached.
+     */
+    public static TravelRecord get(Long id) {
+        Entry entry = records.get(id);
+        return entry != null ? entry.get() : null;
+    }
+
+    public static void clear() {
+        records.clear();
+    }
+
+    /**
+     * Returns the cached instance if it is as recent as the freshly loaded record,
+     * otherwise caches and returns the loaded record.
+     */
+    static TravelRecord intern(TravelRecord loaded) {
+        expungeCollected();
+        TravelRecord cached = get(loaded.getId());
+        if (cached != null && cached.getDateUpdated() != null
+                && cached.getDateUpdated().equals(loaded.getDateUpdated())) {
+            return cached;
+        }
+        records.put(loaded.getId(), new Entry(loaded));
+        return loaded;
+    }
+
+    static void saved(TravelRecord record) {
+        expungeCollected();
+        records.put(record.getId(), new Entry(record));
+        for (Listener listener : listeners) {
+            listener.recordSaved(record);
+        }
+    }
+
+    /**
+     * Drops a record from the cache if it is the cached instance, so the next query loads it again.
+     */
+    static void evict(TravelRecord record) {
+        if (record.getId() != null) {
+            Entry entry = records.get(record.getId());
+            if (entry != null && entry.get() == record) {
+                records.remove(record.getId(), entry);
+            }
+        }
+    }
+
+    static void deleted(Long id) {
+        records.remove(id);
+        for (Listener listener : listeners) {
+            listener.recordDeleted(id);
+        }
+    }
+
+    private static void expungeCollected() {
+        Entry entry;
+        while ((entry = (Entry) collected.poll()) != null) {
+            records.remove(entry.id, entry);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.travel.model;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Criteria for selecting travel records. Each criterion that is set becomes one
+ * predicate of a parameterized SQL WHERE clause. The search text is looked up in the
+ * {@link SearchIndex} and becomes a predicate on the ids of the matching records, bound as an array.
+ */
+public class RecordFilter {
+    // A search matching more records than this is tested row by row; see isSearchBroad
+    private static final int SELECTIVE_SEARCH_MATCHES = 1000;
+
+    private String searchText;
+    private String state;
+    private String tag;
+    private boolean hideVisited;
+    private boolean plannedOnly;
+
+    public RecordFilter() {
+    }
+
+    public RecordFilter(String searchText, State state, String tag, boolean hideVisited) {
+        setSearchText(searchText);
+        this.state = state != null ? state.name() : null;
+        this.tag = tag;
+        this.hideVisited = hideVisited;
+    }
+
+    /**
+     * Builds the WHERE clause for this filter, optionally leaving out the search, and collects its parameters.
+     *
+     * @param parameters Receives the values for the clause's placeholders, in order
+     * @param withSearch Whether to include the search; without it, callers must test the ids of the rows returned
+     * @return The clause including the WHERE keyword, or an empty string if nothing is filtered
+     */
+    String toWhereClause(List<Object> parameters, boolean withSearch) throws SQLException {
+        List<String> predicates = new ArrayList<>();
+        if (searchText != null && withSearch) {
+            predicates.add("id = ANY(?)");
+            parameters.add(Arrays.stream(SearchIndex.matchingIds(searchText)).boxed().toArray(Long[]::new));
+        }
+        if (state != null) {
+            predicates.add("state = ?");
+            parameters.add(state);
+        }
+        if (tag != null) {
+            predicates.add("tag = ?");
+            parameters.add(tag);
+        }
+        if (hideVisited) {
+            predicates.add("visited = FALSE");
+        }
+        if (plannedOnly) {
+            predicates.add("plan = TRUE");
+        }
+        return predicates.isEmpty() ? "" : " WHERE " + String.join(" AND ", predicates);
+    }
+
+    /**
+     * Whether the filter selects by state or tag, which are indexed and usually match few records,
+     * or by a search matching few records. Other criteria match large shares of the table, so
+     * ordered queries do better walking the date index and filtering rows as they go.
+     */
+    boolean isSelective() throws SQLException {
+        return state != null || tag != null || (searchText != null && !isSearchBroad());
+    }
+
+    /**
+     * Whether the search matches so many records that reading rows in order and testing each
+     * against the search in memory is faster than selecting them by id. H2 looks the ids of an
+     * array up through the primary key but then compares each row with every element, so the
+     * cost of the id predicate grows with the square of the number of matches.
+     */
+    boolean isSearchBroad() throws SQLException {
+        return searchText != null && SearchIndex.count(searchText) > SELECTIVE_SEARCH_MATCHES;
+    }
+
+    /**
+     * Checks a record against this filter in memory, using the same rules as the SQL clause.
+     */
+    public boolean matches(TravelRecord record) {
+        return (searchText == null || SearchIndex.matches(searchText, record)) &&
+               (state == null || state.equals(record.getState())) &&
+               (tag == null || tag.equals(record.getTag())) &&
+               (!hideVisited || record.getVisited() == null || !record.getVisited()) &&
+               (!plannedOnly || Boolean.TRUE.equals(record.getPlan()));
+    }
+
+    // Getters and Setters
+    public String getSearchText() {
+        return searchText;
+    }
+
+    /**
+     * Sets the full-text query; see {@link SearchIndex} for its syntax. Blank text searches nothing.
+     */
+    public void setSearchText(String searchText) {
+        // Keep trailing spaces: they tell the search that the last word is complete
+        this.searchText = searchText == null || searchText.isBlank() ? null : searchText.stripLeading();
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public void setState(String state) {
+        this.state = state;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+
+    public void setTag(String tag) {
+        this.tag = tag;
+    }
+
+    public boolean isHideVisited() {
+        return hideVisited;
+    }
+
+    public void setHideVisited(boolean hideVisited) {
+        this.hideVisited = hideVisited;
+    }
+
+    public boolean isPlannedOnly() {
+        return plannedOnly;
+    }
+
+    public void setPlannedOnly(boolean plannedOnly) {
+        this.plannedOnly = plannedOnly;
+    }
+}
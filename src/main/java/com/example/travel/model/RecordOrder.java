@@ -0,0 +1,166 @@
+package com.example.travel.model;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * The order in which travel records are listed: any number of columns, each ascending or
+ * descending, followed by newest first to break ties.
+ * <p>
+ * Like H2, the order treats NULL as lower than any value, so NULLs come first in ascending
+ * order and last in descending order.
+ */
+public final class RecordOrder {
+
+    /**
+     * One column of the order.
+     *
+     * @param column The column name, one of {@link #isSortable(String) the sortable columns}
+     * @param ascending Whether lower values come first
+     */
+    public record Key(String column, boolean ascending) {
+        public Key {
+            if (!isSortable(column)) {
+                throw new IllegalArgumentException("Cannot sort travel records by " + column);
+            }
+        }
+    }
+
+    /**
+     * Newest first, the order used when no column is sorted.
+     */
+    public static final RecordOrder NEWEST_FIRST = new RecordOrder(List.of());
+
+    private static final Map<String, Function<TravelRecord, Comparable<?>>> COLUMNS = Map.of(
+            "description", TravelRecord::getDescription,
+            "url", TravelRecord::getUrl,
+            "state", TravelRecord::getState,
+            "city", TravelRecord::getCity,
+            "address", TravelRecord::getAddress,
+            "zip", TravelRecord::getZip,
+            "geo", TravelRecord::getGeo,
+            "visited", TravelRecord::getVisited,
+            "plan", TravelRecord::getPlan,
+            "tag", TravelRecord::getTag);
+
+    // Columns with an index in each direction; see DatabaseUpdater
+    private static final List<String> INDEXED_COLUMNS = List.of("description", "state", "city", "tag");
+
+    private final List<Key> keys;
+
+    public RecordOrder(List<Key> keys) {
+        this.keys = List.copyOf(keys);
+    }
+
+    public static boolean isSortable(String column) {
+        return COLUMNS.containsKey(column);
+    }
+
+    public List<Key> getKeys() {
+        return keys;
+    }
+
+    /**
+     * Orders records in memory the same way as {@link #toOrderByClause()}.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public Comparator<TravelRecord> comparator() {
+        Comparator<TravelRecord> comparator = (a, b) -> 0;
+        for (Key key : keys) {
+            Function<TravelRecord, Comparable<?>> value = COLUMNS.get(key.column());
+            Comparator<Comparable> nullsLow = Comparator.nullsFirst(Comparator.<Comparable>naturalOrder());
+            comparator = comparator.thenComparing(record -> (Comparable) value.apply(record),
+                    key.ascending() ? nullsLow : nullsLow.reversed());
+        }
+        return comparator
+                .thenComparing(TravelRecord::getDateCreated, Comparator.reverseOrder())
+                .thenComparing(TravelRecord::getId, Comparator.reverseOrder());
+    }
+
+    /**
+     * The values of a record's sort columns, in key order, for keyset pagination.
+     */
+    List<Object> valuesOf(TravelRecord record) {
+        return Arrays.asList(keys.stream().map(key -> (Object) COLUMNS.get(key.column()).apply(record)).toArray());
+    }
+
+    String toOrderByClause() {
+        StringBuilder clause = new StringBuilder(" ORDER BY ");
+        for (Key key : keys) {
+            clause.append(key.column()).append(key.ascending() ? "" : " DESC").append(", ");
+        }
+        return clause.append("date_created DESC, id DESC").toString();
+    }
+
+    /**
+     * Builds the predicate selecting the records that come after a given record in this order.
+     * Each column contributes a range condition that the database can seek on through an index,
+     * rather than only a disjunction it would have to test row by row.
+     *
+     * @param after The position of the record
+     * @param parameters Receives the values for the predicate's placeholders, in order
+     */
+    String toAfterPredicate(TravelRecord.PageKey after, List<Object> parameters) {
+        // Built from the innermost tie-breaker outwards; parameters are collected in the same order and reversed at the end
+        String predicate = "(date_created <= ? AND (date_created < ? OR id < ?))";
+        List<Object> reversed = new ArrayList<>();
+        reversed.add(after.id());
+        reversed.add(Timestamp.valueOf(after.dateCreated()));
+        reversed.add(Timestamp.valueOf(after.dateCreated()));
+        for (int i = keys.size() - 1; i >= 0; i--) {
+            String column = keys.get(i).column();
+            Object value = after.values().get(i);
+            if (keys.get(i).ascending()) {
+                if (value == null) {
+                    predicate = "(" + column + " IS NOT NULL OR " + predicate + ")";
+                } else {
+                    predicate = "(" + column + " >= ? AND (" + column + " > ? OR " + predicate + "))";
+                    reversed.add(value);
+                    reversed.add(value);
+                }
+            } else {
+                if (value == null) {
+                    predicate = "(" + column + " IS NULL AND " + predicate + ")";
+                } else {
+                    predicate = "((" + column + " <= ? OR " + column + " IS NULL) AND ("
+                            + column + " < ? OR " + column + " IS NULL OR " + predicate + "))";
+                    reversed.add(value);
+                    reversed.add(value);
+                }
+            }
+        }
+        for (int i = reversed.size() - 1; i >= 0; i--) {
+            parameters.add(reversed.get(i));
+        }
+        return predicate;
+    }
+
+    /**
+     * The index that returns records already in this order, or null if there is none.
+     */
+    String indexName() {
+        if (keys.isEmpty()) {
+            return "idx_travel_records_created";
+        }
+        Key first = keys.get(0);
+        if (keys.size() == 1 && INDEXED_COLUMNS.contains(first.column())) {
+            return "idx_travel_records_" + first.column() + (first.ascending() ? "_asc" : "_desc");
+        }
+        return null;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof RecordOrder other && keys.equals(other.keys);
+    }
+
+    @Override
+    public int hashCode() {
+        return keys.hashCode();
+    }
+}
@@ -0,0 +1,421 @@
+package com.example.travel.model;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Orders travel records into a short route that visits each of them once.
+ * <p>
+ * The route starts and ends wherever makes it shortest. A nearest-neighbour tour seeds the search,
+ * and 2-opt and Or-opt moves then shorten it until no move helps. Moves are only tried towards
+ * each stop's nearest neighbours, and stops whose surroundings have not changed are not looked
+ * at again, so a few hundred stops take milliseconds. Several searches can run in parallel from
+ * different seed stops, keeping the shortest route found.
+ * <p>
+ * The open route is solved as a closed tour through an extra stop that is no distance from every
+ * other; cutting the tour at that stop leaves the route.
+ */
+public final class RoutePlanner {
+    // Moves are tried towards this many of each stop's nearest neighbours
+    private static final int NEIGHBOURS = 10;
+    // Or-opt moves segments of up to this many stops
+    private static final int SEGMENT_LENGTH = 3;
+    // Improvements smaller than this are rounding error
+    private static final double EPSILON = 1e-9;
+
+    /**
+     * Records in visiting order, and the distance covered to reach each one.
+     *
+     * @param stops The records in the order to visit them
+     * @param legMiles The distance from the previous stop to each stop; zero for the first
+     */
+    public record Route(List<TravelRecord> stops, double[] legMiles) {
+
+        public double totalMiles() {
+            return Arrays.stream(legMiles).sum();
+        }
+    }
+
+    private RoutePlanner() {
+    }
+
+    /**
+     * Plans a route through the records with a location, searching from as many seed stops as
+     * there are processors.
+     *
+     * @param records The records to visit; those without a location are left out of the route
+     */
+    public static Route plan(List<TravelRecord> records) throws SQLException {
+        return plan(records, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Plans a route through the records with a location. Distances between planned stops come from
+     * the {@link DistanceMatrix}.
+     *
+     * @param records The records to visit; those without a location are left out of the route
+     * @param starts The number of searches to run in parallel, each from a different seed stop
+     */
+    public static Route plan(List<TravelRecord> records, int starts) throws SQLException {
+        List<TravelRecord> located = new ArrayList<>();
+        for (TravelRecord record : records) {
+            if (record.getLocation() != null) {
+                located.add(record);
+            }
+        }
+        int n = located.size();
+        // Room for the extra stop in the last row and column, which stay zero
+        double[] distances = new double[(n + 1) * (n + 1)];
+        DistanceMatrix.copy(located, distances, n + 1);
+
+        int[] order = solve(n, distances, starts);
+        List<TravelRecord> stops = new ArrayList<>(n);
+        double[] legMiles = new double[n];
+        for (int i = 0; i < n; i++) {
+            stops.add(located.get(order[i]));
+            if (i > 0) {
+                legMiles[i] = distances[order[i - 1] * (n + 1) + order[i]];
+            }
+        }
+        return new Route(stops, legMiles);
+    }
+
+    /**
+     * Finds a short open path through stops.
+     *
+     * @param n The number of stops
+     * @param distances The distance between stops i and j at {@code i * (n + 1) + j}, with a last
+     *                  row and column of zeros
+     * @return The stops in visiting order
+     */
+    static int[] solve(int n, double[] distances, int starts) {
+        if (n <= 3) {
+            // Up to two stops have one route each; three are solved exactly by leaving out the longest leg
+            return n == 3 ? shortestOfThree(distances) : IntStream.range(0, n).toArray();
+        }
+        Tour.Graph graph = Tour.Graph.of(n, distances);
+        int runs = Math.max(1, Math.min(starts, n));
+        return IntStream.range(0, runs)
+                .parallel()
+                .mapToObj(run -> {
+                    Tour tour = new Tour(graph, run * n / runs);
+                    tour.optimize();
+                    return tour;
+                })
+                // Ties go to the earliest run, so the same stops always give the same route
+                .min(Comparator.comparingDouble(Tour::length))
+                .orElseThrow()
+                .path();
+    }
+
+    private static int[] shortestOfThree(double[] distances) {
+        double ab = distances[1];
+        double bc = distances[4 + 2];
+        double ca = distances[2 * 4];
+        // Leave out the longest leg
+        if (ab >= bc && ab >= ca) {
+            return new int[] {0, 2, 1};
+        }
+        return bc >= ca ? new int[] {1, 0, 2} : new int[] {0, 1, 2};
+    }
+
+    /**
+     * A closed tour through every stop and the extra stop, improved in place.
+     */
+    private static final class Tour {
+
+        /**
+         * The distances between stops and each stop's nearest neighbours, shared by every search.
+         * The extra stop is the last and is every other stop's nearest neighbour.
+         */
+        private record Graph(int size, double[] distances, int[][] neighbours) {
+
+            static Graph of(int n, double[] distances) {
+                return new Graph(n + 1, distances, nearest(n + 1, distances));
+            }
+
+            double distance(int a, int b) {
+                return distances[a * size + b];
+            }
+
+            private static int[][] nearest(int size, double[] distances) {
+                int extra = size - 1;
+                int count = Math.min(NEIGHBOURS, extra - 1);
+                int[][] neighbours = new int[size][];
+                for (int a = 0; a < extra; a++) {
+                    // Insertion into a short sorted list; cheaper than sorting every row
+                    int[] best = new int[count + 1];
+                    double[] bestDistances = new double[count + 1];
+                    best[0] = extra;
+                    int found = 1;
+                    for (int b = 0; b < extra; b++) {
+                        if (b == a) {
+                            continue;
+                        }
+                        double distance = distances[a * size + b];
+                        if (found <= count || distance < bestDistances[count]) {
+                            int i = Math.min(found, count);
+                            while (i > 1 && bestDistances[i - 1] > distance) {
+                                best[i] = best[i - 1];
+                                bestDistances[i] = bestDistances[i - 1];
+                                i--;
+                            }
+                            best[i] = b;
+                            bestDistances[i] = distance;
+                            found = Math.min(found + 1, count + 1);
+                        }
+                    }
+                    neighbours[a] = best;
+                }
+                // Every stop is as near to the extra stop, which is where the route may start or end
+                neighbours[extra] = IntStream.range(0, extra).toArray();
+                return neighbours;
+            }
+        }
+
+        private final Graph graph;
+        private final int size;
+        private final int[] tour;
+        private final int[] position;
+        // Stops whose surroundings changed since they were last looked at, in a ring buffer
+        private final int[] queue;
+        private final boolean[] queued;
+        private int head;
+        private int queueSize;
+
+        /**
+         * Seeds the tour by walking to the nearest unvisited stop from a starting stop.
+         */
+        Tour(Graph graph, int start) {
+            this.graph = graph;
+            this.size = graph.size();
+            this.tour = new int[size];
+            this.position = new int[size];
+            this.queue = new int[size];
+            this.queued = new boolean[size];
+
+            int extra = size - 1;
+            boolean[] visited = new boolean[size];
+            int current = start;
+            for (int i = 0; i < extra; i++) {
+                tour[i] = current;
+                visited[current] = true;
+                int next = -1;
+                double nextDistance = Double.POSITIVE_INFINITY;
+                for (int candidate = 0; candidate < extra; candidate++) {
+                    if (!visited[candidate] && graph.distance(current, candidate) < nextDistance) {
+                        next = candidate;
+                        nextDistance = graph.distance(current, candidate);
+                    }
+                }
+                current = next;
+            }
+            tour[extra] = extra;
+            for (int i = 0; i < size; i++) {
+                position[tour[i]] = i;
+                enqueue(tour[i]);
+            }
+        }
+
+        /**
+         * Applies improving moves until none is left.
+         */
+        void optimize() {
+            while (queueSize > 0) {
+                int stop = queue[head];
+                head = (head + 1) % size;
+                queueSize--;
+                queued[stop] = false;
+                if (twoOpt(stop) || orOpt(stop)) {
+                    enqueue(stop);
+                }
+            }
+        }
+
+        double length() {
+            double length = 0;
+            for (int i = 0; i < size; i++) {
+                length += graph.distance(tour[i], tour[(i + 1) % size]);
+            }
+            return length;
+        }
+
+        /**
+         * The stops in visiting order, with the tour cut at the extra stop.
+         */
+        int[] path() {
+            int[] path = new int[size - 1];
+            int from = position[size - 1] + 1;
+            for (int i = 0; i < path.length; i++) {
+                path[i] = tour[(from + i) % size];
+            }
+            return path;
+        }
+
+        /**
+         * Tries replacing one of the stop's two edges and another edge by the edge from the stop to a
+         * near neighbour and the edge between their other ends.
+         */
+        private boolean twoOpt(int a) {
+            for (boolean forward : new boolean[] {true, false}) {
+                int b = forward ? next(a) : previous(a);
+                double removed = graph.distance(a, b);
+                for (int c : graph.neighbours()[a]) {
+                    double added = graph.distance(a, c);
+                    if (added >= removed - EPSILON) {
+                        // Neighbours are nearest first; no further one can help
+                        break;
+                    }
+                    int d = forward ? next(c) : previous(c);
+                    if (c == b || d == a) {
+                        continue;
+                    }
+                    double delta = added + graph.distance(b, d) - removed - graph.distance(c, d);
+                    if (delta < -EPSILON) {
+                        // Forward: a b ... c d becomes a c ... b d; backward: d c ... b a becomes d b ... c a
+                        if (forward) {
+                            reverse(position[b], position[c]);
+                        } else {
+                            reverse(position[c], position[b]);
+                        }
+                        enqueue(b);
+                        enqueue(c);
+                        enqueue(d);
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Tries moving a run of up to three stops starting or ending at the stop to between a
+         * neighbour of its ends and the stop next to that neighbour, in either direction.
+         */
+        private boolean orOpt(int a) {
+            for (int length = 1; length <= SEGMENT_LENGTH && length <= size - 3; length++) {
+                for (boolean forward : new boolean[] {true, false}) {
+                    int first = forward ? a : at(position[a] - length + 1);
+                    int last = at(position[first] + length - 1);
+                    int before = previous(first);
+                    int after = next(last);
+                    double gain = graph.distance(before, first) + graph.distance(last, after)
+                            - graph.distance(before, after);
+                    if (gain <= EPSILON) {
+                        continue;
+                    }
+                    for (int end : new int[] {first, last}) {
+                        for (int c : graph.neighbours()[end]) {
+                            if (graph.distance(end, c) >= gain - EPSILON) {
+                                break;
+                            }
+                            if (insideSegment(c, first, length)) {
+                                continue;
+                            }
+                            // The edge on either side of the neighbour, unless it touches the segment
+                            for (int e : new int[] {next(c), previous(c)}) {
+                                if (insideSegment(e, first, length)) {
+                                    continue;
+                                }
+                                int left = e == next(c) ? c : e;
+                                int right = e == next(c) ? e : c;
+                                double edge = graph.distance(left, right);
+                                double straight = graph.distance(left, first) + graph.distance(last, right) - edge;
+                                double reversed = graph.distance(left, last) + graph.distance(first, right) - edge;
+                                double cost = Math.min(straight, reversed);
+                                if (cost < gain - EPSILON) {
+                                    move(first, length, left, reversed < straight);
+                                    enqueue(before);
+                                    enqueue(after);
+                                    enqueue(left);
+                                    enqueue(right);
+                                    enqueue(first);
+                                    enqueue(last);
+                                    return true;
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+            return false;
+        }
+
+        private boolean insideSegment(int stop, int first, int length) {
+            return Math.floorMod(position[stop] - position[first], size) < length;
+        }
+
+        /**
+         * Moves the run of stops beginning with first to just after left, reversed if asked.
+         */
+        private void move(int first, int length, int left, boolean reversed) {
+            int[] segment = new int[length];
+            for (int i = 0; i < length; i++) {
+                segment[i] = at(position[first] + i);
+            }
+            int[] rebuilt = new int[size];
+            int count = 0;
+            int from = position[first] + length;
+            for (int i = 0; i < size - length; i++) {
+                int stop = at(from + i);
+                rebuilt[count++] = stop;
+                if (stop == left) {
+                    for (int j = 0; j < length; j++) {
+                        rebuilt[count++] = segment[reversed ? length - 1 - j : j];
+                    }
+                }
+            }
+            System.arraycopy(rebuilt, 0, tour, 0, size);
+            for (int i = 0; i < size; i++) {
+                position[tour[i]] = i;
+            }
+        }
+
+        /**
+         * Reverses the stops from one tour position to another, going forward and wrapping around.
+         * Reversing the rest of the tour instead gives the same tour, so the shorter side is reversed.
+         */
+        private void reverse(int from, int to) {
+            int length = Math.floorMod(to - from, size) + 1;
+            if (length * 2 > size) {
+                int newFrom = (to + 1) % size;
+                to = Math.floorMod(from - 1, size);
+                from = newFrom;
+                length = size - length;
+            }
+            for (int i = 0; i < length / 2; i++) {
+                int left = (from + i) % size;
+                int right = Math.floorMod(to - i, size);
+                int stop = tour[left];
+                tour[left] = tour[right];
+                tour[right] = stop;
+                position[tour[left]] = left;
+                position[tour[right]] = right;
+            }
+        }
+
+        private void enqueue(int stop) {
+            if (!queued[stop]) {
+                queued[stop] = true;
+                queue[(head + queueSize) % size] = stop;
+                queueSize++;
+            }
+        }
+
+        private int at(int index) {
+            return tour[Math.floorMod(index, size)];
+        }
+
+        private int next(int stop) {
+            return at(position[stop] + 1);
+        }
+
+        private int previous(int stop) {
+            return at(position[stop] - 1);
+        }
+    }
+}
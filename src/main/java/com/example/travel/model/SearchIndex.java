@@ -0,0 +1,542 @@
+package com.example.travel.model;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Full-text search over the description, city, address and notes of every travel record.
+ * <p>
+ * An in-memory inverted index maps each word to the records containing it and its positions in
+ * them, so a query looks up a few posting lists instead of scanning records. Records are numbered
+ * by slot and each posting list is a sorted array of slots, which keeps the index compact and lets
+ * clauses be combined as bit sets. Words are kept sorted, which lets a prefix expand to every word
+ * it begins. Results are ranked with BM25, with a word in the description counting three times as
+ * much as one in the address or notes and a word in the city twice as much.
+ * <p>
+ * A query is a list of words, all of which must match. A word ending in {@code *}, and the last
+ * word while it is still being typed, matches any word it begins. Words in double quotes, or
+ * joined by punctuation as in {@code new-york}, must appear together and in order within one field.
+ * <p>
+ * The index is built from the database on first use and kept up to date by
+ * {@link TravelRecord#save()}, {@link TravelRecord#delete()} and {@link TravelRecord#insertAll}.
+ */
+public final class SearchIndex {
+
+    /**
+     * A record matching a query.
+     *
+     * @param id The record's id
+     * @param score How well it matches; higher is better
+     */
+    public record Hit(long id, double score) {
+    }
+
+    // One clause of a query: a single word or a phrase, the last word optionally a prefix
+    private record Clause(List<String> words, boolean prefix) {
+    }
+
+    // The slots matching the last query evaluated, valid while the index is unchanged
+    private record Matches(String query, long version, BitSet slots) {
+    }
+
+    // The records containing one word, by ascending slot, with the word's positions in each
+    private static final class Posting {
+        private int size;
+        private int[] slots = new int[2];
+        private int[][] positions = new int[2][];
+
+        void put(int slot, int[] wordPositions) {
+            // Slots are mostly handed out in ascending order, so this is usually an append
+            int index = size == 0 || slots[size - 1] < slot ? -size - 1 : Arrays.binarySearch(slots, 0, size, slot);
+            if (index >= 0) {
+                positions[index] = wordPositions;
+                return;
+            }
+            index = -index - 1;
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+                positions = Arrays.copyOf(positions, size * 2);
+            }
+            System.arraycopy(slots, index, slots, index + 1, size - index);
+            System.arraycopy(positions, index, positions, index + 1, size - index);
+            slots[index] = slot;
+            positions[index] = wordPositions;
+            size++;
+        }
+
+        void remove(int slot) {
+            int index = Arrays.binarySearch(slots, 0, size, slot);
+            if (index >= 0) {
+                System.arraycopy(slots, index + 1, slots, index, size - index - 1);
+                System.arraycopy(positions, index + 1, positions, index, size - index - 1);
+                positions[--size] = null;
+            }
+        }
+
+        void addSlotsTo(BitSet set) {
+            for (int i = 0; i < size; i++) {
+                set.set(slots[i]);
+            }
+        }
+    }
+
+    private static final Pattern WORD = Pattern.compile("[\\p{L}\\p{N}]+");
+    private static final int[] FIELD_WEIGHTS = {3, 2, 1, 1};
+    // Positions in different fields are this far apart, so a phrase never spans two fields
+    private static final int FIELD_GAP = 1 << 24;
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private static final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private static final Map<String, Posting> postings = new HashMap<>();
+    // The same posting lists in word order, for expanding prefixes
+    private static final TreeMap<String, Posting> vocabulary = new TreeMap<>();
+    private static final Map<Long, Integer> slotsById = new HashMap<>();
+    // The slots holding a record; a deleted record's slot stays assigned but empty
+    private static final BitSet live = new BitSet();
+    private static long[] ids = new long[1024];
+    private static String[][] words = new String[1024][];
+    private static int[] lengths = new int[1024];
+    private static int slotCount;
+    private static long totalLength;
+    private static long version;
+    private static volatile Matches lastMatches;
+    private static volatile boolean built;
+    // Held while the table is scanned, so only one thread builds the index
+    private static final Object buildLock = new Object();
+    // While the table is scanned, the records saved meanwhile: their words, or null if deleted
+    private static Map<Long, Map<String, int[]>> pending;
+
+    private SearchIndex() {
+    }
+
+    /**
+     * Finds the records matching a query, best matches first.
+     *
+     * @param query The words to search for
+     * @param limit The maximum number of hits to return
+     */
+    public static List<Hit> search(String query, int limit) throws SQLException {
+        List<Clause> clauses = parse(query);
+        if (clauses.isEmpty()) {
+            return List.of();
+        }
+        ensureBuilt();
+        lock.readLock().lock();
+        try {
+            BitSet slots = match(query, clauses);
+            double[] scores = new double[slotCount];
+            for (Clause clause : clauses) {
+                score(clause, slots, scores);
+            }
+            return slots.stream().boxed()
+                    .sorted(Comparator.<Integer>comparingDouble(slot -> -scores[slot])
+                            .thenComparing(Comparator.reverseOrder()))
+                    .limit(limit)
+                    .map(slot -> new Hit(ids[slot], scores[slot]))
+                    .toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the ids of all records matching a query, in ascending order.
+     */
+    public static long[] matchingIds(String query) throws SQLException {
+        List<Clause> clauses = parse(query);
+        if (clauses.isEmpty()) {
+            return new long[0];
+        }
+        ensureBuilt();
+        lock.readLock().lock();
+        try {
+            return toIds(match(query, clauses));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Checks a single record against a query, without using the index.
+     */
+    public static boolean matches(String query, TravelRecord record) {
+        Map<String, int[]> positions = positions(record);
+        for (Clause clause : parse(query)) {
+            List<int[]> wordPositions = new ArrayList<>();
+            for (int i = 0; i < clause.words().size(); i++) {
+                int[] found = find(positions, clause.words().get(i), clause.prefix() && i == clause.words().size() - 1);
+                if (found == null) {
+                    return false;
+                }
+                wordPositions.add(found);
+            }
+            if (weightedOccurrences(wordPositions) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Counts the records matching a query.
+     */
+    static int count(String query) throws SQLException {
+        List<Clause> clauses = parse(query);
+        if (clauses.isEmpty()) {
+            return 0;
+        }
+        ensureBuilt();
+        lock.readLock().lock();
+        try {
+            return match(query, clauses).cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Indexes a saved record, replacing what was indexed for it before.
+     */
+    static void update(TravelRecord record) {
+        apply(record.getId(), positions(record));
+    }
+
+    /**
+     * Drops a deleted record from the index.
+     */
+    static void remove(Long id) {
+        apply(id, null);
+    }
+
+    // Indexes a record's words, or with null words drops the record
+    private static void apply(Long id, Map<String, int[]> positions) {
+        lock.writeLock().lock();
+        try {
+            // Until the index is built there is nothing to update; a build in progress replays the change
+            if (!built) {
+                if (pending != null) {
+                    pending.put(id, positions);
+                }
+                return;
+            }
+            unindex(id);
+            if (positions != null) {
+                index(id, positions);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static void ensureBuilt() throws SQLException {
+        if (built) {
+            return;
+        }
+        synchronized (buildLock) {
+            if (!built) {
+                build();
+            }
+        }
+    }
+
+    // Scans the table without holding the lock, so saves are not held up, then installs the records
+    private static void build() throws SQLException {
+        long start = System.nanoTime();
+        lock.writeLock().lock();
+        try {
+            pending = new LinkedHashMap<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        Map<Long, Map<String, int[]>> scanned = new LinkedHashMap<>();
+        try {
+            TravelRecord.forEach(new RecordFilter(), false, record -> scanned.put(record.getId(), positions(record)));
+        } catch (SQLException | RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                pending = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+
+        lock.writeLock().lock();
+        try {
+            scanned.forEach(SearchIndex::index);
+            // Records saved during the scan may have been read as they were before
+            for (Map.Entry<Long, Map<String, int[]>> change : pending.entrySet()) {
+                unindex(change.getKey());
+                if (change.getValue() != null) {
+                    index(change.getKey(), change.getValue());
+                }
+            }
+            pending = null;
+            built = true;
+            System.out.println("Indexed " + slotsById.size() + " travel records for search in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms");
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static void index(Long id, Map<String, int[]> positions) {
+        Integer assigned = slotsById.get(id);
+        int slot = assigned != null ? assigned : assignSlot(id);
+        int length = 0;
+        for (Map.Entry<String, int[]> entry : positions.entrySet()) {
+            Posting posting = postings.get(entry.getKey());
+            if (posting == null) {
+                posting = new Posting();
+                postings.put(entry.getKey(), posting);
+                vocabulary.put(entry.getKey(), posting);
+            }
+            posting.put(slot, entry.getValue());
+            for (int position : entry.getValue()) {
+                length += FIELD_WEIGHTS[position / FIELD_GAP];
+            }
+        }
+        words[slot] = positions.keySet().toArray(new String[0]);
+        lengths[slot] = length;
+        totalLength += length;
+        live.set(slot);
+        version++;
+    }
+
+    private static int assignSlot(Long id) {
+        if (slotCount == ids.length) {
+            ids = Arrays.copyOf(ids, slotCount * 2);
+            words = Arrays.copyOf(words, slotCount * 2);
+            lengths = Arrays.copyOf(lengths, slotCount * 2);
+        }
+        int slot = slotCount++;
+        ids[slot] = id;
+        slotsById.put(id, slot);
+        return slot;
+    }
+
+    // Empties a record's slot but keeps it assigned, so re-indexing the record puts it back in place
+    private static void unindex(Long id) {
+        Integer slot = slotsById.get(id);
+        if (slot == null || !live.get(slot)) {
+            return;
+        }
+        for (String word : words[slot]) {
+            Posting posting = postings.get(word);
+            posting.remove(slot);
+            if (posting.size == 0) {
+                postings.remove(word);
+                vocabulary.remove(word);
+            }
+        }
+        totalLength -= lengths[slot];
+        words[slot] = null;
+        lengths[slot] = 0;
+        live.clear(slot);
+        version++;
+    }
+
+    // The slots of the records matching every clause; the result is shared and must not be modified
+    private static BitSet match(String query, List<Clause> clauses) {
+        Matches last = lastMatches;
+        if (last != null && last.version() == version && last.query().equals(query)) {
+            return last.slots();
+        }
+        // Single words first, so phrases are only verified against the records that are left
+        List<Clause> ordered = new ArrayList<>(clauses);
+        ordered.sort(Comparator.comparingInt(clause -> clause.words().size()));
+        BitSet result = (BitSet) live.clone();
+        for (Clause clause : ordered) {
+            for (int i = 0; i < clause.words().size() && !result.isEmpty(); i++) {
+                result.and(containing(clause, i));
+            }
+            if (clause.words().size() > 1 && !result.isEmpty()) {
+                int[] occurrences = occurrences(clause, result);
+                for (int slot = result.nextSetBit(0); slot >= 0; slot = result.nextSetBit(slot + 1)) {
+                    if (occurrences[slot] == 0) {
+                        result.clear(slot);
+                    }
+                }
+            }
+        }
+        lastMatches = new Matches(query, version, result);
+        return result;
+    }
+
+    // Adds each matching record's BM25 score for a clause, by slot
+    private static void score(Clause clause, BitSet slots, double[] scores) {
+        int[] occurrences = occurrences(clause, slots);
+        double count = slotsById.size();
+        double averageLength = count > 0 ? totalLength / count : 1;
+        for (int i = 0; i < clause.words().size(); i++) {
+            double frequency = containing(clause, i).cardinality();
+            double idf = Math.log(1 + (count - frequency + 0.5) / (frequency + 0.5));
+            for (int slot = slots.nextSetBit(0); slot >= 0; slot = slots.nextSetBit(slot + 1)) {
+                double tf = occurrences[slot];
+                scores[slot] += idf * tf * (K1 + 1) / (tf + K1 * (1 - B + B * lengths[slot] / averageLength));
+            }
+        }
+    }
+
+    // The slots of the records containing a clause's word, or for a prefix any word it begins
+    private static BitSet containing(Clause clause, int index) {
+        BitSet slots = new BitSet(slotCount);
+        for (Posting posting : expand(clause, index)) {
+            posting.addSlotsTo(slots);
+        }
+        return slots;
+    }
+
+    // Counts, for each slot in a set, where the clause's words occur one after another, weighted by field
+    private static int[] occurrences(Clause clause, BitSet slots) {
+        List<Map<Integer, int[]>> wordPositions = new ArrayList<>();
+        for (int i = 0; i < clause.words().size(); i++) {
+            Map<Integer, int[]> bySlot = new HashMap<>();
+            for (Posting posting : expand(clause, i)) {
+                for (int j = 0; j < posting.size; j++) {
+                    if (slots.get(posting.slots[j])) {
+                        bySlot.merge(posting.slots[j], posting.positions[j], SearchIndex::mergeSorted);
+                    }
+                }
+            }
+            wordPositions.add(bySlot);
+        }
+        int[] occurrences = new int[slotCount];
+        List<int[]> positions = new ArrayList<>(wordPositions.size());
+        for (int slot = slots.nextSetBit(0); slot >= 0; slot = slots.nextSetBit(slot + 1)) {
+            positions.clear();
+            for (Map<Integer, int[]> bySlot : wordPositions) {
+                int[] found = bySlot.get(slot);
+                if (found == null) {
+                    break;
+                }
+                positions.add(found);
+            }
+            if (positions.size() == wordPositions.size()) {
+                occurrences[slot] = weightedOccurrences(positions);
+            }
+        }
+        return occurrences;
+    }
+
+    // The posting list of a clause's word, or for a prefix those of every word it begins
+    private static List<Posting> expand(Clause clause, int index) {
+        String word = clause.words().get(index);
+        if (!clause.prefix() || index < clause.words().size() - 1) {
+            Posting posting = postings.get(word);
+            return posting != null ? List.of(posting) : List.of();
+        }
+        return new ArrayList<>(vocabulary.subMap(word, true, word + Character.MAX_VALUE, false).values());
+    }
+
+    private static int[] find(Map<String, int[]> positions, String word, boolean prefix) {
+        if (!prefix) {
+            return positions.get(word);
+        }
+        int[] found = null;
+        for (Map.Entry<String, int[]> entry : positions.entrySet()) {
+            if (entry.getKey().startsWith(word)) {
+                found = found == null ? entry.getValue() : mergeSorted(found, entry.getValue());
+            }
+        }
+        return found;
+    }
+
+    // Counts where the words occur one after another, weighting each occurrence by its field
+    private static int weightedOccurrences(List<int[]> positions) {
+        int occurrences = 0;
+        for (int start : positions.get(0)) {
+            boolean phrase = true;
+            for (int i = 1; i < positions.size() && phrase; i++) {
+                phrase = Arrays.binarySearch(positions.get(i), start + i) >= 0;
+            }
+            if (phrase) {
+                occurrences += FIELD_WEIGHTS[start / FIELD_GAP];
+            }
+        }
+        return occurrences;
+    }
+
+    private static int[] mergeSorted(int[] a, int[] b) {
+        int[] merged = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, merged, a.length, b.length);
+        Arrays.sort(merged);
+        return merged;
+    }
+
+    private static long[] toIds(BitSet slots) {
+        long[] result = slots.stream().mapToLong(slot -> ids[slot]).toArray();
+        Arrays.sort(result);
+        return result;
+    }
+
+    // Maps each word of a record's text fields to its positions, in ascending order
+    private static Map<String, int[]> positions(TravelRecord record) {
+        String[] fields = {record.getDescription(), record.getCity(), record.getAddress(), record.getNotes()};
+        Map<String, int[]> positions = new HashMap<>();
+        for (int field = 0; field < fields.length; field++) {
+            List<String> words = words(fields[field]);
+            for (int i = 0; i < words.size(); i++) {
+                positions.merge(words.get(i), new int[] {field * FIELD_GAP + i}, SearchIndex::mergeSorted);
+            }
+        }
+        return positions;
+    }
+
+    private static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        if (text != null) {
+            Matcher matcher = WORD.matcher(text.toLowerCase(Locale.ROOT));
+            while (matcher.find()) {
+                words.add(matcher.group());
+            }
+        }
+        return words;
+    }
+
+    private static List<Clause> parse(String query) {
+        List<Clause> clauses = new ArrayList<>();
+        if (query == null) {
+            return clauses;
+        }
+        // The last word is still being typed unless the query ends with a space or a closing quote
+        boolean typing = !query.isEmpty() && !Character.isWhitespace(query.charAt(query.length() - 1));
+        String[] segments = query.split("\"", -1);
+        for (int s = 0; s < segments.length; s++) {
+            boolean quoted = s % 2 == 1;
+            boolean lastSegment = s == segments.length - 1;
+            if (quoted) {
+                List<String> words = words(segments[s]);
+                if (!words.isEmpty()) {
+                    // An unclosed quote is still being typed
+                    clauses.add(new Clause(words, lastSegment && typing));
+                }
+                continue;
+            }
+            String[] tokens = segments[s].trim().split("\\s+");
+            for (int t = 0; t < tokens.length; t++) {
+                List<String> words = words(tokens[t]);
+                if (words.isEmpty()) {
+                    continue;
+                }
+                boolean lastToken = lastSegment && t == tokens.length - 1;
+                clauses.add(new Clause(words, tokens[t].endsWith("*") || (lastToken && typing)));
+            }
+        }
+        return clauses;
+    }
+}
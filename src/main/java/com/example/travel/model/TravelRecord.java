@@ -1,77 +1,120 @@
 package com.example.travel.model;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.BatchUpdateException;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
 import java.sql.Types;
-import javax.sql.rowset.serial.SerialBlob;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import jakarta.xml.bind.annotation.*;
 import jakarta.xml.bind.annotation.adapters.*;
+import com.example.travel.util.ConnectionPool;
 import com.example.travel.util.LocalDateTimeAdapter;
+import com.example.travel.util.PersistenceMetrics;
 
 @XmlRootElement(name = "travelRecord")
 @XmlAccessorType(XmlAccessType.FIELD)
 public class TravelRecord {
-    @XmlTransient // Don't serialize database connection info
-    private static final String DB_URL = "jdbc:h2:file:./traveldb";
+    // Every column except the picture data, used for list views that never show images.
+    // Pictures live in the PictureStore and are referenced by hash.
     @XmlTransient
-    private static final String DB_USER = "sa";
+    private static final String SUMMARY_COLUMNS = "id, description, url, state, city, address, zip, phone_number, geo, notes, date_created, date_updated, visited, plan, tag, picture_hash, picture2_hash, picture3_hash";
+    // Rows read per query when a broad search is matched in memory; see findPage
     @XmlTransient
-    private static final String DB_PASSWORD = "";
+    private static final int SEARCH_SCAN_CHUNK = 1000;
+    @XmlTransient
+    private static final String[] PICTURE_HASH_COLUMNS = {"picture_hash", "picture2_hash", "picture3_hash"};
+    // Picture data joined in from the PictureStore when a query needs the images themselves
+    @XmlTransient
+    private static final String PICTURE_DATA_COLUMNS = "p1.data AS picture_data, p2.data AS picture2_data, p3.data AS picture3_data";
+    @XmlTransient
+    private static final String PICTURE_JOINS = " LEFT JOIN pictures p1 ON p1.hash = picture_hash"
+            + " LEFT JOIN pictures p2 ON p2.hash = picture2_hash"
+            + " LEFT JOIN pictures p3 ON p3.hash = picture3_hash";
+    @XmlTransient
+    private static final String INSERT_SQL = "INSERT INTO travel_records (description, url, state, city, address, zip, phone_number, geo, picture_hash, picture2_hash, picture3_hash, notes, date_created, date_updated, visited, plan, tag, latitude, longitude, location) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
 
-    // Execute this method to update the database schema
-    public static void updateDatabaseSchema() throws SQLException {
-        try (Connection conn = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD)) {
-            try (Statement stmt = conn.createStatement()) {
-                // Check if columns exist before adding them
-                try {
-                    stmt.execute("SELECT visited FROM travel_records LIMIT 1");
-                } catch (SQLException e) {
-                    // Column doesn't exist, add it
-                    stmt.execute("ALTER TABLE travel_records ADD COLUMN visited BOOLEAN DEFAULT FALSE NOT NULL");
-                }
+    /**
+     * The fields an update can write, with the columns each one is stored in.
+     */
+    private enum Field {
+        DESCRIPTION("description"), URL("url"), STATE("state"), CITY("city"), ADDRESS("address"), ZIP("zip"),
+        PHONE_NUMBER("phone_number"), GEO("geo", "latitude", "longitude", "location"),
+        PICTURE("picture_hash"), PICTURE2("picture2_hash"), PICTURE3("picture3_hash"),
+        NOTES("notes"), VISITED("visited"), PLAN("plan"), TAG("tag");
 
-                try {
-                    stmt.execute("SELECT plan FROM travel_records LIMIT 1");
-                } catch (SQLException e) {
-                    // Column doesn't exist, add it
-                    stmt.execute("ALTER TABLE travel_records ADD COLUMN plan BOOLEAN DEFAULT FALSE NOT NULL");
-                }
+        private final String[] columns;
 
-                // Add picture2 column if it doesn't exist
-                try {
-                    stmt.execute("SELECT picture2 FROM travel_records LIMIT 1");
-                } catch (SQLException e) {
-                    // Column doesn't exist, add it
-                    stmt.execute("ALTER TABLE travel_records ADD COLUMN picture2 BLOB");
-                    System.out.println("Added 'picture2' column to travel_records table");
-                }
+        Field(String... columns) {
+            this.columns = columns;
+        }
 
-                // Add picture3 column if it doesn't exist
-                try {
-                    stmt.execute("SELECT picture3 FROM travel_records LIMIT 1");
-                } catch (SQLException e) {
-                    // Column doesn't exist, add it
-                    stmt.execute("ALTER TABLE travel_records ADD COLUMN picture3 BLOB");
-                    System.out.println("Added 'picture3' column to travel_records table");
-                }
+        static Field picture(int slot) {
+            return switch (slot) {
+                case 1 -> PICTURE;
+                case 2 -> PICTURE2;
+                default -> PICTURE3;
+            };
+        }
+    }
 
-                // Add tag column if it doesn't exist
-                try {
-                    stmt.execute("SELECT tag FROM travel_records LIMIT 1");
-                } catch (SQLException e) {
-                    // Column doesn't exist, add it
-                    stmt.execute("ALTER TABLE travel_records ADD COLUMN tag VARCHAR(50)");
-                    System.out.println("Added 'tag' column to travel_records table");
+    /**
+     * Parses the geo field of records saved before the location columns existed into their
+     * coordinates. Run once by the schema migration that adds the columns.
+     */
+    public static void backfillLocations(Connection conn) throws SQLException {
+        int updated = 0;
+        try (Statement select = conn.createStatement();
+             ResultSet rs = select.executeQuery("SELECT id, geo FROM travel_records WHERE location IS NULL AND geo <> ''");
+             PreparedStatement update = conn.prepareStatement(
+                     "UPDATE travel_records SET latitude = ?, longitude = ?, location = ? WHERE id = ?")) {
+            while (rs.next()) {
+                GeoPoint location = GeoPoint.parse(rs.getString("geo"));
+                if (location != null) {
+                    bindLocation(update, 1, location);
+                    update.setLong(4, rs.getLong("id"));
+                    update.addBatch();
+                    if (++updated % 500 == 0) {
+                        update.executeBatch();
+                    }
                 }
             }
+            update.executeBatch();
+        }
+        if (updated > 0) {
+            System.out.println("Parsed the location of " + updated + " travel records");
+        }
+    }
+
+    // Binds latitude, longitude and location to three consecutive parameters
+    private static void bindLocation(PreparedStatement stmt, int index, GeoPoint location) throws SQLException {
+        if (location != null) {
+            stmt.setDouble(index, location.latitude());
+            stmt.setDouble(index + 1, location.longitude());
+            stmt.setString(index + 2, location.toWkt());
+        } else {
+            stmt.setNull(index, Types.DOUBLE);
+            stmt.setNull(index + 1, Types.DOUBLE);
+            stmt.setNull(index + 2, Types.VARCHAR);
         }
     }
 
@@ -120,167 +163,755 @@ public class TravelRecord {
     private Boolean plan = false;
     @XmlElement
     private String tag;
+    // Whether picture, picture2 and picture3 hold the database value or still need to be fetched
+    @XmlTransient
+    private final boolean[] pictureLoaded = {true, true, true};
+    // PictureStore hashes of the pictures as last saved
+    @XmlTransient
+    private final String[] pictureHashes = new String[3];
+    // Files holding new pictures, streamed into the PictureStore on save instead of being read into memory
+    @XmlTransient
+    private final Path[] pictureFiles = new Path[3];
+    // Fields set to a new value since the record was loaded or last saved; an update writes only these
+    @XmlTransient
+    private final EnumSet<Field> dirty = EnumSet.noneOf(Field.class);
 
     public TravelRecord() {
-        this.dateCreated = LocalDateTime.now();
+        // Microsecond precision matches the TIMESTAMP columns, so reloaded records compare equal
+        this.dateCreated = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
         this.dateUpdated = this.dateCreated;
     }
 
+    /**
+     * Returns an independent copy of this record, with the same id and unsaved changes. Edits
+     * made to the copy and saved reach the {@link RecordCache} only once they are committed, so
+     * the cached instance other views hold never shows an edit that failed to save.
+     */
+    public TravelRecord copy() {
+        TravelRecord copy = new TravelRecord();
+        copy.id = id;
+        copy.description = description;
+        copy.url = url;
+        copy.state = state;
+        copy.city = city;
+        copy.address = address;
+        copy.zip = zip;
+        copy.phoneNumber = phoneNumber;
+        copy.geo = geo;
+        copy.picture = picture;
+        copy.picture2 = picture2;
+        copy.picture3 = picture3;
+        copy.pictureFileName = pictureFileName;
+        copy.pictureFileName2 = pictureFileName2;
+        copy.pictureFileName3 = pictureFileName3;
+        copy.notes = notes;
+        copy.dateCreated = dateCreated;
+        copy.dateUpdated = dateUpdated;
+        copy.visited = visited;
+        copy.plan = plan;
+        copy.tag = tag;
+        System.arraycopy(pictureLoaded, 0, copy.pictureLoaded, 0, pictureLoaded.length);
+        System.arraycopy(pictureHashes, 0, copy.pictureHashes, 0, pictureHashes.length);
+        System.arraycopy(pictureFiles, 0, copy.pictureFiles, 0, pictureFiles.length);
+        copy.dirty.addAll(dirty);
+        return copy;
+    }
+
     // CRUD Operations
+
+    /**
+     * Inserts a new record, or writes the fields of an existing one that were changed since it
+     * was loaded. Saving an existing record with no changes does nothing.
+     */
     public void save() throws SQLException {
-        // Check if description already exists
-        if (this.id == null) { // Only check for new records
-            try (Connection conn = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD)) {
-                String checkSql = "SELECT COUNT(*) FROM travel_records WHERE description = ?";
-                try (PreparedStatement stmt = conn.prepareStatement(checkSql)) {
-                    stmt.setString(1, this.description);
-                    try (ResultSet rs = stmt.executeQuery()) {
-                        if (rs.next() && rs.getInt(1) > 0) {
-                            throw new SQLException("A record with this description already exists.");
-                        }
-                    }
+        if (this.id != null && dirty.isEmpty()) {
+            return;
+        }
+        // Restored if the transaction is rolled back
+        Long savedId = id;
+        LocalDateTime savedDateUpdated = dateUpdated;
+        String[] savedHashes = pictureHashes.clone();
+        PersistenceMetrics.time(id == null ? "record.insert" : "record.update", () -> {
+            try (Connection conn = ConnectionPool.getConnection()) {
+                // The pictures, the row and the cleanup of replaced pictures are committed together
+                conn.setAutoCommit(false);
+                try {
+                    saveInTransaction(conn);
+                    conn.commit();
+                } catch (SQLException | RuntimeException e) {
+                    conn.rollback();
+                    id = savedId;
+                    dateUpdated = savedDateUpdated;
+                    System.arraycopy(savedHashes, 0, pictureHashes, 0, savedHashes.length);
+                    // The fields still hold the unsaved values; queries must not hand this instance out again
+                    RecordCache.evict(this);
+                    throw e;
                 }
             }
-        }
+        });
+
+        // The pictures are in the database now; drop them so records held by the table don't pin the BLOBs
+        dirty.clear();
+        releasePictures();
+        SearchIndex.update(this);
+        DistanceMatrix.update(this);
+        RecordCache.saved(this);
+    }
+
+    private void saveInTransaction(Connection conn) throws SQLException {
         if (this.id == null) {
-            // Create new record
-            try (Connection conn = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD)) {
-                String sql = "INSERT INTO travel_records (description, url, state, city, address, zip, phone_number, geo, picture, picture2, picture3, notes, date_created, date_updated, visited, plan, tag) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
-                try (PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-                    stmt.setString(1, description);
-                    stmt.setString(2, url);
-                    stmt.setString(3, state);
-                    stmt.setString(4, city);
-                    stmt.setString(5, address);
-                    stmt.setString(6, zip);
-                    stmt.setString(7, phoneNumber);
-                    stmt.setString(8, geo);
-
-                    // Handle picture 1
-                    if (picture != null && picture.length > 0) {
-                        stmt.setBlob(9, new SerialBlob(picture));
-                    } else {
-                        stmt.setNull(9, java.sql.Types.BLOB);
+            // Check if description already exists
+            String checkSql = "SELECT COUNT(*) FROM travel_records WHERE description = ?";
+            try (PreparedStatement stmt = conn.prepareStatement(checkSql)) {
+                stmt.setString(1, this.description);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next() && rs.getInt(1) > 0) {
+                        throw new SQLException("A record with this description already exists.");
                     }
+                }
+            }
 
-                    // Handle picture 2
-                    if (picture2 != null && picture2.length > 0) {
-                        stmt.setBlob(10, new SerialBlob(picture2));
-                    } else {
-                        stmt.setNull(10, java.sql.Types.BLOB);
+            // Create new record
+            storePictures(conn, false);
+            try (PreparedStatement stmt = conn.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                bindInsertParameters(stmt);
+                stmt.executeUpdate();
+
+                try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
+                    if (generatedKeys.next()) {
+                        this.id = generatedKeys.getLong(1);
                     }
+                }
+            }
+        } else {
+            // Update the changed columns only; toggling a flag writes a few bytes, not the whole row
+            this.dateUpdated = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+            String[] previousHashes = pictureHashes.clone();
+            storePictures(conn, true);
+            StringBuilder sql = new StringBuilder("UPDATE travel_records SET ");
+            for (Field field : dirty) {
+                for (String column : field.columns) {
+                    sql.append(column).append(" = ?, ");
+                }
+            }
+            sql.append("date_updated = ? WHERE id = ?");
+            try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+                int index = 1;
+                for (Field field : dirty) {
+                    index = bindField(stmt, index, field);
+                }
+                stmt.setTimestamp(index++, Timestamp.valueOf(dateUpdated));
+                stmt.setLong(index, id);
+                stmt.executeUpdate();
+            }
 
-                    // Handle picture 3
-                    if (picture3 != null && picture3.length > 0) {
-                        stmt.setBlob(11, new SerialBlob(picture3));
-                    } else {
-                        stmt.setNull(11, java.sql.Types.BLOB);
-                    }
+            // Drop the pictures this record no longer uses, unless another record shares them
+            List<String> replaced = new ArrayList<>();
+            for (int i = 0; i < previousHashes.length; i++) {
+                if (previousHashes[i] != null && !previousHashes[i].equals(pictureHashes[i])) {
+                    replaced.add(previousHashes[i]);
+                }
+            }
+            PictureStore.deleteUnreferenced(conn, replaced);
+        }
+    }
 
-                    stmt.setString(12, notes);
-                    stmt.setTimestamp(13, Timestamp.valueOf(dateCreated));
-                    stmt.setTimestamp(14, Timestamp.valueOf(dateUpdated));
-                    stmt.setBoolean(15, visited != null ? visited : false);
-                    stmt.setBoolean(16, plan != null ? plan : false);
-                    stmt.setString(17, tag);
-                    stmt.executeUpdate();
-
-                    try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
-                        if (generatedKeys.next()) {
-                            this.id = generatedKeys.getLong(1);
+    // Puts the loaded pictures, or only the changed ones, into the PictureStore and remembers their hashes
+    private void storePictures(Connection conn, boolean changedOnly) throws SQLException {
+        for (int slot = 1; slot <= PICTURE_HASH_COLUMNS.length; slot++) {
+            Path file = pictureFiles[slot - 1];
+            if (changedOnly ? !dirty.contains(Field.picture(slot)) : !pictureLoaded[slot - 1] && file == null) {
+                continue;
+            }
+            if (file == null) {
+                pictureHashes[slot - 1] = PictureStore.store(conn, pictureData(slot));
+                continue;
+            }
+            try {
+                pictureHashes[slot - 1] = PictureStore.store(conn, file);
+            } catch (IOException e) {
+                throw new SQLException("Could not read picture file " + file, e);
+            }
+        }
+    }
+
+    private void bindInsertParameters(PreparedStatement stmt) throws SQLException {
+        stmt.setString(1, description);
+        stmt.setString(2, url);
+        stmt.setString(3, state);
+        stmt.setString(4, city);
+        stmt.setString(5, address);
+        stmt.setString(6, zip);
+        stmt.setString(7, phoneNumber);
+        stmt.setString(8, geo);
+
+        // Pictures 1 to 3 are referenced by their PictureStore hash
+        for (int slot = 1; slot <= PICTURE_HASH_COLUMNS.length; slot++) {
+            stmt.setString(8 + slot, pictureHashes[slot - 1]);
+        }
+
+        stmt.setString(12, notes);
+        stmt.setTimestamp(13, Timestamp.valueOf(dateCreated));
+        stmt.setTimestamp(14, Timestamp.valueOf(dateUpdated));
+        stmt.setBoolean(15, visited != null ? visited : false);
+        stmt.setBoolean(16, plan != null ? plan : false);
+        stmt.setString(17, tag);
+        bindLocation(stmt, 18, getLocation());
+    }
+
+    // Binds the value of one changed field to its columns, returning the next parameter index
+    private int bindField(PreparedStatement stmt, int index, Field field) throws SQLException {
+        switch (field) {
+            case DESCRIPTION -> stmt.setString(index, description);
+            case URL -> stmt.setString(index, url);
+            case STATE -> stmt.setString(index, state);
+            case CITY -> stmt.setString(index, city);
+            case ADDRESS -> stmt.setString(index, address);
+            case ZIP -> stmt.setString(index, zip);
+            case PHONE_NUMBER -> stmt.setString(index, phoneNumber);
+            case GEO -> {
+                stmt.setString(index, geo);
+                bindLocation(stmt, index + 1, getLocation());
+            }
+            case PICTURE -> stmt.setString(index, pictureHashes[0]);
+            case PICTURE2 -> stmt.setString(index, pictureHashes[1]);
+            case PICTURE3 -> stmt.setString(index, pictureHashes[2]);
+            case NOTES -> stmt.setString(index, notes);
+            case VISITED -> stmt.setBoolean(index, visited != null ? visited : false);
+            case PLAN -> stmt.setBoolean(index, plan != null ? plan : false);
+            case TAG -> stmt.setString(index, tag);
+        }
+        return index + field.columns.length;
+    }
+
+    /**
+     * Inserts new records in JDBC batches inside a single transaction.
+     * <p>
+     * Descriptions that already exist in the database, or that repeat within the list, are
+     * detected with one query per batch and reported as failures instead of aborting the insert.
+     * Rows the database rejects are reported the same way. Inserted records get their ids but are
+     * not announced to {@link RecordCache} listeners; callers should reload their views afterwards.
+     * They are added to the {@link SearchIndex} once committed.
+     *
+     * @param records The records to insert; their ids are ignored
+     * @param batchSize The number of rows sent to the database per batch
+     * @return The number of inserted records and the rejected ones
+     */
+    public static BulkInsertResult insertAll(List<TravelRecord> records, int batchSize) throws SQLException {
+        BulkInsertResult result = new BulkInsertResult();
+        Set<String> seenDescriptions = new HashSet<>();
+        List<TravelRecord> committed = new ArrayList<>();
+        PersistenceMetrics.time("record.insertAll", () -> {
+            try (Connection conn = ConnectionPool.getConnection()) {
+                conn.setAutoCommit(false);
+                try (PreparedStatement check = conn.prepareStatement("SELECT description FROM travel_records WHERE description = ANY(?)");
+                     PreparedStatement insert = conn.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                    for (int start = 0; start < records.size(); start += batchSize) {
+                        List<TravelRecord> batch = records.subList(start, Math.min(records.size(), start + batchSize));
+
+                        // Find the descriptions of this batch that are already taken, in one query
+                        Set<String> existing = new HashSet<>();
+                        check.setArray(1, conn.createArrayOf("VARCHAR",
+                                batch.stream().map(TravelRecord::getDescription).filter(Objects::nonNull).toArray()));
+                        try (ResultSet rs = check.executeQuery()) {
+                            while (rs.next()) {
+                                existing.add(rs.getString(1));
+                            }
                         }
+
+                        List<TravelRecord> accepted = new ArrayList<>();
+                        for (TravelRecord record : batch) {
+                            String description = record.getDescription();
+                            if (description == null || description.isBlank()) {
+                                result.addFailure(description, "A description is required.");
+                            } else if (existing.contains(description) || !seenDescriptions.add(description)) {
+                                result.addFailure(description, "A record with this description already exists.");
+                            } else {
+                                record.storePictures(conn, false);
+                                record.bindInsertParameters(insert);
+                                insert.addBatch();
+                                accepted.add(record);
+                            }
+                        }
+                        if (accepted.isEmpty()) {
+                            continue;
+                        }
+
+                        int[] counts;
+                        try {
+                            counts = insert.executeBatch();
+                        } catch (BatchUpdateException e) {
+                            counts = e.getUpdateCounts();
+                        }
+                        List<TravelRecord> inserted = new ArrayList<>();
+                        for (int i = 0; i < accepted.size(); i++) {
+                            if (i < counts.length && counts[i] != Statement.EXECUTE_FAILED) {
+                                inserted.add(accepted.get(i));
+                            } else {
+                                result.addFailure(accepted.get(i).getDescription(), "The database rejected the record.");
+                                PictureStore.deleteUnreferenced(conn, Arrays.asList(accepted.get(i).pictureHashes));
+                            }
+                        }
+                        try (ResultSet generatedKeys = insert.getGeneratedKeys()) {
+                            for (TravelRecord record : inserted) {
+                                if (!generatedKeys.next()) {
+                                    break;
+                                }
+                                record.id = generatedKeys.getLong(1);
+                            }
+                        }
+                        result.addInserted(inserted.size());
+                        committed.addAll(inserted);
                     }
+                    conn.commit();
+                } catch (SQLException | RuntimeException e) {
+                    conn.rollback();
+                    throw e;
                 }
             }
-        } else {
-            // Update existing record
-            try (Connection conn = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD)) {
-                String sql = "UPDATE travel_records SET description = ?, url = ?, state = ?, city = ?, address = ?, zip = ?, phone_number = ?, geo = ?, picture = ?, picture2 = ?, picture3 = ?, notes = ?, date_updated = ?, visited = ?, plan = ?, tag = ? WHERE id = ?";
+        });
+        for (TravelRecord record : records) {
+            record.releasePictures();
+        }
+        for (TravelRecord record : committed) {
+            record.dirty.clear();
+            SearchIndex.update(record);
+            DistanceMatrix.update(record);
+        }
+        return result;
+    }
+
+    public static TravelRecord findById(Long id) throws SQLException {
+        return PersistenceMetrics.time("record.findById", () -> {
+            try (Connection conn = ConnectionPool.getConnection()) {
+                String sql = "SELECT " + SUMMARY_COLUMNS + ", " + PICTURE_DATA_COLUMNS
+                        + " FROM travel_records" + PICTURE_JOINS + " WHERE id = ?";
                 try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-                    stmt.setString(1, description);
-                    stmt.setString(2, url);
-                    stmt.setString(3, state);
-                    stmt.setString(4, city);
-                    stmt.setString(5, address);
-                    stmt.setString(6, zip);
-                    stmt.setString(7, phoneNumber);
-                    stmt.setString(8, geo);
-
-                    // Handle picture 1
-                    if (picture != null && picture.length > 0) {
-                        stmt.setBlob(9, new SerialBlob(picture));
-                    } else {
-                        stmt.setNull(9, Types.BLOB);
+                    stmt.setLong(1, id);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        if (rs.next()) {
+                            return mapResultSetToRecord(rs, true);
+                        }
                     }
+                }
+            }
+            return null;
+        });
+    }
 
-                    // Handle picture 2
-                    if (picture2 != null && picture2.length > 0) {
-                        stmt.setBlob(10, new SerialBlob(picture2));
-                    } else {
-                        stmt.setNull(10, Types.BLOB);
+    /**
+     * Loads records by id, without their pictures, in one query. The records are not cached.
+     *
+     * @param ids The records to load
+     * @return The records in the order of their ids; ids with no record are left out
+     */
+    public static List<TravelRecord> findByIds(List<Long> ids) throws SQLException {
+        Map<Long, TravelRecord> found = new HashMap<>();
+        PersistenceMetrics.time("record.findByIds", () -> {
+            try (Connection conn = ConnectionPool.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement("SELECT " + SUMMARY_COLUMNS + " FROM travel_records WHERE id = ANY(?)")) {
+                stmt.setArray(1, conn.createArrayOf("BIGINT", ids.toArray()));
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        TravelRecord record = mapResultSetToRecord(rs, false);
+                        found.put(record.getId(), record);
                     }
+                }
+            }
+        });
+        List<TravelRecord> records = new ArrayList<>(found.size());
+        for (Long id : ids) {
+            TravelRecord record = found.get(id);
+            if (record != null) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
 
-                    // Handle picture 3
-                    if (picture3 != null && picture3.length > 0) {
-                        stmt.setBlob(11, new SerialBlob(picture3));
-                    } else {
-                        stmt.setNull(11, Types.BLOB);
+    /**
+     * Loads every record without its pictures. The pictures are fetched one at a time
+     * the first time {@link #getPicture()}, {@link #getPicture2()} or {@link #getPicture3()} is called.
+     */
+    public static List<TravelRecord> findAll() throws SQLException {
+        List<TravelRecord> records = new ArrayList<>();
+        PersistenceMetrics.time("record.findAll", () -> {
+            try (Connection conn = ConnectionPool.getConnection()) {
+                String sql = "SELECT " + SUMMARY_COLUMNS + " FROM travel_records ORDER BY date_created DESC";
+                try (Statement stmt = conn.createStatement();
+                     ResultSet rs = stmt.executeQuery(sql)) {
+                    while (rs.next()) {
+                        records.add(RecordCache.intern(mapResultSetToRecord(rs, false)));
                     }
+                }
+            }
+        });
+        return records;
+    }
 
-                    stmt.setString(12, notes);
-                    stmt.setTimestamp(13, Timestamp.valueOf(dateUpdated));
-                    stmt.setBoolean(14, visited != null ? visited : false);
-                    stmt.setBoolean(15, plan != null ? plan : false);
-                    stmt.setString(16, tag);
-                    stmt.setLong(17, id);
-                    stmt.executeUpdate();
+    /**
+     * Loads the records matching a filter, without their pictures, newest first.
+     * The filter is evaluated by the database in a single parameterized query, except for a broad
+     * search, whose matches are picked out of the rows returned.
+     */
+    public static List<TravelRecord> findByFilter(RecordFilter filter) throws SQLException {
+        List<Object> parameters = new ArrayList<>();
+        boolean broadSearch = filter.isSearchBroad();
+        String sql = "SELECT " + SUMMARY_COLUMNS + " FROM travel_records"
+                + filter.toWhereClause(parameters, !broadSearch) + " ORDER BY date_created DESC";
+        long[] matches = broadSearch ? SearchIndex.matchingIds(filter.getSearchText()) : null;
+        List<TravelRecord> records = new ArrayList<>();
+        PersistenceMetrics.time("record.findByFilter", () -> {
+            try (Connection conn = ConnectionPool.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+                for (int i = 0; i < parameters.size(); i++) {
+                    stmt.setObject(i + 1, parameters.get(i));
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        if (isSearchMatch(matches, rs)) {
+                            records.add(RecordCache.intern(mapResultSetToRecord(rs, false)));
+                        }
+                    }
                 }
             }
+        });
+        return records;
+    }
+
+    // Whether the row is among a broad search's matches; null matches means the query applied the search itself
+    private static boolean isSearchMatch(long[] matches, ResultSet rs) throws SQLException {
+        return matches == null || Arrays.binarySearch(matches, rs.getLong("id")) >= 0;
+    }
+
+    /**
+     * The position of a record in a {@link RecordOrder}, as used by {@link #findPage}.
+     *
+     * @param values The record's values for the order's columns
+     * @param dateCreated The record's creation time, the first tie-breaker
+     * @param id The record's id, the last tie-breaker
+     */
+    public record PageKey(List<Object> values, LocalDateTime dateCreated, long id) {
+        public static PageKey of(TravelRecord record, RecordOrder order) {
+            return new PageKey(order.valuesOf(record), record.getDateCreated(), record.getId());
         }
     }
 
-    public static TravelRecord findById(Long id) throws SQLException {
-        try (Connection conn = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD)) {
-            String sql = "SELECT * FROM travel_records WHERE id = ?";
-            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-                stmt.setLong(1, id);
+    /**
+     * Loads one page of the records matching a filter, without their pictures, in the given order.
+     * <p>
+     * Given the record the page follows, the database seeks straight to it through the order's
+     * index instead of counting rows from the start, so deep pages cost as little as the first one.
+     * The offset only skips rows past that record.
+     *
+     * @param filter The records to page through
+     * @param order The order to list them in
+     * @param after The key of the last record before the page, or null to start from the first record
+     * @param offset The number of matching rows to skip after {@code after}
+     * @param limit The maximum number of records to load
+     */
+    public static List<TravelRecord> findPage(RecordFilter filter, RecordOrder order, PageKey after,
+                                              int offset, int limit) throws SQLException {
+        if (!filter.isSearchBroad()) {
+            return findPage(filter, true, order, after, offset, limit);
+        }
+        // Read the rows in order a chunk at a time and keep those the search matches
+        long[] matches = SearchIndex.matchingIds(filter.getSearchText());
+        List<TravelRecord> records = new ArrayList<>(limit);
+        int skipped = 0;
+        while (true) {
+            List<TravelRecord> chunk = findPage(filter, false, order, after, 0, SEARCH_SCAN_CHUNK);
+            for (TravelRecord record : chunk) {
+                if (Arrays.binarySearch(matches, record.getId()) < 0) {
+                    continue;
+                }
+                if (skipped < offset) {
+                    skipped++;
+                } else if (records.add(record) && records.size() == limit) {
+                    return records;
+                }
+            }
+            if (chunk.size() < SEARCH_SCAN_CHUNK) {
+                return records;
+            }
+            after = PageKey.of(chunk.get(chunk.size() - 1), order);
+        }
+    }
+
+    private static List<TravelRecord> findPage(RecordFilter filter, boolean withSearch, RecordOrder order,
+                                               PageKey after, int offset, int limit) throws SQLException {
+        List<Object> parameters = new ArrayList<>();
+        String where = filter.toWhereClause(parameters, withSearch);
+        if (after != null) {
+            where += (where.isEmpty() ? " WHERE " : " AND ") + order.toAfterPredicate(after, parameters);
+        }
+        // Left to itself H2 prefers the visited index, then sorts every unvisited record to find one page.
+        // A state or tag filter is selective enough for its own index to do better.
+        String index = filter.isSelective() ? null : order.indexName();
+        String from = index != null ? " FROM travel_records USE INDEX (" + index + ")" : " FROM travel_records";
+        String sql = "SELECT " + SUMMARY_COLUMNS + from + where
+                + order.toOrderByClause() + " LIMIT ? OFFSET ?";
+        parameters.add(limit);
+        parameters.add(offset);
+
+        List<TravelRecord> records = new ArrayList<>(limit);
+        PersistenceMetrics.time("record.findPage", () -> {
+            try (Connection conn = ConnectionPool.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+                for (int i = 0; i < parameters.size(); i++) {
+                    stmt.setObject(i + 1, parameters.get(i));
+                }
                 try (ResultSet rs = stmt.executeQuery()) {
-                    if (rs.next()) {
-                        return mapResultSetToRecord(rs);
+                    while (rs.next()) {
+                        records.add(RecordCache.intern(mapResultSetToRecord(rs, false)));
                     }
                 }
             }
+        });
+        return records;
+    }
+
+    /**
+     * Counts the records matching a filter.
+     */
+    public static int count(RecordFilter filter) throws SQLException {
+        List<Object> parameters = new ArrayList<>();
+        boolean broadSearch = filter.isSearchBroad();
+        String sql = (broadSearch ? "SELECT id" : "SELECT COUNT(*)") + " FROM travel_records"
+                + filter.toWhereClause(parameters, !broadSearch);
+        long[] matches = broadSearch ? SearchIndex.matchingIds(filter.getSearchText()) : null;
+        return PersistenceMetrics.time("record.count", () -> {
+            try (Connection conn = ConnectionPool.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+                for (int i = 0; i < parameters.size(); i++) {
+                    stmt.setObject(i + 1, parameters.get(i));
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (!broadSearch) {
+                        rs.next();
+                        return rs.getInt(1);
+                    }
+                    int count = 0;
+                    while (rs.next()) {
+                        if (Arrays.binarySearch(matches, rs.getLong(1)) >= 0) {
+                            count++;
+                        }
+                    }
+                    return count;
+                }
+            }
+        });
+    }
+
+    /**
+     * Loads the records matching a filter within a distance of a position, without their pictures,
+     * nearest first. The spatial index finds the records in the box around the circle, and the
+     * great-circle distance then drops those in its corners.
+     *
+     * @param center The position to measure from
+     * @param radiusMiles The greatest distance to include
+     * @param filter Further criteria the records must match
+     */
+    public static List<TravelRecord> findWithinRadius(GeoPoint center, double radiusMiles,
+                                                      RecordFilter filter) throws SQLException {
+        double angle = radiusMiles / GeoPoint.EARTH_RADIUS_MILES;
+        double south = center.latitude() - Math.toDegrees(angle);
+        double north = center.latitude() + Math.toDegrees(angle);
+        double west = -180;
+        double east = 180;
+        // A circle around a pole covers every longitude; otherwise find the meridians it touches
+        double sinLongitude = Math.sin(angle) / Math.cos(Math.toRadians(center.latitude()));
+        if (south > -90 && north < 90 && sinLongitude < 1) {
+            double longitudeDelta = Math.toDegrees(Math.asin(sinLongitude));
+            west = center.longitude() - longitudeDelta;
+            east = center.longitude() + longitudeDelta;
+            // Wrap across the antimeridian; findInBoundingBox takes west greater than east as crossing it
+            west = west < -180 ? west + 360 : west;
+            east = east > 180 ? east - 360 : east;
         }
-        return null;
+        GeoPoint southWest = new GeoPoint(Math.max(south, -90), west);
+        GeoPoint northEast = new GeoPoint(Math.min(north, 90), east);
+
+        Map<TravelRecord, Double> distances = new IdentityHashMap<>();
+        for (TravelRecord record : findInBoundingBox(southWest, northEast, filter)) {
+            GeoPoint location = record.getLocation();
+            if (location != null && center.distanceMiles(location) <= radiusMiles) {
+                distances.put(record, center.distanceMiles(location));
+            }
+        }
+        List<TravelRecord> records = new ArrayList<>(distances.keySet());
+        records.sort(Comparator.comparingDouble(distances::get));
+        return records;
     }
 
-    public static List<TravelRecord> findAll() throws SQLException {
+    /**
+     * Loads the records matching a filter whose location lies in a box, without their pictures,
+     * newest first. The query is answered from the spatial index on the location column.
+     *
+     * @param southWest The corner with the lowest latitude and the westernmost longitude
+     * @param northEast The corner with the highest latitude and the easternmost longitude; a
+     *                  longitude west of the south-west corner's makes the box cross the antimeridian
+     * @param filter Further criteria the records must match
+     */
+    public static List<TravelRecord> findInBoundingBox(GeoPoint southWest, GeoPoint northEast,
+                                                       RecordFilter filter) throws SQLException {
+        List<String> boxes = new ArrayList<>();
+        if (southWest.longitude() <= northEast.longitude()) {
+            boxes.add(envelope(southWest.latitude(), southWest.longitude(), northEast.latitude(), northEast.longitude()));
+        } else {
+            boxes.add(envelope(southWest.latitude(), southWest.longitude(), northEast.latitude(), 180));
+            boxes.add(envelope(southWest.latitude(), -180, northEast.latitude(), northEast.longitude()));
+        }
+
+        boolean broadSearch = filter.isSearchBroad();
+        long[] matches = broadSearch ? SearchIndex.matchingIds(filter.getSearchText()) : null;
         List<TravelRecord> records = new ArrayList<>();
-        try (Connection conn = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD)) {
-            String sql = "SELECT * FROM travel_records ORDER BY date_created DESC";
-            try (Statement stmt = conn.createStatement();
-                 ResultSet rs = stmt.executeQuery(sql)) {
+        for (String box : boxes) {
+            List<Object> parameters = new ArrayList<>();
+            String where = filter.toWhereClause(parameters, !broadSearch);
+            String sql = "SELECT " + SUMMARY_COLUMNS + " FROM travel_records" + where
+                    + (where.isEmpty() ? " WHERE " : " AND ") + "location && CAST(? AS GEOMETRY)";
+            parameters.add(box);
+            PersistenceMetrics.time("record.findInBoundingBox", () -> {
+                try (Connection conn = ConnectionPool.getConnection();
+                     PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    for (int i = 0; i < parameters.size(); i++) {
+                        stmt.setObject(i + 1, parameters.get(i));
+                    }
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            if (isSearchMatch(matches, rs)) {
+                                records.add(RecordCache.intern(mapResultSetToRecord(rs, false)));
+                            }
+                        }
+                    }
+                }
+            });
+        }
+        records.sort(RecordOrder.NEWEST_FIRST.comparator());
+        return records;
+    }
+
+    // A box as a well-known-text polygon, longitude first
+    private static String envelope(double south, double west, double north, double east) {
+        return "POLYGON ((" + west + " " + south + ", " + east + " " + south + ", " + east + " " + north
+                + ", " + west + " " + north + ", " + west + " " + south + "))";
+    }
+
+    /**
+     * Receives records one at a time from a database cursor.
+     *
+     * @param <E> The exception the visitor may throw
+     */
+    @FunctionalInterface
+    public interface RecordVisitor<E extends Exception> {
+        void visit(TravelRecord record) throws E;
+    }
+
+    /**
+     * Streams the records matching a filter through a visitor, oldest first, without keeping
+     * them in memory. The records are not cached, so they can carry their pictures cheaply.
+     *
+     * @param filter The records to visit
+     * @param withPictures Whether to read the picture BLOBs along with each row
+     * @param visitor Called once per record
+     */
+    public static <E extends Exception> void forEach(RecordFilter filter, boolean withPictures,
+                                                     RecordVisitor<E> visitor) throws SQLException, E {
+        List<Object> parameters = new ArrayList<>();
+        String sql = withPictures
+                ? "SELECT " + SUMMARY_COLUMNS + ", " + PICTURE_DATA_COLUMNS + " FROM travel_records" + PICTURE_JOINS
+                : "SELECT " + SUMMARY_COLUMNS + " FROM travel_records";
+        boolean broadSearch = filter.isSearchBroad();
+        sql += filter.toWhereClause(parameters, !broadSearch) + " ORDER BY date_created, id";
+        long[] matches = broadSearch ? SearchIndex.matchingIds(filter.getSearchText()) : null;
+        // The operation's time includes the visitor's, whose exceptions PersistenceMetrics.time cannot pass on
+        PersistenceMetrics.Operation operation = PersistenceMetrics.start("record.forEach");
+        try (Connection conn = ConnectionPool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setFetchSize(100);
+            for (int i = 0; i < parameters.size(); i++) {
+                stmt.setObject(i + 1, parameters.get(i));
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
-                    records.add(mapResultSetToRecord(rs));
+                    if (isSearchMatch(matches, rs)) {
+                        visitor.visit(mapResultSetToRecord(rs, withPictures));
+                    }
                 }
             }
+        } finally {
+            operation.close();
         }
-        return records;
     }
 
-    public void delete() throws SQLException {
-        if (this.id != null) {
-            try (Connection conn = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD)) {
-                String sql = "DELETE FROM travel_records WHERE id = ?";
+    /**
+     * Fetches a single picture BLOB.
+     *
+     * @param id The record id
+     * @param slot The picture slot, 1 to 3
+     * @return The picture bytes, or null if the record has no picture in that slot
+     */
+    public static byte[] findPicture(Long id, int slot) throws SQLException {
+        String column = PICTURE_HASH_COLUMNS[slot - 1];
+        return PersistenceMetrics.time("record.findPicture", () -> {
+            try (Connection conn = ConnectionPool.getConnection()) {
+                String sql = "SELECT p.data FROM travel_records r JOIN pictures p ON p.hash = r." + column + " WHERE r.id = ?";
                 try (PreparedStatement stmt = conn.prepareStatement(sql)) {
                     stmt.setLong(1, id);
-                    stmt.executeUpdate();
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        if (rs.next()) {
+                            return readBlob(rs, 1);
+                        }
+                    }
                 }
             }
+            return null;
+        });
+    }
+
+    public void delete() throws SQLException {
+        if (this.id != null) {
+            PersistenceMetrics.time("record.delete", () -> {
+                try (Connection conn = ConnectionPool.getConnection()) {
+                    // The row and its unshared pictures are deleted together
+                    conn.setAutoCommit(false);
+                    try {
+                        List<String> hashes = new ArrayList<>();
+                        String hashSql = "SELECT " + String.join(", ", PICTURE_HASH_COLUMNS) + " FROM travel_records WHERE id = ?";
+                        try (PreparedStatement stmt = conn.prepareStatement(hashSql)) {
+                            stmt.setLong(1, id);
+                            try (ResultSet rs = stmt.executeQuery()) {
+                                if (rs.next()) {
+                                    for (int i = 1; i <= PICTURE_HASH_COLUMNS.length; i++) {
+                                        hashes.add(rs.getString(i));
+                                    }
+                                }
+                            }
+                        }
+
+                        String sql = "DELETE FROM travel_records WHERE id = ?";
+                        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                            stmt.setLong(1, id);
+                            stmt.executeUpdate();
+                        }
+
+                        // Drop the record's pictures unless another record shares them
+                        PictureStore.deleteUnreferenced(conn, hashes);
+                        conn.commit();
+                    } catch (SQLException | RuntimeException e) {
+                        conn.rollback();
+                        throw e;
+                    }
+                }
+            });
+            SearchIndex.remove(id);
+            DistanceMatrix.remove(id);
+            RecordCache.deleted(id);
         }
     }
 
-    private static TravelRecord mapResultSetToRecord(ResultSet rs) throws SQLException {
+    private static TravelRecord mapResultSetToRecord(ResultSet rs, boolean withPictures) throws SQLException {
         TravelRecord record = new TravelRecord();
         record.setId(rs.getLong("id"));
         record.setDescription(rs.getString("description"));
@@ -299,38 +930,15 @@ public class TravelRecord {
             record.setPhoneNumber(null);
         }
 
-        // Handle picture 1
-        java.sql.Blob blob = rs.getBlob("picture");
-        if (blob != null) {
-            record.setPicture(blob.getBytes(1, (int) blob.length()));
-        } else {
-            record.setPicture(null);
+        for (int i = 0; i < PICTURE_HASH_COLUMNS.length; i++) {
+            record.pictureHashes[i] = rs.getString(PICTURE_HASH_COLUMNS[i]);
         }
-
-        // Handle picture 2 if it exists
-        try {
-            java.sql.Blob blob2 = rs.getBlob("picture2");
-            if (blob2 != null) {
-                record.setPicture2(blob2.getBytes(1, (int) blob2.length()));
-            } else {
-                record.setPicture2(null);
-            }
-        } catch (SQLException e) {
-            // If column doesn't exist yet, use default value
-            record.setPicture2(null);
-        }
-
-        // Handle picture 3 if it exists
-        try {
-            java.sql.Blob blob3 = rs.getBlob("picture3");
-            if (blob3 != null) {
-                record.setPicture3(blob3.getBytes(1, (int) blob3.length()));
-            } else {
-                record.setPicture3(null);
-            }
-        } catch (SQLException e) {
-            // If column doesn't exist yet, use default value
-            record.setPicture3(null);
+        if (withPictures) {
+            record.setPicture(readBlob(rs, rs.findColumn("picture_data")));
+            record.setPicture2(readBlob(rs, rs.findColumn("picture2_data")));
+            record.setPicture3(readBlob(rs, rs.findColumn("picture3_data")));
+        } else {
+            record.releasePictures();
         }
 
         record.setNotes(rs.getString("notes"));
@@ -355,9 +963,20 @@ public class TravelRecord {
             record.setTag(null);
         }
 
+        // The fields hold the database values, so nothing is changed yet
+        record.dirty.clear();
         return record;
     }
 
+    // Reads a BLOB straight into one array, without the driver's Blob object in between
+    private static byte[] readBlob(ResultSet rs, int column) throws SQLException {
+        try (InputStream in = rs.getBinaryStream(column)) {
+            return in != null ? in.readAllBytes() : null;
+        } catch (IOException e) {
+            throw new SQLException("Could not read a picture", e);
+        }
+    }
+
     // Getters and Setters
     public Long getId() {
         return id;
@@ -372,6 +991,7 @@ public class TravelRecord {
     }
 
     public void setDescription(String description) {
+        markChanged(Field.DESCRIPTION, this.description, description);
         this.description = description;
     }
 
@@ -380,6 +1000,7 @@ public class TravelRecord {
     }
 
     public void setUrl(String url) {
+        markChanged(Field.URL, this.url, url);
         this.url = url;
     }
 
@@ -388,6 +1009,7 @@ public class TravelRecord {
     }
 
     public void setState(String state) {
+        markChanged(Field.STATE, this.state, state);
         this.state = state;
     }
 
@@ -396,6 +1018,7 @@ public class TravelRecord {
     }
 
     public void setCity(String city) {
+        markChanged(Field.CITY, this.city, city);
         this.city = city;
     }
 
@@ -404,6 +1027,7 @@ public class TravelRecord {
     }
 
     public void setAddress(String address) {
+        markChanged(Field.ADDRESS, this.address, address);
         this.address = address;
     }
 
@@ -412,6 +1036,7 @@ public class TravelRecord {
     }
 
     public void setZip(String zip) {
+        markChanged(Field.ZIP, this.zip, zip);
         this.zip = zip;
     }
 
@@ -420,31 +1045,134 @@ public class TravelRecord {
     }
 
     public void setPhoneNumber(String phoneNumber) {
+        markChanged(Field.PHONE_NUMBER, this.phoneNumber, phoneNumber);
         this.phoneNumber = phoneNumber;
     }
 
     public byte[] getPicture() {
+        loadPicture(1);
         return picture;
     }
 
     public void setPicture(byte[] picture) {
+        // A picture that was never loaded may differ from the new one
+        if (!pictureLoaded[0] || !Arrays.equals(this.picture, picture)) {
+            dirty.add(Field.picture(1));
+        }
         this.picture = picture;
+        pictureLoaded[0] = true;
+        pictureFiles[0] = null;
     }
 
     public byte[] getPicture2() {
+        loadPicture(2);
         return picture2;
     }
 
     public void setPicture2(byte[] picture2) {
+        // A picture that was never loaded may differ from the new one
+        if (!pictureLoaded[1] || !Arrays.equals(this.picture2, picture2)) {
+            dirty.add(Field.picture(2));
+        }
         this.picture2 = picture2;
+        pictureLoaded[1] = true;
+        pictureFiles[1] = null;
     }
 
     public byte[] getPicture3() {
+        loadPicture(3);
         return picture3;
     }
 
     public void setPicture3(byte[] picture3) {
+        // A picture that was never loaded may differ from the new one
+        if (!pictureLoaded[2] || !Arrays.equals(this.picture3, picture3)) {
+            dirty.add(Field.picture(3));
+        }
         this.picture3 = picture3;
+        pictureLoaded[2] = true;
+        pictureFiles[2] = null;
+    }
+
+    /**
+     * Sets a picture from a file. The file is not read into memory; it is streamed into the
+     * database when the record is saved, so it must still exist then.
+     *
+     * @param slot The picture slot, 1 to 3
+     * @param file The picture file, or null to remove the picture
+     */
+    public void setPicture(int slot, Path file) {
+        if (file == null) {
+            switch (slot) {
+                case 1 -> setPicture((byte[]) null);
+                case 2 -> setPicture2(null);
+                default -> setPicture3(null);
+            }
+            return;
+        }
+        dirty.add(Field.picture(slot));
+        switch (slot) {
+            case 1 -> picture = null;
+            case 2 -> picture2 = null;
+            default -> picture3 = null;
+        }
+        pictureLoaded[slot - 1] = false;
+        pictureFiles[slot - 1] = file;
+    }
+
+    private void markChanged(Field field, Object oldValue, Object newValue) {
+        if (!Objects.equals(oldValue, newValue)) {
+            dirty.add(field);
+        }
+    }
+
+    private byte[] pictureData(int slot) {
+        return switch (slot) {
+            case 1 -> picture;
+            case 2 -> picture2;
+            default -> picture3;
+        };
+    }
+
+    // Fetches the picture in the given slot from its file or the database the first time it is needed
+    private void loadPicture(int slot) {
+        Path file = pictureFiles[slot - 1];
+        if (pictureLoaded[slot - 1] || (id == null && file == null)) {
+            return;
+        }
+        try {
+            byte[] data = file != null ? Files.readAllBytes(file) : PictureStore.find(pictureHashes[slot - 1]);
+            switch (slot) {
+                case 1 -> picture = data;
+                case 2 -> picture2 = data;
+                default -> picture3 = data;
+            }
+            pictureLoaded[slot - 1] = true;
+        } catch (SQLException | IOException e) {
+            System.err.println("Error loading picture " + slot + " for record " + id + ": " + e.getMessage());
+        }
+    }
+
+    // Forgets the in-memory pictures of a persisted record; they are fetched again on demand
+    private void releasePictures() {
+        if (id == null) {
+            return;
+        }
+        picture = null;
+        picture2 = null;
+        picture3 = null;
+        Arrays.fill(pictureLoaded, false);
+        Arrays.fill(pictureFiles, null);
+    }
+
+    /**
+     * Returns the PictureStore hash of a picture as last saved or loaded.
+     *
+     * @param slot The picture slot, 1 to 3
+     * @return The hash, or null if the slot has no picture
+     */
+    public String getPictureHash(int slot) {
+        return pictureHashes[slot - 1];
     }
 
     public String getPictureFileName() {
@@ -476,6 +1204,7 @@ public class TravelRecord {
     }
 
     public void setNotes(String notes) {
+        markChanged(Field.NOTES, this.notes, notes);
         this.notes = notes;
     }
 
@@ -484,9 +1213,17 @@ public class TravelRecord {
     }
 
     public void setGeo(String geo) {
+        markChanged(Field.GEO, this.geo, geo);
         this.geo = geo;
     }
 
+    /**
+     * The position written in the geo field, or null if it is empty or not a recognizable position.
+     */
+    public GeoPoint getLocation() {
+        return GeoPoint.parse(geo);
+    }
+
     public LocalDateTime getDateCreated() {
         return dateCreated;
     }
@@ -504,6 +1241,7 @@ public class TravelRecord {
     }
 
     public void setVisited(Boolean visited) {
+        markChanged(Field.VISITED, this.visited, visited);
         this.visited = visited;
     }
 
@@ -512,6 +1250,7 @@ public class TravelRecord {
     }
 
     public void setPlan(Boolean plan) {
+        markChanged(Field.PLAN, this.plan, plan);
         this.plan = plan;
     }
 
@@ -520,6 +1259,7 @@ public class TravelRecord {
     }
 
     public void setTag(String tag) {
+        markChanged(Field.TAG, this.tag, tag);
         this.tag = tag;
     }
 }
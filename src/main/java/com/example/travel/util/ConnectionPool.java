@@ -0,0 +1,299 @@
+package com.example.travel.util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shared pool of long-lived database connections used by the model classes and the schema updater.
+ * <p>
+ * The pool is configured from system properties the first time it is used:
+ * <ul>
+ *     <li>{@code travel.db.url}, {@code travel.db.user}, {@code travel.db.password} - connection settings</li>
+ *     <li>{@code travel.db.poolSize} - maximum number of open connections (default 8)</li>
+ *     <li>{@code travel.db.idleTimeoutSeconds} - idle connections older than this are closed (default 300)</li>
+ *     <li>{@code travel.db.acquireTimeoutSeconds} - how long a caller waits for a free connection (default 30)</li>
+ * </ul>
+ * Connections handed out by {@link #getConnection()} go back to the pool when they are closed.
+ * Their statements are instrumented for {@link PersistenceMetrics}.
+ */
+public final class ConnectionPool {
+    private static final String DEFAULT_URL = "jdbc:h2:file:./traveldb;AUTO_SERVER=TRUE";
+    private static final String DEFAULT_USER = "sa";
+    private static final String DEFAULT_PASSWORD = "";
+
+    private static ConnectionPool instance;
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int maxSize;
+    private final long idleTimeoutMillis;
+    private final long acquireTimeoutMillis;
+
+    // Most recently returned connection first, so the oldest ones at the tail age out
+    private final LinkedBlockingDeque<IdleConnection> idle = new LinkedBlockingDeque<>();
+    private final Semaphore permits;
+    private final ScheduledExecutorService evictor;
+    private volatile boolean closed;
+
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final AtomicLong acquireCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong evictedCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+
+    private record IdleConnection(Connection connection, long returnedAt) {
+    }
+
+    /**
+     * Snapshot of the pool counters.
+     */
+    public record Metrics(int maxSize, int open, int idle, int inUse, long acquireCount, long totalWaitNanos,
+                          long maxWaitNanos, long createdCount, long evictedCount, long timeoutCount) {
+        public double averageWaitMillis() {
+            return acquireCount == 0 ? 0 : totalWaitNanos / 1_000_000.0 / acquireCount;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("pool size=%d open=%d idle=%d in use=%d acquires=%d avg wait=%.3f ms max wait=%.3f ms created=%d evicted=%d timeouts=%d",
+                    maxSize, open, idle, inUse, acquireCount, averageWaitMillis(), maxWaitNanos / 1_000_000.0,
+                    createdCount, evictedCount, timeoutCount);
+        }
+    }
+
+    private ConnectionPool(String url, String user, String password, int maxSize,
+                           long idleTimeoutMillis, long acquireTimeoutMillis) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.maxSize = maxSize;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.permits = new Semaphore(maxSize, true);
+        this.evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "connection-pool-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1000, idleTimeoutMillis / 2);
+        evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrows a connection from the shared pool. Closing it returns it to the pool.
+     */
+    public static Connection getConnection() throws SQLException {
+        return getInstance().acquire();
+    }
+
+    /**
+     * Returns the shared pool, creating it from the system properties if needed.
+     */
+    public static synchronized ConnectionPool getInstance() {
+        if (instance == null) {
+            instance = new ConnectionPool(
+                    System.getProperty("travel.db.url", DEFAULT_URL),
+                    System.getProperty("travel.db.user", DEFAULT_USER),
+                    System.getProperty("travel.db.password", DEFAULT_PASSWORD),
+                    Integer.getInteger("travel.db.poolSize", 8),
+                    TimeUnit.SECONDS.toMillis(Long.getLong("travel.db.idleTimeoutSeconds", 300)),
+                    TimeUnit.SECONDS.toMillis(Long.getLong("travel.db.acquireTimeoutSeconds", 30)));
+        }
+        return instance;
+    }
+
+    /**
+     * Replaces the shared pool with one pointing at another database, e.g. a temporary file.
+     *
+     * @param url The JDBC URL
+     * @param user The database user
+     * @param password The database password
+     * @param maxSize The maximum number of open connections
+     */
+    public static synchronized void configure(String url, String user, String password, int maxSize) {
+        shutdown();
+        instance = new ConnectionPool(url, user, password, maxSize,
+                TimeUnit.SECONDS.toMillis(Long.getLong("travel.db.idleTimeoutSeconds", 300)),
+                TimeUnit.SECONDS.toMillis(Long.getLong("travel.db.acquireTimeoutSeconds", 30)));
+    }
+
+    /**
+     * Closes every idle connection and stops the shared pool. Connections still in use are closed when returned.
+     */
+    public static synchronized void shutdown() {
+        if (instance != null) {
+            instance.close();
+            instance = null;
+        }
+    }
+
+    /**
+     * The JDBC URL the pool connects to.
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    public Metrics getMetrics() {
+        int open = openConnections.get();
+        int idleCount = idle.size();
+        return new Metrics(maxSize, open, idleCount, maxSize - permits.availablePermits(),
+                acquireCount.get(), totalWaitNanos.get(), maxWaitNanos.get(),
+                createdCount.get(), evictedCount.get(), timeoutCount.get());
+    }
+
+    private Connection acquire() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool has been shut down");
+        }
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                timeoutCount.incrementAndGet();
+                throw new SQLException("Timed out waiting for a database connection (" + getMetrics() + ")");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+        long waited = System.nanoTime() - start;
+        acquireCount.incrementAndGet();
+        totalWaitNanos.addAndGet(waited);
+        maxWaitNanos.accumulateAndGet(waited, Math::max);
+
+        try {
+            Connection physical = null;
+            IdleConnection candidate;
+            while (physical == null && (candidate = idle.pollFirst()) != null) {
+                if (candidate.connection().isClosed()) {
+                    openConnections.decrementAndGet();
+                } else {
+                    physical = candidate.connection();
+                }
+            }
+            if (physical == null) {
+                physical = DriverManager.getConnection(url, user, password);
+                openConnections.incrementAndGet();
+                createdCount.incrementAndGet();
+            }
+            PersistenceMetrics.connectionAcquired(System.nanoTime() - start);
+            return wrap(physical);
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private void release(Connection physical) {
+        try {
+            if (closed || physical.isClosed()) {
+                closePhysical(physical);
+                return;
+            }
+            if (!physical.getAutoCommit()) {
+                physical.rollback();
+                physical.setAutoCommit(true);
+            }
+            idle.offerFirst(new IdleConnection(physical, System.currentTimeMillis()));
+        } catch (SQLException e) {
+            System.err.println("Discarding pooled connection: " + e.getMessage());
+            closePhysical(physical);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void evictIdle() {
+        long cutoff = System.currentTimeMillis() - idleTimeoutMillis;
+        Iterator<IdleConnection> oldestFirst = idle.descendingIterator();
+        while (oldestFirst.hasNext()) {
+            IdleConnection candidate = oldestFirst.next();
+            if (candidate.returnedAt() > cutoff) {
+                break;
+            }
+            if (idle.removeFirstOccurrence(candidate)) {
+                closePhysical(candidate.connection());
+                evictedCount.incrementAndGet();
+            }
+        }
+    }
+
+    private void close() {
+        closed = true;
+        evictor.shutdownNow();
+        IdleConnection candidate;
+        while ((candidate = idle.pollFirst()) != null) {
+            closePhysical(candidate.connection());
+        }
+    }
+
+    private void closePhysical(Connection physical) {
+        try {
+            physical.close();
+        } catch (SQLException e) {
+            System.err.println("Error closing pooled connection: " + e.getMessage());
+        }
+        openConnections.decrementAndGet();
+    }
+
+    // Hands out a view of the physical connection whose close() returns it to the pool
+    private Connection wrap(Connection physical) {
+        InvocationHandler handler = new InvocationHandler() {
+            private boolean returned;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "close":
+                        if (!returned) {
+                            returned = true;
+                            release(physical);
+                        }
+                        return null;
+                    case "isClosed":
+                        return returned || physical.isClosed();
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "toString":
+                        return "Pooled" + physical;
+                    default:
+                        if (returned) {
+                            throw new SQLException("Connection has already been returned to the pool");
+                        }
+                        Object result;
+                        try {
+                            result = method.invoke(physical, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                        if (result instanceof Statement statement && PersistenceMetrics.ENABLED) {
+                            return InstrumentedJdbc.statement(statement, method.getReturnType(),
+                                    args != null && args.length > 0 && args[0] instanceof String sql ? sql : null);
+                        }
+                        return result;
+                }
+            }
+        };
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, handler);
+    }
+}
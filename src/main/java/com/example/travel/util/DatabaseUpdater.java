@@ -1,88 +1,227 @@
 package com.example.travel.util;
 
+import com.example.travel.model.PictureStore;
+import com.example.travel.model.TravelRecord;
+
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
 
 /**
- * Utility class to update the database schema.
+ * Brings the database schema up to date by running numbered migrations, each once.
+ * <p>
+ * The migrations that have run are recorded in the {@code schema_version} table with a checksum of
+ * their SQL. At startup the table is read and only the migrations after the recorded version run,
+ * so a current database sees no DDL at all. A recorded migration whose SQL no longer matches its
+ * checksum stops the update, since the schema would no longer be what the code expects; so does a
+ * database migrated by a newer version of the application.
+ * <p>
+ * Migrations are only ever appended. Their statements are written to be safe on a database that
+ * already has some of their changes, which lets a database created before versioning replay them all.
+ * <p>
+ * Each migration runs in a transaction with the row recording it, so a migration that fails is
+ * not recorded and its data changes are rolled back. H2 commits before every DDL statement, so
+ * the statements themselves stay applied; being safe to repeat, they run again on the next start.
  */
 public class DatabaseUpdater {
-    private static final String DB_URL = "jdbc:h2:file:./traveldb";
-    private static final String DB_USER = "sa";
-    private static final String DB_PASSWORD = "";
 
     /**
-     * Updates the database schema to add the visited and plan columns.
-     * This method should be called when the application starts.
+     * Work a migration does in code after its statements, such as converting existing rows.
      */
-    public static void updateSchema() {
-        try (Connection conn = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD)) {
-            try (Statement stmt = conn.createStatement()) {
-                // Create tags table if it doesn't exist
-                try {
-                    stmt.execute("CREATE TABLE IF NOT EXISTS tags (id BIGINT AUTO_INCREMENT PRIMARY KEY, tag VARCHAR(50) UNIQUE NOT NULL)");
-                    System.out.println("Created 'tags' table if it didn't exist");
-                } catch (SQLException e) {
-                    System.err.println("Error creating tags table: " + e.getMessage());
-                    e.printStackTrace();
-                }
-                // Add visited column if it doesn't exist
-                try {
-                    stmt.execute("ALTER TABLE travel_records ADD COLUMN visited BOOLEAN DEFAULT FALSE NOT NULL");
-                    System.out.println("Added 'visited' column to travel_records table");
-                } catch (SQLException e) {
-                    // Column might already exist, which is fine
-                    if (e.getMessage().toLowerCase().contains("duplicate column name")) {
-                        System.out.println("Column 'visited' already exists");
-                    } else {
-                        throw e;
-                    }
+    @FunctionalInterface
+    private interface Step {
+        void run(Connection conn) throws SQLException;
+    }
+
+    /**
+     * One change to the schema.
+     *
+     * @param version The migration's number; migrations run in ascending order
+     * @param description What the migration does
+     * @param statements The SQL to run, in order
+     * @param step Work done after the statements, or null; not part of the checksum
+     */
+    private record Migration(int version, String description, List<String> statements, Step step) {
+
+        Migration(int version, String description, String... statements) {
+            this(version, description, List.of(statements), null);
+        }
+
+        long checksum() {
+            CRC32 crc = new CRC32();
+            for (String statement : statements) {
+                crc.update(statement.getBytes(StandardCharsets.UTF_8));
+                crc.update('\n');
+            }
+            return crc.getValue();
+        }
+    }
+
+    private static final List<Migration> MIGRATIONS = List.of(
+        new Migration(1, "Create travel_records table",
+            "CREATE TABLE IF NOT EXISTS travel_records ("
+                + "id BIGINT PRIMARY KEY AUTO_INCREMENT,"
+                + "description VARCHAR(255) UNIQUE NOT NULL,"
+                + "url VARCHAR(1024),"
+                + "state VARCHAR(255),"
+                + "city VARCHAR(255),"
+                + "address VARCHAR(255),"
+                + "zip VARCHAR(10),"
+                + "geo VARCHAR(255),"
+                + "picture BLOB,"
+                + "picture2 BLOB,"
+                + "picture3 BLOB,"
+                + "notes TEXT,"
+                + "date_created TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,"
+                + "date_updated TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,"
+                + "visited BOOLEAN DEFAULT FALSE NOT NULL,"
+                + "plan BOOLEAN DEFAULT FALSE NOT NULL"
+                + ")"),
+        new Migration(2, "Add tags, phone numbers and the visited and plan flags",
+            "CREATE TABLE IF NOT EXISTS tags (id BIGINT AUTO_INCREMENT PRIMARY KEY, tag VARCHAR(50) UNIQUE NOT NULL)",
+            "ALTER TABLE travel_records ADD COLUMN IF NOT EXISTS visited BOOLEAN DEFAULT FALSE NOT NULL",
+            "ALTER TABLE travel_records ADD COLUMN IF NOT EXISTS plan BOOLEAN DEFAULT FALSE NOT NULL",
+            "ALTER TABLE travel_records ADD COLUMN IF NOT EXISTS phone_number VARCHAR(20)",
+            "ALTER TABLE travel_records ADD COLUMN IF NOT EXISTS tag VARCHAR(50)",
+            "ALTER TABLE travel_records ADD COLUMN IF NOT EXISTS picture2 BLOB",
+            "ALTER TABLE travel_records ADD COLUMN IF NOT EXISTS picture3 BLOB"),
+        // Serve the record filters and sorting the table by each column in either direction, newest
+        // first among equal values; H2 cannot read an index backwards. The sort indexes also serve
+        // the state and tag filters, replacing the single-column indexes. RecordOrder names them.
+        new Migration(3, "Index the filtered and sorted columns",
+            "CREATE INDEX IF NOT EXISTS idx_travel_records_visited ON travel_records(visited)",
+            "CREATE INDEX IF NOT EXISTS idx_travel_records_plan ON travel_records(plan)",
+            "CREATE INDEX IF NOT EXISTS idx_travel_records_created ON travel_records(date_created DESC, id DESC)",
+            "CREATE INDEX IF NOT EXISTS idx_travel_records_description_asc ON travel_records(description, date_created DESC, id DESC)",
+            "CREATE INDEX IF NOT EXISTS idx_travel_records_description_desc ON travel_records(description DESC, date_created DESC, id DESC)",
+            "CREATE INDEX IF NOT EXISTS idx_travel_records_state_asc ON travel_records(state, date_created DESC, id DESC)",
+            "CREATE INDEX IF NOT EXISTS idx_travel_records_state_desc ON travel_records(state DESC, date_created DESC, id DESC)",
+            "CREATE INDEX IF NOT EXISTS idx_travel_records_city_asc ON travel_records(city, date_created DESC, id DESC)",
+            "CREATE INDEX IF NOT EXISTS idx_travel_records_city_desc ON travel_records(city DESC, date_created DESC, id DESC)",
+            "CREATE INDEX IF NOT EXISTS idx_travel_records_tag_asc ON travel_records(tag, date_created DESC, id DESC)",
+            "CREATE INDEX IF NOT EXISTS idx_travel_records_tag_desc ON travel_records(tag DESC, date_created DESC, id DESC)",
+            "DROP INDEX IF EXISTS idx_travel_records_state",
+            "DROP INDEX IF EXISTS idx_travel_records_tag"),
+        new Migration(4, "Move pictures into the content-addressed picture store", List.of(
+            "CREATE TABLE IF NOT EXISTS pictures (hash CHAR(64) PRIMARY KEY, data BLOB NOT NULL, size BIGINT NOT NULL)",
+            "ALTER TABLE travel_records ADD COLUMN IF NOT EXISTS picture_hash CHAR(64)",
+            "CREATE INDEX IF NOT EXISTS idx_travel_records_picture_hash ON travel_records(picture_hash)",
+            "ALTER TABLE travel_records ADD COLUMN IF NOT EXISTS picture2_hash CHAR(64)",
+            "CREATE INDEX IF NOT EXISTS idx_travel_records_picture2_hash ON travel_records(picture2_hash)",
+            "ALTER TABLE travel_records ADD COLUMN IF NOT EXISTS picture3_hash CHAR(64)",
+            "CREATE INDEX IF NOT EXISTS idx_travel_records_picture3_hash ON travel_records(picture3_hash)"),
+            PictureStore::migrateLegacyPictures),
+        // Coordinates parsed from geo, with an R-tree over the location for proximity queries
+        new Migration(5, "Add the location columns", List.of(
+            "ALTER TABLE travel_records ADD COLUMN IF NOT EXISTS latitude DOUBLE PRECISION",
+            "ALTER TABLE travel_records ADD COLUMN IF NOT EXISTS longitude DOUBLE PRECISION",
+            "ALTER TABLE travel_records ADD COLUMN IF NOT EXISTS location GEOMETRY(POINT)",
+            "CREATE SPATIAL INDEX IF NOT EXISTS idx_travel_records_location ON travel_records(location)"),
+            TravelRecord::backfillLocations),
+        // Migration 4 emptied the columns migration 1 still creates; nothing reads or writes them since
+        new Migration(6, "Drop the legacy picture columns",
+            "ALTER TABLE travel_records DROP COLUMN IF EXISTS picture",
+            "ALTER TABLE travel_records DROP COLUMN IF EXISTS picture2",
+            "ALTER TABLE travel_records DROP COLUMN IF EXISTS picture3")
+    );
+
+    /**
+     * Runs the migrations the database has not had yet. This method should be called when the
+     * application starts, before the database is used.
+     *
+     * @throws SQLException If a migration fails, or the recorded migrations do not match these
+     */
+    public static void updateSchema() throws SQLException {
+        try (Connection conn = ConnectionPool.getConnection()) {
+            Map<Integer, Long> applied = appliedMigrations(conn);
+            int latest = MIGRATIONS.get(MIGRATIONS.size() - 1).version();
+            for (Map.Entry<Integer, Long> entry : applied.entrySet()) {
+                if (entry.getKey() > latest) {
+                    throw new SQLException("The database schema is at version " + entry.getKey()
+                            + ", newer than this application's " + latest);
                 }
+            }
 
-                // Add plan column if it doesn't exist
-                try {
-                    stmt.execute("ALTER TABLE travel_records ADD COLUMN plan BOOLEAN DEFAULT FALSE NOT NULL");
-                    System.out.println("Added 'plan' column to travel_records table");
-                } catch (SQLException e) {
-                    // Column might already exist, which is fine
-                    if (e.getMessage().toLowerCase().contains("duplicate column name")) {
-                        System.out.println("Column 'plan' already exists");
-                    } else {
-                        throw e;
-                    }
+            int ran = 0;
+            for (Migration migration : MIGRATIONS) {
+                Long checksum = applied.get(migration.version());
+                if (checksum == null) {
+                    migrate(conn, migration);
+                    ran++;
+                } else if (checksum != migration.checksum()) {
+                    throw new SQLException("Migration " + migration.version() + " (" + migration.description()
+                            + ") has changed since it was applied to this database");
                 }
+            }
+            if (ran > 0) {
+                System.out.println("Database schema updated to version " + latest);
+            }
+        }
+    }
 
-                // Add phone_number column if it doesn't exist
-                try {
-                    stmt.execute("ALTER TABLE travel_records ADD COLUMN phone_number VARCHAR(20)");
-                    System.out.println("Added 'phone_number' column to travel_records table");
-                } catch (SQLException e) {
-                    // Column might already exist, which is fine
-                    if (e.getMessage().toLowerCase().contains("duplicate column name")) {
-                        System.out.println("Column 'phone_number' already exists");
-                    } else {
-                        throw e;
-                    }
+    // The checksum of each migration run so far, by version; creates the table on first use
+    private static Map<Integer, Long> appliedMigrations(Connection conn) throws SQLException {
+        Map<Integer, Long> applied = new HashMap<>();
+        DatabaseMetaData metaData = conn.getMetaData();
+        try (ResultSet tables = metaData.getTables(null, null, "SCHEMA_VERSION", new String[] {"TABLE"})) {
+            if (!tables.next()) {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("CREATE TABLE schema_version (version INT PRIMARY KEY, description VARCHAR(255) NOT NULL,"
+                            + " checksum BIGINT NOT NULL, applied_at TIMESTAMP NOT NULL, execution_ms BIGINT NOT NULL)");
                 }
+                return applied;
+            }
+        }
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT version, checksum FROM schema_version")) {
+            while (rs.next()) {
+                applied.put(rs.getInt("version"), rs.getLong("checksum"));
+            }
+        }
+        return applied;
+    }
 
-                // Add tag column if it doesn't exist
-                try {
-                    stmt.execute("ALTER TABLE travel_records ADD COLUMN tag VARCHAR(50)");
-                    System.out.println("Added 'tag' column to travel_records table");
-                } catch (SQLException e) {
-                    // Column might already exist, which is fine
-                    if (e.getMessage().toLowerCase().contains("duplicate column name")) {
-                        System.out.println("Column 'tag' already exists");
-                    } else {
-                        throw e;
-                    }
+    private static void migrate(Connection conn, Migration migration) throws SQLException {
+        long start = System.nanoTime();
+        long elapsedMillis;
+        conn.setAutoCommit(false);
+        try {
+            try (Statement stmt = conn.createStatement()) {
+                for (String statement : migration.statements()) {
+                    stmt.execute(statement);
                 }
             }
-        } catch (SQLException e) {
-            System.err.println("Error updating database schema: " + e.getMessage());
-            e.printStackTrace();
+            if (migration.step() != null) {
+                migration.step().run(conn);
+            }
+            elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+            try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO schema_version"
+                    + " (version, description, checksum, applied_at, execution_ms) VALUES (?, ?, ?, ?, ?)")) {
+                stmt.setInt(1, migration.version());
+                stmt.setString(2, migration.description());
+                stmt.setLong(3, migration.checksum());
+                stmt.setTimestamp(4, Timestamp.valueOf(LocalDateTime.now()));
+                stmt.setLong(5, elapsedMillis);
+                stmt.executeUpdate();
+            }
+            conn.commit();
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
         }
+        System.out.println("Applied migration " + migration.version() + ": " + migration.description()
+                + " (" + elapsedMillis + " ms)");
     }
 }
@@ -0,0 +1,354 @@
+package com.example.travel.util;
+
+import com.example.travel.model.BulkInsertResult;
+import com.example.travel.model.State;
+import com.example.travel.model.Tag;
+import com.example.travel.model.TravelRecord;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Fills the database with synthetic travel records for load testing.
+ * <p>
+ * Records look like real ones: a state with coordinates inside it, a town, a street address, a
+ * phone number, a few sentences of notes, a tag, and optionally a JPEG picture of a chosen size.
+ * Each record is derived from the seed and its index alone, so the same seed always produces the
+ * same records, however they are split into batches. Records are written with
+ * {@link TravelRecord#insertAll}, the bulk-insert path the XML import uses, while the next
+ * chunk is generated on another thread.
+ * <p>
+ * Run it from the command line against the application's database, or another one:
+ * <pre>
+ * java -cp travel-1.0-SNAPSHOT-uber.jar com.example.travel.util.DatasetGenerator --records=100000 --picture-kb=200
+ * </pre>
+ */
+public class DatasetGenerator {
+    public static final String[] TAGS = {"museum", "park", "restaurant", "beach", "historic", "hike", "winery", "lodging"};
+
+    // Records are generated and inserted this many at a time, bounding memory for large datasets
+    private static final int CHUNK_SIZE = 1000;
+    private static final int BATCH_SIZE = 500;
+    // Distinct images generated per run; records share them with a distinct trailer each
+    private static final int PICTURE_POOL_SIZE = 8;
+
+    // Approximate geographic centre of each state, in State order: latitude, longitude
+    private static final double[][] STATE_CENTRES = {
+        {32.8, -86.8}, {64.0, -152.0}, {34.3, -111.7}, {34.9, -92.4}, {37.2, -119.5},
+        {39.0, -105.5}, {41.6, -72.7}, {39.0, -75.5}, {28.6, -82.4}, {32.7, -83.4},
+        {20.8, -156.3}, {44.4, -114.6}, {40.0, -89.2}, {39.9, -86.3}, {42.1, -93.5},
+        {38.5, -98.4}, {37.5, -85.3}, {31.1, -92.0}, {45.4, -69.2}, {39.0, -76.8},
+        {42.3, -71.8}, {44.3, -85.4}, {46.3, -94.3}, {32.7, -89.7}, {38.4, -92.5},
+        {47.0, -109.6}, {41.5, -99.8}, {39.3, -116.6}, {43.7, -71.6}, {40.2, -74.7},
+        {34.4, -106.1}, {42.9, -75.5}, {35.6, -79.4}, {47.5, -100.5}, {40.3, -82.8},
+        {35.6, -97.5}, {43.9, -120.6}, {40.9, -77.8}, {41.7, -71.5}, {33.9, -80.9},
+        {44.4, -100.2}, {35.9, -86.4}, {31.5, -99.3}, {39.3, -111.7}, {44.1, -72.7},
+        {37.5, -78.9}, {47.4, -120.5}, {38.6, -80.6}, {44.6, -89.9}, {43.0, -107.6}
+    };
+    // How far records spread around their state's centre, in degrees; small states get less
+    private static final Set<State> SMALL_STATES = Set.of(State.CT, State.DE, State.MD, State.MA, State.NH,
+            State.NJ, State.RI, State.VT, State.HI);
+
+    private static final String[] TOWNS = {
+        "Springfield", "Franklin", "Greenville", "Bristol", "Clinton", "Fairview", "Salem", "Madison",
+        "Georgetown", "Arlington", "Ashland", "Burlington", "Manchester", "Milton", "Oxford", "Riverside",
+        "Centerville", "Jackson", "Marion", "Newport", "Dover", "Hudson", "Kingston", "Lebanon", "Auburn",
+        "Dayton", "Lexington", "Milford", "Winchester", "Cleveland", "Hamilton", "Mount Vernon", "Lancaster",
+        "Oakland", "Columbia", "Florence", "Chester", "Princeton", "Plymouth", "Monroe"
+    };
+    private static final String[] PLACE_ADJECTIVES = {
+        "Old", "Grand", "Little", "Blue", "Red", "Silver", "Hidden", "Lone", "Twin", "Crystal", "Eagle",
+        "Maple", "Cedar", "Pine", "Sunset", "Harbor", "Copper", "Golden", "Stone", "Willow"
+    };
+    private static final String[] PLACE_NOUNS = {
+        "Mill", "Creek", "Lake", "Ridge", "Falls", "Canyon", "Bridge", "Station", "Point", "Valley",
+        "Hollow", "Bluff", "Springs", "Harbor", "Meadow", "Lighthouse", "Courthouse", "Depot"
+    };
+    private static final String[] PLACE_KINDS = {
+        "Museum", "State Park", "Diner", "Brewery", "Trailhead", "Historic District", "Overlook", "Inn",
+        "Winery", "Beach", "Gardens", "Farmers Market", "Scenic Drive", "Visitor Center", "Campground"
+    };
+    private static final String[] STREETS = {
+        "Main", "Oak", "Maple", "Park", "Washington", "Lake", "Hill", "Church", "Elm", "River", "Pine",
+        "Cedar", "Mill", "Union", "Spring", "Ridge", "Highland", "Market", "Water", "Center"
+    };
+    private static final String[] STREET_SUFFIXES = {"Street", "Avenue", "Road", "Drive", "Lane", "Boulevard", "Way"};
+    private static final String[] SENTENCES = {
+        "Open from spring through early fall.",
+        "Parking fills up by mid-morning on weekends.",
+        "Worth a second trip for the view at sunset.",
+        "The gift shop has good local maps.",
+        "Allow at least two hours.",
+        "Small entrance fee, cash only.",
+        "Closed on Mondays.",
+        "Great spot for a picnic lunch.",
+        "The trail is steep in places but well marked.",
+        "Ask about the guided tour at the front desk.",
+        "Best visited on a weekday to avoid the crowds.",
+        "Dogs are allowed on a leash.",
+        "There is a good bakery across the street.",
+        "Recommended by a friend who grew up nearby.",
+        "The historic marker explains the building's past.",
+        "Bring water, there is no shade.",
+        "Nice stop on the way to the coast.",
+        "Kids loved the hands-on exhibits.",
+        "Fall colors are spectacular here.",
+        "Reservations needed in the summer."
+    };
+
+    private final long seed;
+    private int pictureKb;
+    private double pictureShare = 1.0;
+    private double plannedShare = 0.1;
+    private double visitedShare = 0.25;
+    private byte[][] picturePool;
+
+    public DatasetGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Sets the approximate size of generated pictures; 0, the default, generates none.
+     */
+    public void setPictureKb(int pictureKb) {
+        this.pictureKb = pictureKb;
+        this.picturePool = null;
+    }
+
+    /**
+     * Sets the fraction of records that get a picture when pictures are generated.
+     */
+    public void setPictureShare(double pictureShare) {
+        this.pictureShare = pictureShare;
+    }
+
+    /**
+     * Sets the fraction of unvisited records marked as planned.
+     */
+    public void setPlannedShare(double plannedShare) {
+        this.plannedShare = plannedShare;
+    }
+
+    /**
+     * Sets the fraction of records marked as visited.
+     */
+    public void setVisitedShare(double visitedShare) {
+        this.visitedShare = visitedShare;
+    }
+
+    /**
+     * Generates the records with the given indexes. The index is part of each description, which
+     * keeps descriptions unique.
+     */
+    public List<TravelRecord> generate(int first, int count) {
+        List<TravelRecord> records = new ArrayList<>(count);
+        for (int index = first; index < first + count; index++) {
+            records.add(generate(index));
+        }
+        return records;
+    }
+
+    /**
+     * Generates the record with the given index.
+     */
+    public TravelRecord generate(int index) {
+        // A generator of its own per record, so a record does not depend on the ones before it
+        SplittableRandom random = new SplittableRandom(seed * 0x9E3779B97F4A7C15L + index);
+        State[] states = State.values();
+        int stateIndex = random.nextInt(states.length);
+        State state = states[stateIndex];
+        double spread = SMALL_STATES.contains(state) ? 0.3 : 1.2;
+
+        TravelRecord record = new TravelRecord();
+        record.setDescription(pick(random, PLACE_ADJECTIVES) + " " + pick(random, PLACE_NOUNS) + " "
+                + pick(random, PLACE_KINDS) + " #" + (index + 1));
+        record.setUrl("https://www.example.com/places/" + (index + 1));
+        record.setState(state.name());
+        record.setCity(pick(random, TOWNS));
+        record.setAddress((1 + random.nextInt(9999)) + " " + pick(random, STREETS) + " " + pick(random, STREET_SUFFIXES));
+        record.setZip(String.format("%05d", 1000 + random.nextInt(99000)));
+        record.setPhoneNumber(String.format("(%03d) %03d-%04d",
+                200 + random.nextInt(800), 200 + random.nextInt(800), random.nextInt(10000)));
+        record.setGeo(String.format(Locale.ROOT, "%.5f, %.5f",
+                STATE_CENTRES[stateIndex][0] + (random.nextDouble() * 2 - 1) * spread,
+                STATE_CENTRES[stateIndex][1] + (random.nextDouble() * 2 - 1) * spread * 1.3));
+        record.setNotes(notes(random));
+        // About one record in five has no tag
+        record.setTag(random.nextInt(5) == 0 ? null : pick(random, TAGS));
+        record.setVisited(random.nextDouble() < visitedShare);
+        record.setPlan(!record.getVisited() && random.nextDouble() < plannedShare);
+        if (pictureKb > 0 && random.nextDouble() < pictureShare) {
+            record.setPicture(picture(index));
+        }
+        return record;
+    }
+
+    /**
+     * Inserts generated records into the database, adding any of the generator's tags it lacks.
+     *
+     * @param first The index of the first record; use the count of an earlier run to add to it
+     * @param count The number of records to insert
+     * @return The number of inserted records and the rejected ones, such as those already present
+     */
+    public BulkInsertResult populate(int first, int count, JobProgress progress) throws SQLException {
+        Set<String> existingTags = new HashSet<>();
+        for (Tag tag : Tag.findAll()) {
+            existingTags.add(tag.getTag());
+        }
+        for (String tag : TAGS) {
+            if (!existingTags.contains(tag)) {
+                new Tag(tag).save();
+            }
+        }
+
+        progress.setTotalRecords(count);
+        BulkInsertResult result = new BulkInsertResult();
+        int end = first + count;
+        // The next chunk is generated while the current one is inserted
+        CompletableFuture<List<TravelRecord>> next = generateAsync(first, end);
+        for (int from = first; from < end; from += CHUNK_SIZE) {
+            progress.checkCancelled();
+            List<TravelRecord> chunk = next.join();
+            next = generateAsync(from + CHUNK_SIZE, end);
+            result.add(TravelRecord.insertAll(chunk, BATCH_SIZE));
+            progress.addRecords(chunk.size());
+        }
+        return result;
+    }
+
+    private CompletableFuture<List<TravelRecord>> generateAsync(int from, int end) {
+        if (from >= end) {
+            return CompletableFuture.completedFuture(List.of());
+        }
+        return CompletableFuture.supplyAsync(() -> generate(from, Math.min(CHUNK_SIZE, end - from)));
+    }
+
+    private static String pick(SplittableRandom random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private static String notes(SplittableRandom random) {
+        StringBuilder notes = new StringBuilder();
+        int sentences = 1 + random.nextInt(4);
+        for (int i = 0; i < sentences; i++) {
+            if (i > 0) {
+                notes.append(' ');
+            }
+            notes.append(pick(random, SENTENCES));
+        }
+        return notes.toString();
+    }
+
+    // One of the pooled images with the index appended after its end, which decoders ignore but
+    // which gives every record a picture of its own in the content-addressed picture store
+    private synchronized byte[] picture(int index) {
+        if (picturePool == null) {
+            Random random = new Random(seed);
+            picturePool = new byte[PICTURE_POOL_SIZE][];
+            for (int i = 0; i < PICTURE_POOL_SIZE; i++) {
+                picturePool[i] = jpeg(pictureKb, random);
+            }
+        }
+        byte[] picture = picturePool[index % PICTURE_POOL_SIZE];
+        return ByteBuffer.allocate(picture.length + Integer.BYTES).put(picture).putInt(index).array();
+    }
+
+    /**
+     * Generates a noisy JPEG of roughly the given size; noise keeps it from compressing away.
+     */
+    public static byte[] jpeg(int kilobytes, Random random) {
+        // Noise encodes to about three bytes a pixel at the default quality
+        int side = Math.max(8, (int) Math.sqrt(kilobytes * 1024 / 3.0));
+        BufferedImage image = new BufferedImage(side, side, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < side; y++) {
+            for (int x = 0; x < side; x++) {
+                image.setRGB(x, y, random.nextInt(0x1000000));
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            ImageIO.write(image, "jpeg", out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    public static void main(String[] args) {
+        int records = 10000;
+        int first = 0;
+        long seed = 42;
+        String url = null;
+        int pictureKb = 0;
+        double pictureShare = 1.0;
+        double plannedShare = 0.1;
+        double visitedShare = 0.25;
+        try {
+            for (String arg : args) {
+                int equals = arg.indexOf('=');
+                String name = equals < 0 ? arg : arg.substring(0, equals);
+                String value = equals < 0 ? "" : arg.substring(equals + 1);
+                switch (name) {
+                    case "--records" -> records = Integer.parseInt(value);
+                    case "--first" -> first = Integer.parseInt(value);
+                    case "--seed" -> seed = Long.parseLong(value);
+                    case "--picture-kb" -> pictureKb = Integer.parseInt(value);
+                    case "--picture-share" -> pictureShare = Double.parseDouble(value);
+                    case "--planned-share" -> plannedShare = Double.parseDouble(value);
+                    case "--visited-share" -> visitedShare = Double.parseDouble(value);
+                    case "--url" -> url = value;
+                    default -> throw new IllegalArgumentException("Unknown option " + arg);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: DatasetGenerator [--records=N] [--first=N] [--seed=N] [--picture-kb=N]"
+                    + " [--picture-share=F] [--planned-share=F] [--visited-share=F] [--url=jdbc:h2:...]");
+            System.exit(2);
+            return;
+        }
+
+        DatasetGenerator generator = new DatasetGenerator(seed);
+        generator.setPictureKb(pictureKb);
+        generator.setPictureShare(pictureShare);
+        generator.setPlannedShare(plannedShare);
+        generator.setVisitedShare(visitedShare);
+        if (url != null) {
+            ConnectionPool.configure(url, "sa", "", 4);
+        }
+
+        int status = 0;
+        try {
+            DatabaseUpdater.updateSchema();
+            long start = System.nanoTime();
+            BulkInsertResult result = generator.populate(first, records, JobProgress.NONE);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf(Locale.ROOT, "Inserted %d records in %.1f s (%.0f records/s)%n",
+                    result.getInserted(), seconds, result.getInserted() / seconds);
+            if (!result.getFailures().isEmpty()) {
+                System.out.println(result.getFailures().size() + " records were rejected, the first because: "
+                        + result.getFailures().get(0).reason());
+            }
+        } catch (SQLException e) {
+            System.err.println("Error generating the dataset: " + e.getMessage());
+            e.printStackTrace();
+            status = 1;
+        } finally {
+            ConnectionPool.shutdown();
+        }
+        System.exit(status);
+    }
+}
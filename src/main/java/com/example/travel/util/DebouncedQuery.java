@@ -0,0 +1,107 @@
+package com.example.travel.util;
+
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyBooleanWrapper;
+import javafx.util.Duration;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Runs queries off the JavaFX Application Thread and publishes only the latest result.
+ * <p>
+ * Requests made through {@link #schedule(Callable)} are debounced, so a burst of filter changes
+ * results in a single query. A result that arrives after a newer query was started is dropped.
+ * A query already running is left to finish rather than interrupted, because an interrupt inside
+ * an H2 read closes the database. All methods must be called on the FX thread; the result and
+ * error handlers are invoked on it as well.
+ *
+ * @param <T> The query result type
+ */
+public class DebouncedQuery<T> {
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final PauseTransition debounce;
+    private final Consumer<T> onResult;
+    private final Consumer<Throwable> onError;
+    private final ReadOnlyBooleanWrapper running = new ReadOnlyBooleanWrapper(false);
+
+    private Callable<T> pending;
+    private Future<?> inFlight;
+    private long generation;
+
+    /**
+     * @param delay How long to wait for further requests before running a scheduled query
+     * @param onResult Receives the result of the latest query
+     * @param onError Receives the failure of the latest query
+     */
+    public DebouncedQuery(Duration delay, Consumer<T> onResult, Consumer<Throwable> onError) {
+        this.onResult = onResult;
+        this.onError = onError;
+        this.debounce = new PauseTransition(delay);
+        this.debounce.setOnFinished(e -> {
+            Callable<T> query = pending;
+            pending = null;
+            if (query != null) {
+                run(query);
+            }
+        });
+    }
+
+    /**
+     * Runs the query once no further request has been made for the debounce delay.
+     */
+    public void schedule(Callable<T> query) {
+        pending = query;
+        debounce.playFromStart();
+    }
+
+    /**
+     * Runs the query right away, superseding any scheduled or running query.
+     */
+    public void run(Callable<T> query) {
+        debounce.stop();
+        pending = null;
+        if (inFlight != null) {
+            // Only stops a query that has not started; a running one is dropped by publish
+            inFlight.cancel(false);
+        }
+        long current = ++generation;
+        running.set(true);
+        inFlight = executor.submit(() -> {
+            try {
+                T result = query.call();
+                Platform.runLater(() -> publish(current, () -> onResult.accept(result)));
+            } catch (Throwable t) {
+                Platform.runLater(() -> publish(current, () -> onError.accept(t)));
+            }
+        });
+    }
+
+    private void publish(long queryGeneration, Runnable action) {
+        // A newer query has been started since this one; its result will follow
+        if (queryGeneration != generation) {
+            return;
+        }
+        inFlight = null;
+        running.set(false);
+        action.run();
+    }
+
+    /**
+     * Whether a query is currently running.
+     */
+    public ReadOnlyBooleanProperty runningProperty() {
+        return running.getReadOnlyProperty();
+    }
+
+    public void shutdown() {
+        debounce.stop();
+        // Let a running query finish; its result is ignored once the application has stopped
+        executor.shutdown();
+    }
+}
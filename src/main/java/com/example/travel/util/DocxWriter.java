@@ -0,0 +1,350 @@
+package com.example.travel.util;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes a Word document front to back, one paragraph at a time, without holding it in memory.
+ * <p>
+ * The body is written to a temporary file as it is produced, and each picture goes into the
+ * document's package as soon as it is added; {@link #finish()} then copies the body into the
+ * package. Memory use stays flat however long the document gets: only the name, size and
+ * checksum of each picture are kept, so a picture added again, under the same key or with the
+ * same bytes, is stored once.
+ * Paragraphs carry the few formatting options the reports use.
+ */
+class DocxWriter implements AutoCloseable {
+    private static final String W = "http://schemas.openxmlformats.org/wordprocessingml/2006/main";
+    private static final String R = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+    private static final String WP = "http://schemas.openxmlformats.org/drawingml/2006/wordprocessingDrawing";
+    private static final String A = "http://schemas.openxmlformats.org/drawingml/2006/main";
+    private static final String PIC = "http://schemas.openxmlformats.org/drawingml/2006/picture";
+    private static final long EMU_PER_POINT = 12700;
+
+    /**
+     * How a run of text is formatted.
+     *
+     * @param size The font size in points, or 0 for the document default
+     * @param bold Whether the text is bold
+     * @param italic Whether the text is italic
+     * @param color The text colour as RRGGBB, or null for the default
+     */
+    record Font(int size, boolean bold, boolean italic, String color) {
+    }
+
+    /**
+     * A picture stored in the document, which any number of paragraphs can show.
+     *
+     * @param relationshipId How the body refers to the picture
+     * @param width The picture's width in pixels
+     * @param height The picture's height in pixels
+     */
+    record Picture(String relationshipId, int width, int height) {
+    }
+
+    private final ZipOutputStream zip;
+    private final Path body;
+    private final OutputStream bodyOut;
+    private final XMLStreamWriter xml;
+    private final Map<String, Picture> pictures = new HashMap<>();
+    // The same pictures by the SHA-256 of their bytes
+    private final Map<String, Picture> picturesByContent = new HashMap<>();
+    private int drawings;
+
+    /**
+     * @param file The document to write; it is replaced if it exists
+     */
+    DocxWriter(Path file) throws IOException {
+        zip = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(file)));
+        body = Files.createTempFile("docx-body", ".xml");
+        bodyOut = new BufferedOutputStream(Files.newOutputStream(body));
+        try {
+            xml = XMLOutputFactory.newFactory().createXMLStreamWriter(bodyOut, "UTF-8");
+            xml.writeStartDocument("UTF-8", "1.0");
+            xml.writeStartElement("w", "document", W);
+            xml.writeNamespace("w", W);
+            xml.writeNamespace("r", R);
+            xml.writeNamespace("wp", WP);
+            xml.writeStartElement("w", "body", W);
+        } catch (XMLStreamException e) {
+            close();
+            throw new IOException("Could not start the document", e);
+        }
+    }
+
+    /**
+     * Starts a paragraph; add its runs, then call {@link #endParagraph()}.
+     *
+     * @param style The paragraph style, or null for the default
+     * @param centered Whether the paragraph is centered
+     */
+    void startParagraph(String style, boolean centered) throws IOException {
+        try {
+            xml.writeStartElement("w", "p", W);
+            if (style != null || centered) {
+                xml.writeStartElement("w", "pPr", W);
+                if (style != null) {
+                    writeValue("pStyle", style);
+                }
+                if (centered) {
+                    writeValue("jc", "center");
+                }
+                xml.writeEndElement();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Could not write the document", e);
+        }
+    }
+
+    /**
+     * Adds text to the current paragraph.
+     *
+     * @param lineBreak Whether a line break follows the text
+     */
+    void text(String text, Font font, boolean lineBreak) throws IOException {
+        try {
+            xml.writeStartElement("w", "r", W);
+            writeFont(font);
+            xml.writeStartElement("w", "t", W);
+            xml.writeAttribute("xml", "http://www.w3.org/XML/1998/namespace", "space", "preserve");
+            xml.writeCharacters(printable(text));
+            xml.writeEndElement();
+            if (lineBreak) {
+                xml.writeEmptyElement("w", "br", W);
+            }
+            xml.writeEndElement();
+        } catch (XMLStreamException e) {
+            throw new IOException("Could not write the document", e);
+        }
+    }
+
+    void endParagraph() throws IOException {
+        try {
+            xml.writeEndElement();
+        } catch (XMLStreamException e) {
+            throw new IOException("Could not write the document", e);
+        }
+    }
+
+    /**
+     * A paragraph holding a single run of text.
+     */
+    void paragraph(String text, Font font, boolean lineBreak) throws IOException {
+        startParagraph(null, false);
+        text(text, font, lineBreak);
+        endParagraph();
+    }
+
+    /**
+     * Returns the picture stored under a key, or null if there is none.
+     */
+    Picture findPicture(String key) {
+        return pictures.get(key);
+    }
+
+    /**
+     * Stores a JPEG picture in the document under a key, unless the same bytes are stored already.
+     *
+     * @param width The picture's width in pixels
+     * @param height The picture's height in pixels
+     */
+    Picture addPicture(String key, byte[] jpeg, int width, int height) throws IOException {
+        String checksum;
+        try {
+            checksum = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(jpeg));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        Picture picture = picturesByContent.get(checksum);
+        if (picture == null) {
+            int number = picturesByContent.size() + 1;
+            picture = new Picture("rIdImage" + number, width, height);
+            zip.putNextEntry(new ZipEntry("word/media/image" + number + ".jpeg"));
+            zip.write(jpeg);
+            zip.closeEntry();
+            picturesByContent.put(checksum, picture);
+        }
+        pictures.put(key, picture);
+        return picture;
+    }
+
+    /**
+     * Shows a stored picture in the current paragraph.
+     *
+     * @param widthPoints The printed width
+     * @param heightPoints The printed height
+     * @param lineBreak Whether a line break follows the picture
+     */
+    void picture(Picture picture, double widthPoints, double heightPoints, boolean lineBreak) throws IOException {
+        String cx = Long.toString(Math.round(widthPoints * EMU_PER_POINT));
+        String cy = Long.toString(Math.round(heightPoints * EMU_PER_POINT));
+        int id = ++drawings;
+        try {
+            xml.writeStartElement("w", "r", W);
+            xml.writeStartElement("w", "drawing", W);
+            xml.writeStartElement("wp", "inline", WP);
+            xml.writeEmptyElement("wp", "extent", WP);
+            xml.writeAttribute("cx", cx);
+            xml.writeAttribute("cy", cy);
+            xml.writeEmptyElement("wp", "docPr", WP);
+            xml.writeAttribute("id", Integer.toString(id));
+            xml.writeAttribute("name", "Picture " + id);
+            xml.writeStartElement("a", "graphic", A);
+            xml.writeNamespace("a", A);
+            xml.writeStartElement("a", "graphicData", A);
+            xml.writeAttribute("uri", PIC);
+            xml.writeStartElement("pic", "pic", PIC);
+            xml.writeNamespace("pic", PIC);
+            xml.writeStartElement("pic", "nvPicPr", PIC);
+            xml.writeEmptyElement("pic", "cNvPr", PIC);
+            xml.writeAttribute("id", Integer.toString(id));
+            xml.writeAttribute("name", "Picture " + id);
+            xml.writeEmptyElement("pic", "cNvPicPr", PIC);
+            xml.writeEndElement();
+            xml.writeStartElement("pic", "blipFill", PIC);
+            xml.writeEmptyElement("a", "blip", A);
+            xml.writeAttribute("r", R, "embed", picture.relationshipId());
+            xml.writeStartElement("a", "stretch", A);
+            xml.writeEmptyElement("a", "fillRect", A);
+            xml.writeEndElement();
+            xml.writeEndElement();
+            xml.writeStartElement("pic", "spPr", PIC);
+            xml.writeStartElement("a", "xfrm", A);
+            xml.writeEmptyElement("a", "off", A);
+            xml.writeAttribute("x", "0");
+            xml.writeAttribute("y", "0");
+            xml.writeEmptyElement("a", "ext", A);
+            xml.writeAttribute("cx", cx);
+            xml.writeAttribute("cy", cy);
+            xml.writeEndElement();
+            xml.writeStartElement("a", "prstGeom", A);
+            xml.writeAttribute("prst", "rect");
+            xml.writeEmptyElement("a", "avLst", A);
+            xml.writeEndElement();
+            xml.writeEndElement(); // spPr
+            xml.writeEndElement(); // pic
+            xml.writeEndElement(); // graphicData
+            xml.writeEndElement(); // graphic
+            xml.writeEndElement(); // inline
+            xml.writeEndElement(); // drawing
+            if (lineBreak) {
+                xml.writeEmptyElement("w", "br", W);
+            }
+            xml.writeEndElement(); // r
+        } catch (XMLStreamException e) {
+            throw new IOException("Could not write the document", e);
+        }
+    }
+
+    /**
+     * Completes the document: copies the body into the package and adds the parts that list its contents.
+     */
+    void finish() throws IOException {
+        try {
+            xml.writeEmptyElement("w", "sectPr", W);
+            xml.writeEndElement(); // body
+            xml.writeEndElement(); // document
+            xml.writeEndDocument();
+            xml.close();
+        } catch (XMLStreamException e) {
+            throw new IOException("Could not write the document", e);
+        }
+        bodyOut.close();
+
+        zip.putNextEntry(new ZipEntry("word/document.xml"));
+        Files.copy(body, zip);
+        zip.closeEntry();
+
+        StringBuilder relationships = new StringBuilder();
+        for (int i = 1; i <= picturesByContent.size(); i++) {
+            relationships.append("<Relationship Id=\"rIdImage").append(i)
+                    .append("\" Type=\"").append(R).append("/image\" Target=\"media/image").append(i).append(".jpeg\"/>");
+        }
+        writeEntry("word/_rels/document.xml.rels", "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+                + "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+                + relationships + "</Relationships>");
+        writeEntry("_rels/.rels", "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+                + "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+                + "<Relationship Id=\"rId1\" Type=\"" + R + "/officeDocument\" Target=\"word/document.xml\"/>"
+                + "</Relationships>");
+        writeEntry("[Content_Types].xml", "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+                + "<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">"
+                + "<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>"
+                + "<Default Extension=\"xml\" ContentType=\"application/xml\"/>"
+                + "<Default Extension=\"jpeg\" ContentType=\"image/jpeg\"/>"
+                + "<Override PartName=\"/word/document.xml\""
+                + " ContentType=\"application/vnd.openxmlformats-officedocument.wordprocessingml.document.main+xml\"/>"
+                + "</Types>");
+        zip.finish();
+    }
+
+    /**
+     * Closes the document file and deletes the temporary body. A document closed before
+     * {@link #finish()} is incomplete.
+     */
+    @Override
+    public void close() throws IOException {
+        try (zip; bodyOut) {
+            Files.deleteIfExists(body);
+        }
+    }
+
+    private void writeEntry(String name, String content) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(content.getBytes(StandardCharsets.UTF_8));
+        zip.closeEntry();
+    }
+
+    private void writeValue(String element, String value) throws XMLStreamException {
+        xml.writeEmptyElement("w", element, W);
+        xml.writeAttribute("w", W, "val", value);
+    }
+
+    private void writeFont(Font font) throws XMLStreamException {
+        if (font.size() == 0 && !font.bold() && !font.italic() && font.color() == null) {
+            return;
+        }
+        xml.writeStartElement("w", "rPr", W);
+        if (font.bold()) {
+            xml.writeEmptyElement("w", "b", W);
+        }
+        if (font.italic()) {
+            xml.writeEmptyElement("w", "i", W);
+        }
+        if (font.color() != null) {
+            writeValue("color", font.color());
+        }
+        if (font.size() > 0) {
+            // Sizes are in half points
+            writeValue("sz", Integer.toString(font.size() * 2));
+            writeValue("szCs", Integer.toString(font.size() * 2));
+        }
+        xml.writeEndElement();
+    }
+
+    // Drops the control characters XML cannot carry
+    private static String printable(String text) {
+        StringBuilder result = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= 0x20 || c == '\t' || c == '\n' || c == '\r') {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+}
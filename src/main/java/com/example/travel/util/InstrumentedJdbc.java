@@ -0,0 +1,222 @@
+package com.example.travel.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Blob;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Set;
+
+/**
+ * Wraps the statements, result sets and BLOBs of pooled connections so that every JDBC call is
+ * counted in {@link PersistenceMetrics}.
+ * <p>
+ * A query's time is its execution plus the time spent inside its result set's methods, such as
+ * fetching rows with {@link ResultSet#next()}; what the caller does with each row between those
+ * calls is not counted, so a slow consumer of a streamed result does not make the query look slow.
+ * The query is reported when its result set is closed. Rows are counted as {@code next()} reaches
+ * them and BLOB bytes as they are read, against the operation running when the statement was executed.
+ */
+final class InstrumentedJdbc {
+    private static final Set<String> EXECUTE_METHODS = Set.of(
+            "execute", "executeQuery", "executeUpdate", "executeLargeUpdate", "executeBatch", "executeLargeBatch");
+
+    private InstrumentedJdbc() {
+    }
+
+    /**
+     * Wraps a statement the connection created.
+     *
+     * @param type The statement interface the connection method returned
+     * @param sql The SQL the statement was prepared with, or null for a plain statement
+     */
+    static Statement statement(Statement statement, Class<?> type, String sql) {
+        return (Statement) Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[]{type},
+                new StatementHandler(statement, sql));
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static final class StatementHandler implements InvocationHandler {
+        private final Statement statement;
+        private final String preparedSql;
+        // The query whose result set is still open, finished when it is closed or replaced
+        private ResultSetHandler openQuery;
+
+        private StatementHandler(Statement statement, String preparedSql) {
+            this.statement = statement;
+            this.preparedSql = preparedSql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (EXECUTE_METHODS.contains(name)) {
+                finishOpenQuery();
+                String sql = args != null && args.length > 0 && args[0] instanceof String text ? text
+                        : preparedSql != null ? preparedSql : "(batch)";
+                PersistenceMetrics.Stats operation = PersistenceMetrics.currentOperation();
+                long start = System.nanoTime();
+                Object result = InstrumentedJdbc.invoke(statement, method, args);
+                long executeNanos = System.nanoTime() - start;
+                if (result instanceof ResultSet resultSet) {
+                    openQuery = new ResultSetHandler(resultSet, operation, sql, executeNanos);
+                    return openQuery.proxy();
+                }
+                if (name.equals("execute") && Boolean.TRUE.equals(result)) {
+                    // The result set is fetched with getResultSet; the query is reported when it is closed
+                    openQuery = new ResultSetHandler(null, operation, sql, executeNanos);
+                    return result;
+                }
+                PersistenceMetrics.statementExecuted(operation, sql, executeNanos, -1);
+                return result;
+            }
+            if (name.equals("getResultSet") && openQuery != null && openQuery.resultSet == null) {
+                Object result = InstrumentedJdbc.invoke(statement, method, args);
+                if (result instanceof ResultSet resultSet) {
+                    openQuery.resultSet = resultSet;
+                    return openQuery.proxy();
+                }
+                return result;
+            }
+            if (name.equals("close")) {
+                finishOpenQuery();
+            }
+            return InstrumentedJdbc.invoke(statement, method, args);
+        }
+
+        private void finishOpenQuery() {
+            if (openQuery != null) {
+                openQuery.finish();
+                openQuery = null;
+            }
+        }
+    }
+
+    private static final class ResultSetHandler implements InvocationHandler {
+        private ResultSet resultSet;
+        private final PersistenceMetrics.Stats operation;
+        private final String sql;
+        // The execution time, plus the time spent in the result set's methods
+        private long nanos;
+        private long rows;
+        private boolean finished;
+
+        private ResultSetHandler(ResultSet resultSet, PersistenceMetrics.Stats operation, String sql, long executeNanos) {
+            this.resultSet = resultSet;
+            this.operation = operation;
+            this.sql = sql;
+            this.nanos = executeNanos;
+        }
+
+        private ResultSet proxy() {
+            return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+                    new Class<?>[]{ResultSet.class}, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            long start = System.nanoTime();
+            Object result;
+            try {
+                result = InstrumentedJdbc.invoke(resultSet, method, args);
+            } finally {
+                nanos += System.nanoTime() - start;
+            }
+            switch (method.getName()) {
+                case "next" -> {
+                    if (Boolean.TRUE.equals(result)) {
+                        rows++;
+                        PersistenceMetrics.rowRead(operation);
+                    }
+                }
+                case "getBytes" -> {
+                    if (result instanceof byte[] bytes) {
+                        PersistenceMetrics.blobBytesRead(operation, bytes.length);
+                    }
+                }
+                case "getBlob" -> {
+                    if (result instanceof Blob blob) {
+                        return Proxy.newProxyInstance(Blob.class.getClassLoader(), new Class<?>[]{Blob.class},
+                                new BlobHandler(blob, operation));
+                    }
+                }
+                case "getBinaryStream" -> {
+                    if (result instanceof InputStream in) {
+                        return new CountingInputStream(in, operation);
+                    }
+                }
+                case "close" -> finish();
+                default -> {
+                }
+            }
+            return result;
+        }
+
+        private void finish() {
+            if (!finished) {
+                finished = true;
+                PersistenceMetrics.statementExecuted(operation, sql, nanos, rows);
+            }
+        }
+    }
+
+    private static final class BlobHandler implements InvocationHandler {
+        private final Blob blob;
+        private final PersistenceMetrics.Stats operation;
+
+        private BlobHandler(Blob blob, PersistenceMetrics.Stats operation) {
+            this.blob = blob;
+            this.operation = operation;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = InstrumentedJdbc.invoke(blob, method, args);
+            if (result instanceof byte[] bytes) {
+                PersistenceMetrics.blobBytesRead(operation, bytes.length);
+            } else if (result instanceof InputStream in) {
+                return new CountingInputStream(in, operation);
+            }
+            return result;
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        private final PersistenceMetrics.Stats operation;
+
+        private CountingInputStream(InputStream in, PersistenceMetrics.Stats operation) {
+            super(in);
+            this.operation = operation;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                PersistenceMetrics.blobBytesRead(operation, 1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                PersistenceMetrics.blobBytesRead(operation, read);
+            }
+            return read;
+        }
+    }
+}
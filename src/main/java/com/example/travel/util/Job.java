@@ -0,0 +1,148 @@
+package com.example.travel.util;
+
+import javafx.concurrent.Task;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A background operation run by the {@link JobManager}, reporting records and bytes processed.
+ * <p>
+ * Cancelling a job only asks it to stop; the worker thread is never interrupted, because an
+ * interrupt during file I/O would close the embedded database's file channel. The job stops the
+ * next time the operation checks {@link #isCancelled()}. Until then the job stays running and shows
+ * "Cancelling..."; it only becomes {@link State#CANCELLED}, and its cancel handler only runs, once
+ * the operation has returned or thrown.
+ *
+ * @param <T> The job's result type
+ */
+public class Job<T> extends Task<T> implements JobProgress {
+
+    /**
+     * The work done by a job.
+     *
+     * @param <T> The result type
+     */
+    @FunctionalInterface
+    public interface Body<T> {
+        T run(JobProgress progress) throws Exception;
+    }
+
+    private final Body<T> body;
+    private final AtomicLong totalRecords = new AtomicLong(-1);
+    private final AtomicLong totalBytes = new AtomicLong(-1);
+    private final AtomicLong records = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    // Set by whichever comes first: the worker starting the job, or a cancel before it started
+    private final AtomicBoolean claimed = new AtomicBoolean();
+    private volatile boolean cancelRequested;
+
+    Job(String title, Body<T> body) {
+        this.body = body;
+        updateTitle(title);
+        updateMessage("Waiting...");
+    }
+
+    @Override
+    protected T call() throws Exception {
+        if (!claimed.compareAndSet(false, true)) {
+            return null;
+        }
+        updateMessage("Starting...");
+        T result;
+        try {
+            result = body.run(this);
+        } catch (Exception e) {
+            if (cancelRequested) {
+                super.cancel(false);
+                return null;
+            }
+            throw e;
+        }
+        if (cancelRequested) {
+            super.cancel(false);
+            return null;
+        }
+        updateMessage("Done: " + describeProgress());
+        return result;
+    }
+
+    /**
+     * Cancels the job at once if it has not started; otherwise asks it to stop, and it is
+     * cancelled when the operation returns.
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (claimed.compareAndSet(false, true)) {
+            return super.cancel(false);
+        }
+        if (isDone()) {
+            return false;
+        }
+        cancelRequested = true;
+        updateMessage(describeProgress());
+        return true;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelRequested || super.isCancelled();
+    }
+
+    @Override
+    public void setTotalRecords(long total) {
+        totalRecords.set(total);
+        publish();
+    }
+
+    @Override
+    public void setTotalBytes(long total) {
+        totalBytes.set(total);
+        publish();
+    }
+
+    @Override
+    public void addRecords(long count) {
+        records.addAndGet(count);
+        publish();
+    }
+
+    @Override
+    public void addBytes(long count) {
+        bytes.addAndGet(count);
+        publish();
+    }
+
+    // Task coalesces these updates, so calling them for every record does not flood the FX thread
+    private void publish() {
+        long total = totalRecords.get();
+        if (total > 0) {
+            updateProgress(records.get(), total);
+        } else if (totalBytes.get() > 0) {
+            updateProgress(bytes.get(), totalBytes.get());
+        }
+        updateMessage(describeProgress());
+    }
+
+    private String describeProgress() {
+        StringBuilder text = new StringBuilder(cancelRequested ? "Cancelling... " : "");
+        text.append(String.format("%,d", records.get()));
+        if (totalRecords.get() >= 0) {
+            text.append(String.format(" of %,d", totalRecords.get()));
+        }
+        text.append(" records");
+        if (bytes.get() > 0) {
+            text.append(", ").append(formatBytes(bytes.get()));
+        }
+        return text.toString();
+    }
+
+    private static String formatBytes(long count) {
+        if (count < 1024) {
+            return count + " B";
+        } else if (count < 1024 * 1024) {
+            return String.format("%.1f KB", count / 1024.0);
+        }
+        return String.format("%.1f MB", count / (1024.0 * 1024));
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.travel.util;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs exports, imports and reports in the background, a limited number at a time.
+ * <p>
+ * Jobs beyond the limit wait in submission order. The limit comes from the
+ * {@code travel.jobs.maxConcurrent} system property (default 2). Jobs stay in {@link #getJobs()}
+ * until they are dismissed, so their outcome remains visible. Methods must be called on the FX thread.
+ */
+public class JobManager {
+    private static final int MAX_CONCURRENT = Integer.getInteger("travel.jobs.maxConcurrent", 2);
+
+    private final ExecutorService executor;
+    private final ObservableList<Job<?>> jobs = FXCollections.observableArrayList();
+
+    public JobManager() {
+        this(MAX_CONCURRENT);
+    }
+
+    public JobManager(int maxConcurrent) {
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(maxConcurrent, runnable -> {
+            Thread thread = new Thread(runnable, "job-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Queues a job. Attach result handlers with {@link Job#setOnSucceeded}, {@link Job#setOnFailed}
+     * and {@link Job#setOnCancelled}; they run on the FX thread.
+     *
+     * @param title Shown in the jobs panel
+     * @param body The work to do, given the job's progress
+     * @return The queued job
+     */
+    public <T> Job<T> submit(String title, Job.Body<T> body) {
+        Job<T> job = new Job<>(title, body);
+        jobs.add(job);
+        executor.execute(job);
+        return job;
+    }
+
+    /**
+     * Removes a finished job from the list; running jobs are kept.
+     */
+    public void dismiss(Job<?> job) {
+        if (job.isDone()) {
+            jobs.remove(job);
+        }
+    }
+
+    /**
+     * The submitted jobs that have not been dismissed, oldest first.
+     */
+    public ObservableList<Job<?>> getJobs() {
+        return jobs;
+    }
+
+    /**
+     * Cancels every job, stops accepting new ones, and waits up to 30 seconds for the running
+     * jobs to stop.
+     */
+    public void shutdown() {
+        jobs.forEach(Job::cancel);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.travel.util;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Receives progress from a long-running operation and tells it whether to stop.
+ * <p>
+ * Cancellation is cooperative: operations call {@link #checkCancelled()} between units of work,
+ * so they never stop halfway through a database write or a file.
+ */
+public interface JobProgress {
+
+    /**
+     * Progress that is not reported anywhere and is never cancelled.
+     */
+    JobProgress NONE = new JobProgress() {
+        @Override
+        public void setTotalRecords(long total) {
+        }
+
+        @Override
+        public void setTotalBytes(long total) {
+        }
+
+        @Override
+        public void addRecords(long count) {
+        }
+
+        @Override
+        public void addBytes(long count) {
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+    };
+
+    /**
+     * Sets the number of records the operation expects to process, if it knows.
+     */
+    void setTotalRecords(long total);
+
+    /**
+     * Sets the number of bytes the operation expects to process, if it knows.
+     */
+    void setTotalBytes(long total);
+
+    void addRecords(long count);
+
+    void addBytes(long count);
+
+    boolean isCancelled();
+
+    /**
+     * @throws CancellationException If the operation has been asked to stop
+     */
+    default void checkCancelled() {
+        if (isCancelled()) {
+            throw new CancellationException("Cancelled");
+        }
+    }
+}
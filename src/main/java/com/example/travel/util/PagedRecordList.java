@@ -0,0 +1,274 @@
+package com.example.travel.util;
+
+import com.example.travel.model.RecordFilter;
+import com.example.travel.model.RecordOrder;
+import com.example.travel.model.TravelRecord;
+import javafx.application.Platform;
+import javafx.collections.ObservableListBase;
+
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * The records matching a filter, in a given order, loaded from the database one page at a time as
+ * they are displayed.
+ * <p>
+ * The list knows its full size from a count query, but only keeps the most recently used pages
+ * in memory. An element whose page is not loaded reads as null while the page is fetched in the
+ * background; the rows are then announced as replaced so the table redraws them. The pages on
+ * either side of the one being displayed are fetched ahead of time. Page size and the number of
+ * pages kept come from the {@code travel.table.pageSize} (default 100) and
+ * {@code travel.table.cachedPages} (default 20) system properties.
+ * <p>
+ * Pages are fetched by key from the last record of the nearest page loaded so far, so scrolling
+ * never makes the database count through the rows before the viewport. All methods must be
+ * called on the FX thread.
+ */
+public class PagedRecordList extends ObservableListBase<TravelRecord> {
+    private static final int PAGE_SIZE = Integer.getInteger("travel.table.pageSize", 100);
+    private static final int MAX_PAGES = Integer.getInteger("travel.table.cachedPages", 20);
+
+    /**
+     * What the list shows for a filter and order: the number of matching records and the first page.
+     */
+    public record Contents(RecordFilter filter, RecordOrder order, int size, List<TravelRecord> firstPage) {
+    }
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Consumer<Throwable> onError;
+    private final Map<Integer, List<TravelRecord>> pages = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, List<TravelRecord>> eldest) {
+            return size() > MAX_PAGES;
+        }
+    };
+    // The key of the last record of every page loaded since the contents were set
+    private final TreeMap<Integer, TravelRecord.PageKey> pageEnds = new TreeMap<>();
+    // Pages being fetched, and pages whose fetch failed; neither is requested again until the next reset
+    private final Set<Integer> requested = new HashSet<>();
+
+    private RecordFilter filter;
+    private RecordOrder order = RecordOrder.NEWEST_FIRST;
+    private int size;
+    private long generation;
+
+    /**
+     * @param onError Receives failures to load a page or to refresh the list
+     */
+    public PagedRecordList(Consumer<Throwable> onError) {
+        this.onError = onError;
+    }
+
+    /**
+     * Counts the records matching a filter and loads the first page in the given order. Runs on any
+     * thread; pass the result to {@link #setContents} on the FX thread.
+     */
+    public static Contents query(RecordFilter filter, RecordOrder order) throws SQLException {
+        int size = TravelRecord.count(filter);
+        List<TravelRecord> firstPage = size > 0 ? TravelRecord.findPage(filter, order, null, 0, PAGE_SIZE) : List.of();
+        return new Contents(filter, order, size, firstPage);
+    }
+
+    /**
+     * Replaces the list's contents, discarding every loaded page.
+     */
+    public void setContents(Contents contents) {
+        generation++;
+        pages.clear();
+        pageEnds.clear();
+        requested.clear();
+        filter = contents.filter();
+        order = contents.order();
+        int oldSize = size;
+        size = contents.size();
+        if (!contents.firstPage().isEmpty()) {
+            putPage(0, contents.firstPage());
+        }
+
+        beginChange();
+        int common = Math.min(oldSize, size);
+        if (common > 0) {
+            nextReplace(0, common, Collections.nCopies(common, null));
+        }
+        if (oldSize > size) {
+            nextRemove(size, Collections.nCopies(oldSize - size, null));
+        } else if (size > oldSize) {
+            nextAdd(oldSize, size);
+        }
+        endChange();
+    }
+
+    /**
+     * Reloads the list with the current filter and order in the background.
+     */
+    public void refresh() {
+        if (filter == null) {
+            return;
+        }
+        RecordFilter currentFilter = filter;
+        RecordOrder currentOrder = order;
+        long currentGeneration = generation;
+        executor.execute(() -> {
+            try {
+                Contents contents = query(currentFilter, currentOrder);
+                // Drop the result if new contents were set in the meantime
+                Platform.runLater(() -> {
+                    if (generation == currentGeneration) {
+                        setContents(contents);
+                    }
+                });
+            } catch (SQLException e) {
+                Platform.runLater(() -> onError.accept(e));
+            }
+        });
+    }
+
+    /**
+     * Updates a saved record's row in place if it is loaded, still matches the filter and still
+     * sorts between its neighbours. Otherwise the record may have joined, left or moved within
+     * the list, and the list is reloaded.
+     */
+    public void recordSaved(TravelRecord record) {
+        boolean matches = filter == null || filter.matches(record);
+        for (Map.Entry<Integer, List<TravelRecord>> page : pages.entrySet()) {
+            List<TravelRecord> rows = page.getValue();
+            for (int i = 0; i < rows.size(); i++) {
+                if (record.getId().equals(rows.get(i).getId())) {
+                    int index = page.getKey() * PAGE_SIZE + i;
+                    if (matches && isInOrder(index, record)) {
+                        TravelRecord old = rows.set(i, record);
+                        beginChange();
+                        nextSet(index, old);
+                        endChange();
+                    } else {
+                        refresh();
+                    }
+                    return;
+                }
+            }
+        }
+        if (matches) {
+            refresh();
+        }
+    }
+
+    /**
+     * Reloads the list after a record was deleted, since the rows after it move up.
+     */
+    public void recordDeleted(Long id) {
+        refresh();
+    }
+
+    // Checks a record against the loaded rows on either side of an index; rows not loaded are not checked
+    private boolean isInOrder(int index, TravelRecord record) {
+        Comparator<TravelRecord> comparator = order.comparator();
+        TravelRecord previous = index > 0 ? peek(index - 1) : null;
+        TravelRecord next = index + 1 < size ? peek(index + 1) : null;
+        return (previous == null || comparator.compare(previous, record) < 0)
+                && (next == null || comparator.compare(record, next) < 0);
+    }
+
+    // Returns a loaded row without fetching or touching the page's place in the LRU
+    private TravelRecord peek(int index) {
+        int offset = index % PAGE_SIZE;
+        for (Map.Entry<Integer, List<TravelRecord>> page : pages.entrySet()) {
+            if (page.getKey() == index / PAGE_SIZE) {
+                return offset < page.getValue().size() ? page.getValue().get(offset) : null;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public TravelRecord get(int index) {
+        Objects.checkIndex(index, size);
+        int page = index / PAGE_SIZE;
+        List<TravelRecord> rows = pages.get(page);
+        // Have the neighbouring pages ready before the user scrolls onto them
+        requestPage(page - 1);
+        requestPage(page + 1);
+        if (rows == null) {
+            requestPage(page);
+            return null;
+        }
+        int offset = index % PAGE_SIZE;
+        return offset < rows.size() ? rows.get(offset) : null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Stops taking page loads and waits briefly for the ones running to finish. They are not
+     * interrupted, because an interrupt inside an H2 read closes the database.
+     */
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void requestPage(int page) {
+        if (page < 0 || (long) page * PAGE_SIZE >= size || pages.containsKey(page) || !requested.add(page)) {
+            return;
+        }
+        // Seek from the end of the nearest earlier page already seen; only the pages in between are skipped by offset
+        Map.Entry<Integer, TravelRecord.PageKey> known = pageEnds.floorEntry(page - 1);
+        TravelRecord.PageKey after = known != null ? known.getValue() : null;
+        int offset = (page - (known != null ? known.getKey() + 1 : 0)) * PAGE_SIZE;
+        RecordFilter currentFilter = filter;
+        RecordOrder currentOrder = order;
+        long currentGeneration = generation;
+        executor.execute(() -> {
+            try {
+                List<TravelRecord> rows = TravelRecord.findPage(currentFilter, currentOrder, after, offset, PAGE_SIZE);
+                Platform.runLater(() -> pageLoaded(currentGeneration, page, rows));
+            } catch (SQLException e) {
+                Platform.runLater(() -> {
+                    if (generation == currentGeneration) {
+                        onError.accept(e);
+                    }
+                });
+            }
+        });
+    }
+
+    private void pageLoaded(long pageGeneration, int page, List<TravelRecord> rows) {
+        if (pageGeneration != generation) {
+            return;
+        }
+        requested.remove(page);
+        putPage(page, rows);
+        int from = page * PAGE_SIZE;
+        int to = Math.min(from + rows.size(), size);
+        if (to > from) {
+            beginChange();
+            nextReplace(from, to, Collections.nCopies(to - from, null));
+            endChange();
+        }
+    }
+
+    private void putPage(int page, List<TravelRecord> rows) {
+        pages.put(page, rows);
+        if (!rows.isEmpty()) {
+            pageEnds.put(page, TravelRecord.PageKey.of(rows.get(rows.size() - 1), order));
+        }
+    }
+}
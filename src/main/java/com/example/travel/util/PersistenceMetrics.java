@@ -0,0 +1,378 @@
+package com.example.travel.util;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures where the persistence layer spends its time.
+ * <p>
+ * Model methods run their work through {@link #time}, as an operation named after what they do,
+ * such as {@code record.findAll} or {@code tag.insert}. Each operation keeps a latency histogram and counts
+ * the statements it ran, the rows it read and the BLOB bytes it read; the JDBC calls are counted by
+ * the instrumented connections {@link ConnectionPool} hands out. Borrowing a connection is timed
+ * as the operation {@code connection.acquire}.
+ * <p>
+ * Statements slower than a threshold are logged with their SQL. The threshold comes from the
+ * {@code travel.db.slowQueryMillis} system property (default 200, 0 turns the log off) and can be
+ * changed at run time. Setting {@code travel.db.metrics} to false turns off the JDBC instrumentation.
+ * The figures are shown in the diagnostics dialog and published as the JMX MBean
+ * {@value #MBEAN_NAME}.
+ */
+public final class PersistenceMetrics {
+    public static final String MBEAN_NAME = "com.example.travel:type=PersistenceMetrics";
+    static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("travel.db.metrics", "true"));
+
+    private static final String CONNECTION_ACQUIRE = "connection.acquire";
+    // Latencies are counted in buckets of powers of two microseconds, up to about 18 minutes
+    private static final int BUCKETS = 31;
+
+    private static final Map<String, Stats> operations = new ConcurrentHashMap<>();
+    private static final ThreadLocal<Stats> current = new ThreadLocal<>();
+    private static final LongAdder statements = new LongAdder();
+    private static final LongAdder rowsRead = new LongAdder();
+    private static final LongAdder blobBytesRead = new LongAdder();
+    private static volatile long slowQueryMillis = Long.getLong("travel.db.slowQueryMillis", 200);
+
+    private PersistenceMetrics() {
+    }
+
+    /**
+     * A timed operation, recorded when it is closed. Operations may nest; statements and rows are
+     * counted against the innermost one.
+     */
+    public static final class Operation implements AutoCloseable {
+        private final Stats stats;
+        private final Stats outer;
+        private final long startNanos = System.nanoTime();
+
+        private Operation(Stats stats, Stats outer) {
+            this.stats = stats;
+            this.outer = outer;
+        }
+
+        @Override
+        public void close() {
+            stats.record(System.nanoTime() - startNanos);
+            if (outer == null) {
+                current.remove();
+            } else {
+                current.set(outer);
+            }
+        }
+    }
+
+    /**
+     * The figures recorded for one operation.
+     *
+     * @param name The operation's name
+     * @param count How many times it ran
+     * @param meanMillis Its mean latency
+     * @param p50Millis Its median latency, to the nearest power of two microseconds above
+     * @param p95Millis Its 95th percentile latency, likewise
+     * @param p99Millis Its 99th percentile latency, likewise
+     * @param maxMillis Its slowest run
+     * @param statements The statements it executed
+     * @param rowsRead The result set rows it read
+     * @param blobBytesRead The BLOB bytes it read
+     */
+    public record Summary(String name, long count, double meanMillis, double p50Millis, double p95Millis,
+                          double p99Millis, double maxMillis, long statements, long rowsRead, long blobBytesRead) {
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%s: count=%d mean=%.3f ms p50=%.3f ms p95=%.3f ms p99=%.3f ms max=%.3f ms"
+                            + " statements=%d rows=%d blob bytes=%d",
+                    name, count, meanMillis, p50Millis, p95Millis, p99Millis, maxMillis, statements, rowsRead, blobBytesRead);
+        }
+    }
+
+    /**
+     * Work timed as an operation.
+     *
+     * @param <T> The work's result type
+     */
+    @FunctionalInterface
+    public interface Work<T> {
+        T run() throws SQLException;
+    }
+
+    /**
+     * Work timed as an operation that has no result.
+     */
+    @FunctionalInterface
+    public interface Action {
+        void run() throws SQLException;
+    }
+
+    /**
+     * Runs work as an operation and returns its result.
+     */
+    public static <T> T time(String name, Work<T> work) throws SQLException {
+        Operation operation = start(name);
+        try {
+            return work.run();
+        } finally {
+            operation.close();
+        }
+    }
+
+    /**
+     * Runs work that has no result as an operation.
+     */
+    public static void time(String name, Action action) throws SQLException {
+        Operation operation = start(name);
+        try {
+            action.run();
+        } finally {
+            operation.close();
+        }
+    }
+
+    /**
+     * Starts timing an operation, for work that cannot go through {@link #time}; close it when the
+     * work is done.
+     */
+    public static Operation start(String name) {
+        Stats stats = operations.computeIfAbsent(name, Stats::new);
+        Stats outer = current.get();
+        current.set(stats);
+        return new Operation(stats, outer);
+    }
+
+    /**
+     * A summary of each operation that has run, the one that took the most time in total first.
+     */
+    public static List<Summary> summaries() {
+        List<Stats> all = new ArrayList<>(operations.values());
+        all.sort(Comparator.comparingLong((Stats stats) -> stats.totalNanos.sum()).reversed());
+        List<Summary> summaries = new ArrayList<>(all.size());
+        for (Stats stats : all) {
+            summaries.add(stats.summary());
+        }
+        return summaries;
+    }
+
+    public static long getStatements() {
+        return statements.sum();
+    }
+
+    public static long getRowsRead() {
+        return rowsRead.sum();
+    }
+
+    public static long getBlobBytesRead() {
+        return blobBytesRead.sum();
+    }
+
+    public static long getSlowQueryMillis() {
+        return slowQueryMillis;
+    }
+
+    /**
+     * Sets how long a statement may take before it is logged; 0 turns the log off.
+     */
+    public static void setSlowQueryMillis(long millis) {
+        slowQueryMillis = millis;
+    }
+
+    /**
+     * Clears every figure recorded so far.
+     */
+    public static void reset() {
+        operations.clear();
+        statements.reset();
+        rowsRead.reset();
+        blobBytesRead.reset();
+    }
+
+    /**
+     * The totals and one line per operation, for logging.
+     */
+    public static String report() {
+        StringBuilder report = new StringBuilder(String.format(Locale.ROOT,
+                "Persistence: statements=%d rows=%d blob bytes=%d", getStatements(), getRowsRead(), getBlobBytesRead()));
+        for (Summary summary : summaries()) {
+            report.append(System.lineSeparator()).append("  ").append(summary);
+        }
+        return report.toString();
+    }
+
+    /**
+     * Publishes the metrics as a JMX MBean, so they can be watched with JConsole or VisualVM.
+     */
+    public static void registerMBean() {
+        try {
+            ObjectName name = new ObjectName(MBEAN_NAME);
+            if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(new MXBean(), name);
+            }
+        } catch (JMException e) {
+            System.err.println("Could not register the persistence metrics MBean: " + e.getMessage());
+        }
+    }
+
+    static void connectionAcquired(long nanos) {
+        operations.computeIfAbsent(CONNECTION_ACQUIRE, Stats::new).record(nanos);
+    }
+
+    /**
+     * The operation statements and reads are counted against on this thread, or null.
+     */
+    static Stats currentOperation() {
+        return current.get();
+    }
+
+    /**
+     * Counts a statement and logs it if it was slow.
+     *
+     * @param rows The rows read, for a query; -1 for an update
+     */
+    static void statementExecuted(Stats operation, String sql, long nanos, long rows) {
+        statements.increment();
+        if (operation != null) {
+            operation.statements.increment();
+        }
+        long threshold = slowQueryMillis;
+        if (threshold > 0 && nanos >= threshold * 1_000_000) {
+            System.out.println(String.format(Locale.ROOT, "Slow query: %.1f ms%s%s: %s", nanos / 1e6,
+                    rows >= 0 ? ", " + rows + " rows" : "", operation != null ? " in " + operation.name : "", sql));
+        }
+    }
+
+    static void rowRead(Stats operation) {
+        rowsRead.increment();
+        if (operation != null) {
+            operation.rowsRead.increment();
+        }
+    }
+
+    static void blobBytesRead(Stats operation, long bytes) {
+        blobBytesRead.add(bytes);
+        if (operation != null) {
+            operation.blobBytesRead.add(bytes);
+        }
+    }
+
+    static final class Stats {
+        private final String name;
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final LongAdder statements = new LongAdder();
+        private final LongAdder rowsRead = new LongAdder();
+        private final LongAdder blobBytesRead = new LongAdder();
+
+        private Stats(String name) {
+            this.name = name;
+        }
+
+        private void record(long nanos) {
+            long micros = Math.max(1, nanos / 1000);
+            buckets.incrementAndGet(Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(micros)));
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+        }
+
+        private Summary summary() {
+            long n = count.sum();
+            double max = maxNanos.get() / 1e6;
+            return new Summary(name, n, n == 0 ? 0 : totalNanos.sum() / 1e6 / n,
+                    Math.min(max, percentile(0.50)), Math.min(max, percentile(0.95)), Math.min(max, percentile(0.99)),
+                    max, statements.sum(), rowsRead.sum(), blobBytesRead.sum());
+        }
+
+        // The upper bound of the bucket holding the given fraction of the runs, in milliseconds
+        private double percentile(double fraction) {
+            long[] counts = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets.get(i);
+                total += counts[i];
+            }
+            long rank = (long) Math.ceil(fraction * total);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank && seen > 0) {
+                    return (1L << (i + 1)) / 1000.0;
+                }
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * The JMX view of the metrics.
+     */
+    public interface PersistenceMetricsMXBean {
+        String[] getOperations();
+
+        long getStatements();
+
+        long getRowsRead();
+
+        long getBlobBytesRead();
+
+        String getConnectionPool();
+
+        long getSlowQueryMillis();
+
+        void setSlowQueryMillis(long millis);
+
+        void reset();
+    }
+
+    private static final class MXBean implements PersistenceMetricsMXBean {
+        @Override
+        public String[] getOperations() {
+            return summaries().stream().map(Summary::toString).toArray(String[]::new);
+        }
+
+        @Override
+        public long getStatements() {
+            return PersistenceMetrics.getStatements();
+        }
+
+        @Override
+        public long getRowsRead() {
+            return PersistenceMetrics.getRowsRead();
+        }
+
+        @Override
+        public long getBlobBytesRead() {
+            return PersistenceMetrics.getBlobBytesRead();
+        }
+
+        @Override
+        public String getConnectionPool() {
+            return ConnectionPool.getInstance().getMetrics().toString();
+        }
+
+        @Override
+        public long getSlowQueryMillis() {
+            return PersistenceMetrics.getSlowQueryMillis();
+        }
+
+        @Override
+        public void setSlowQueryMillis(long millis) {
+            PersistenceMetrics.setSlowQueryMillis(millis);
+        }
+
+        @Override
+        public void reset() {
+            PersistenceMetrics.reset();
+        }
+    }
+}
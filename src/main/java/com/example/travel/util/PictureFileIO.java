@@ -0,0 +1,115 @@
+package com.example.travel.util;
+
+import com.example.travel.model.PictureStore;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Copies pictures from the {@link PictureStore} to side-files on a small bounded pool of threads.
+ * <p>
+ * Each copy streams the picture from its own database connection straight to disk. The copies of
+ * every export running at once share half of the {@link ConnectionPool}'s connections, so they never
+ * starve the export cursors, the record table or saves of a connection. The work queue is bounded;
+ * when it is full the submitting thread does the copy itself. The pool size comes from the
+ * {@code travel.io.threads} system property (default: the number of processors, at most 4).
+ */
+class PictureFileIO implements AutoCloseable {
+    private static final int THREADS = Integer.getInteger("travel.io.threads",
+            Math.min(4, Runtime.getRuntime().availableProcessors()));
+    // Connections the copies of all exports may hold at once
+    private static final Semaphore CONNECTIONS =
+            new Semaphore(Math.max(1, ConnectionPool.getInstance().getMetrics().maxSize() / 2));
+
+    private final ThreadPoolExecutor executor;
+    private final AtomicReference<Exception> failure = new AtomicReference<>();
+
+    PictureFileIO() {
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(THREADS, THREADS, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(THREADS * 2),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "picture-io-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Copies a stored picture to a file in the background. A failure is reported by a later call
+     * or by {@link #finish()}.
+     *
+     * @param progress Receives the bytes copied
+     */
+    void copy(String hash, Path target, JobProgress progress) throws IOException, SQLException {
+        checkFailure();
+        executor.execute(() -> {
+            CONNECTIONS.acquireUninterruptibly();
+            try {
+                long copied = PictureStore.copyTo(hash, target);
+                if (copied > 0) {
+                    progress.addBytes(copied);
+                }
+            } catch (IOException | SQLException e) {
+                failure.compareAndSet(null, e);
+            } finally {
+                CONNECTIONS.release();
+            }
+        });
+    }
+
+    /**
+     * Waits for every submitted copy to complete.
+     *
+     * @throws IOException If any copy failed to write its file
+     * @throws SQLException If any copy failed to read its picture
+     */
+    void finish() throws IOException, SQLException {
+        try {
+            awaitTermination();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing pictures", e);
+        }
+        checkFailure();
+    }
+
+    private void awaitTermination() throws InterruptedException {
+        executor.shutdown();
+        while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+            // Keep waiting; large pictures on slow disks can take a while
+        }
+    }
+
+    private void checkFailure() throws IOException, SQLException {
+        Exception e = failure.get();
+        if (e instanceof IOException io) {
+            throw io;
+        }
+        if (e instanceof SQLException sql) {
+            throw sql;
+        }
+    }
+
+    /**
+     * Lets the files already submitted finish, so an export that fails or is cancelled never
+     * leaves a truncated picture behind for the next export to reuse.
+     */
+    @Override
+    public void close() {
+        try {
+            awaitTermination();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.travel.util;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Logs how long the application takes to start, phase by phase.
+ * <p>
+ * Times are measured from the start of the process, so the JVM and JavaFX launch are included and
+ * the figures compare across releases. Each line starts with {@code Startup:} for easy grepping.
+ */
+public final class StartupLog {
+    // When the process started, or failing that when this class was loaded
+    private static final Instant PROCESS_START = ProcessHandle.current().info().startInstant().orElse(Instant.now());
+
+    private StartupLog() {
+    }
+
+    /**
+     * Logs that startup reached a milestone, such as the window being shown.
+     */
+    public static void mark(String milestone) {
+        System.out.println("Startup: " + milestone + " at " + sinceProcessStart() + " ms");
+    }
+
+    /**
+     * Logs that a startup phase finished.
+     *
+     * @param phase What was done
+     * @param startNanos The {@link System#nanoTime()} when the phase began
+     */
+    public static void phase(String phase, long startNanos) {
+        System.out.println("Startup: " + phase + " in " + (System.nanoTime() - startNanos) / 1_000_000
+                + " ms, done at " + sinceProcessStart() + " ms");
+    }
+
+    private static long sinceProcessStart() {
+        return Duration.between(PROCESS_START, Instant.now()).toMillis();
+    }
+}
@@ -1,23 +1,69 @@
 package com.example.travel.util;
 
+import com.example.travel.model.PictureStore;
+import com.example.travel.model.RecordFilter;
+import com.example.travel.model.RoutePlanner;
 import com.example.travel.model.TravelRecord;
-import org.apache.poi.common.usermodel.PictureType;
-import org.apache.poi.util.Units;
-import org.apache.poi.xwpf.usermodel.*;
 
-import java.io.ByteArrayInputStream;
-import java.io.FileOutputStream;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
 
 /**
  * Utility class for generating Word reports of planned travel records.
+ * <p>
+ * The planned records are listed in the order of a short route through their locations, planned
+ * by {@link RoutePlanner}, followed by those without a location. Only the id and position of
+ * each record are kept to plan the route; the records are then loaded a page at a time in route
+ * order, without their pictures, and written out through a {@link DocxWriter}. Each picture is
+ * downscaled to print size and stored in the document as soon as it is first shown, so memory
+ * does not grow with the length of the report or the size of the stored photos.
  */
 public class WordReportGenerator {
 
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
 
+    // Records loaded per query while the report is written
+    private static final int PAGE_SIZE = 100;
+    // Pictures are printed at most 300 x 200 points; 600 pixels across is about 150 dpi
+    private static final int IMAGE_WIDTH_POINTS = 300;
+    private static final int IMAGE_HEIGHT_POINTS = 200;
+    private static final int IMAGE_MAX_PIXELS = 600;
+    private static final float JPEG_QUALITY = 0.8f;
+
+    private static final DocxWriter.Font TITLE_FONT = new DocxWriter.Font(16, true, false, null);
+    private static final DocxWriter.Font HEADING_FONT = new DocxWriter.Font(14, true, false, null);
+    private static final DocxWriter.Font TEXT_FONT = new DocxWriter.Font(12, false, false, null);
+    private static final DocxWriter.Font LABEL_FONT = new DocxWriter.Font(12, true, false, null);
+    private static final DocxWriter.Font STOP_FONT = new DocxWriter.Font(12, false, true, null);
+    private static final DocxWriter.Font ERROR_FONT = new DocxWriter.Font(0, false, false, "FF0000");
+    private static final DocxWriter.Font SEPARATOR_FONT = new DocxWriter.Font(0, false, false, null);
+
+    /**
+     * A picture downscaled for the report.
+     */
+    private record ScaledImage(byte[] jpeg, int width, int height) {
+    }
+
     /**
      * Generates a Word document report containing all planned travel records.
      * 
@@ -25,51 +71,99 @@ public class WordReportGenerator {
      * @throws IOException If there's an error writing the file
      */
     public static void generatePlannedVisitsReport(String filePath) throws IOException {
-        try {
-            // Create a new document
-            XWPFDocument document = new XWPFDocument();
+        generatePlannedVisitsReport(filePath, JobProgress.NONE);
+    }
 
+    /**
+     * Generates a Word document report containing all planned travel records in route order,
+     * reporting each record added and the picture bytes embedded. The document is written as it
+     * is generated; if the report fails or is cancelled, the partial file is deleted.
+     *
+     * @param filePath The path where the Word document will be saved
+     * @param progress Receives progress and is checked for cancellation after every record
+     * @throws IOException If there's an error writing the file
+     * @throws CancellationException If the report was cancelled
+     */
+    public static void generatePlannedVisitsReport(String filePath, JobProgress progress) throws IOException {
+        Path file = Path.of(filePath);
+        boolean finished = false;
+        try (DocxWriter document = new DocxWriter(file)) {
             // Add title
-            XWPFParagraph titleParagraph = document.createParagraph();
-            titleParagraph.setAlignment(ParagraphAlignment.CENTER);
-            XWPFRun titleRun = titleParagraph.createRun();
-            titleRun.setText("Planned Visits Report");
-            titleRun.setBold(true);
-            titleRun.setFontSize(16);
-            titleRun.addBreak();
+            document.startParagraph(null, true);
+            document.text("Planned Visits Report", TITLE_FONT, true);
+            document.endParagraph();
 
             try {
-                // Get all records where plan=true
-                List<TravelRecord> plannedRecords = TravelRecord.findAll().stream()
-                        .filter(record -> Boolean.TRUE.equals(record.getPlan()))
-                        .toList();
-
-                if (plannedRecords.isEmpty()) {
-                    XWPFParagraph noPlansParagraph = document.createParagraph();
-                    XWPFRun noPlanRun = noPlansParagraph.createRun();
-                    noPlanRun.setText("No planned visits found.");
-                    noPlanRun.setFontSize(12);
-                } else {
-                    // Add each planned record to the document
-                    for (TravelRecord record : plannedRecords) {
-                        addRecordToDocument(document, record);
+                // Keep the id and position of each planned record to plan the route, and the ids of
+                // those without a position, oldest first
+                RecordFilter planned = new RecordFilter();
+                planned.setPlannedOnly(true);
+                List<TravelRecord> located = new ArrayList<>();
+                List<Long> unlocated = new ArrayList<>();
+                TravelRecord.forEach(planned, false, record -> {
+                    if (record.getLocation() != null) {
+                        TravelRecord stop = new TravelRecord();
+                        stop.setId(record.getId());
+                        stop.setGeo(record.getGeo());
+                        located.add(stop);
+                    } else {
+                        unlocated.add(record.getId());
                     }
+                });
+                progress.setTotalRecords(located.size() + unlocated.size());
+                progress.checkCancelled();
+                RoutePlanner.Route route = RoutePlanner.plan(located);
+
+                if (!route.stops().isEmpty()) {
+                    document.paragraph(String.format("Route: %d stops, %.1f miles in total",
+                            route.stops().size(), route.totalMiles()), TEXT_FONT, true);
                 }
 
-            } catch (Exception e) {
-                XWPFParagraph errorParagraph = document.createParagraph();
-                XWPFRun errorRun = errorParagraph.createRun();
-                errorRun.setText("Error retrieving planned visits: " + e.getMessage());
-                errorRun.setColor("FF0000");
-            }
+                // The route's stops, followed by the records without a location
+                List<Long> ids = new ArrayList<>(route.stops().size() + unlocated.size());
+                for (TravelRecord stop : route.stops()) {
+                    ids.add(stop.getId());
+                }
+                ids.addAll(unlocated);
+                for (int start = 0; start < ids.size(); start += PAGE_SIZE) {
+                    progress.checkCancelled();
+                    List<Long> pageIds = ids.subList(start, Math.min(ids.size(), start + PAGE_SIZE));
+                    // Records deleted since the route was planned are left out
+                    Map<Long, TravelRecord> page = new HashMap<>();
+                    for (TravelRecord record : TravelRecord.findByIds(pageIds)) {
+                        page.put(record.getId(), record);
+                    }
+                    for (int i = start; i < start + pageIds.size(); i++) {
+                        progress.checkCancelled();
+                        TravelRecord record = page.get(ids.get(i));
+                        if (record != null) {
+                            String leg = i >= route.stops().size() ? "Not on the route: no location"
+                                    : i == 0 ? "Stop 1"
+                                    : String.format("Stop %d, %.1f miles from stop %d", i + 1, route.legMiles()[i], i);
+                            addRecordToDocument(document, record, leg, progress);
+                        }
+                        progress.addRecords(1);
+                    }
+                }
 
-            // Write the document to file
-            try (FileOutputStream out = new FileOutputStream(filePath)) {
-                document.write(out);
+                if (ids.isEmpty()) {
+                    document.paragraph("No planned visits found.", TEXT_FONT, false);
+                }
+
+            } catch (SQLException e) {
+                document.paragraph("Error retrieving planned visits: " + e.getMessage(), ERROR_FONT, false);
             }
 
+            document.finish();
+            finished = true;
+        } catch (CancellationException e) {
+            throw e;
         } catch (Exception e) {
             throw new IOException("Failed to generate Word report: " + e.getMessage(), e);
+        } finally {
+            if (!finished) {
+                Files.deleteIfExists(file);
+            }
         }
     }
 
@@ -78,20 +172,19 @@ public class WordReportGenerator {
      * 
      * @param document The Word document
      * @param record The travel record to add
+     * @param stop The record's place in the route
+     * @param progress Receives the bytes of the pictures read
      */
-    private static void addRecordToDocument(XWPFDocument document, TravelRecord record) {
+    private static void addRecordToDocument(DocxWriter document, TravelRecord record, String stop,
+                                            JobProgress progress) throws IOException {
         // Create a paragraph for the record title
-        XWPFParagraph titleParagraph = document.createParagraph();
-        titleParagraph.setStyle("Heading1");
-        XWPFRun titleRun = titleParagraph.createRun();
-        titleRun.setText(record.getDescription());
-        titleRun.setBold(true);
-        titleRun.setFontSize(14);
-        titleRun.addBreak();
+        document.startParagraph("Heading1", false);
+        document.text(record.getDescription(), HEADING_FONT, true);
+        document.endParagraph();
 
         // Add location information
-        XWPFParagraph locationParagraph = document.createParagraph();
-        XWPFRun locationRun = locationParagraph.createRun();
+        document.startParagraph(null, false);
+        document.text(stop, STOP_FONT, true);
 
         StringBuilder location = new StringBuilder();
         if (record.getAddress() != null && !record.getAddress().isEmpty()) {
@@ -107,86 +200,116 @@ public class WordReportGenerator {
             location.append(record.getZip());
         }
 
-        locationRun.setText("Location: " + location.toString().trim());
-        locationRun.setFontSize(12);
-        locationRun.addBreak();
+        document.text("Location: " + location.toString().trim(), TEXT_FONT, true);
 
         // Add URL if available
         if (record.getUrl() != null && !record.getUrl().isEmpty()) {
-            XWPFRun urlRun = locationParagraph.createRun();
-            urlRun.setText("URL: " + record.getUrl());
-            urlRun.setFontSize(12);
-            urlRun.addBreak();
+            document.text("URL: " + record.getUrl(), TEXT_FONT, true);
         }
 
         // Add phone number if available
         if (record.getPhoneNumber() != null && !record.getPhoneNumber().isEmpty()) {
-            XWPFRun phoneRun = locationParagraph.createRun();
-            phoneRun.setText("Phone: " + record.getPhoneNumber());
-            phoneRun.setFontSize(12);
-            phoneRun.addBreak();
+            document.text("Phone: " + record.getPhoneNumber(), TEXT_FONT, true);
         }
 
         // Add geo information if available
         if (record.getGeo() != null && !record.getGeo().isEmpty()) {
-            XWPFRun geoRun = locationParagraph.createRun();
-            geoRun.setText("Geo: " + record.getGeo());
-            geoRun.setFontSize(12);
-            geoRun.addBreak();
+            document.text("Geo: " + record.getGeo(), TEXT_FONT, true);
         }
+        document.endParagraph();
 
         // Add notes if available
         if (record.getNotes() != null && !record.getNotes().isEmpty()) {
-            XWPFParagraph notesParagraph = document.createParagraph();
-            XWPFRun notesLabelRun = notesParagraph.createRun();
-            notesLabelRun.setText("Notes:");
-            notesLabelRun.setBold(true);
-            notesLabelRun.setFontSize(12);
-            notesLabelRun.addBreak();
-
-            XWPFRun notesContentRun = notesParagraph.createRun();
-            notesContentRun.setText(record.getNotes());
-            notesContentRun.setFontSize(12);
-            notesContentRun.addBreak();
+            document.startParagraph(null, false);
+            document.text("Notes:", LABEL_FONT, true);
+            document.text(record.getNotes(), TEXT_FONT, true);
+            document.endParagraph();
         }
 
         // Add image if available
-        if (record.getPicture() != null && record.getPicture().length > 0) {
-            try {
-                XWPFParagraph imageParagraph = document.createParagraph();
-                imageParagraph.setAlignment(ParagraphAlignment.CENTER);
-                XWPFRun imageRun = imageParagraph.createRun();
+        String pictureHash = record.getPictureHash(1);
+        if (pictureHash != null) {
+            // Records sharing a picture show the copy stored for the first of them
+            DocxWriter.Picture picture = document.findPicture(pictureHash);
+            String error = null;
+            if (picture == null) {
+                try {
+                    // Decode straight from the BLOB stream; the full-size picture is never copied into an array
+                    ScaledImage image = PictureStore.read(pictureHash, (in, size) -> {
+                        ScaledImage scaled = downscale(in);
+                        progress.addBytes(size);
+                        return scaled;
+                    });
+                    if (image == null) {
+                        throw new IOException("Picture not found");
+                    }
+                    picture = document.addPicture(pictureHash, image.jpeg(), image.width(), image.height());
+                } catch (SQLException | IOException e) {
+                    // If there's an error reading the image, note it but continue with the report
+                    error = e.getMessage();
+                }
+            }
+
+            if (picture != null) {
+                // Fit the image within 300x200 points, keeping its proportions
+                double scale = Math.min((double) IMAGE_WIDTH_POINTS / picture.width(),
+                        (double) IMAGE_HEIGHT_POINTS / picture.height());
+                document.startParagraph(null, true);
+                document.picture(picture, picture.width() * scale, picture.height() * scale, true);
+                document.endParagraph();
 
                 // Add a label for the image
-                XWPFParagraph imageLabelParagraph = document.createParagraph();
-                imageLabelParagraph.setAlignment(ParagraphAlignment.CENTER);
-                XWPFRun imageLabelRun = imageLabelParagraph.createRun();
-                imageLabelRun.setText("Image:");
-                imageLabelRun.setBold(true);
-                imageLabelRun.setFontSize(12);
-
-                // Set reasonable width and height for the image
-                // Using 300x200 points as a reasonable size that will fit well in the document
-                // Add the image to the document
-                ByteArrayInputStream imageStream = new ByteArrayInputStream(record.getPicture());
-                imageRun.addPicture(imageStream, PictureType.JPEG, 
-                    record.getPictureFileName() != null ? record.getPictureFileName() : "image.jpg", 
-                    Units.toEMU(300), Units.toEMU(200)); // Width: 300 points, Height: 200 points
-                imageRun.addBreak();
-            } catch (Exception e) {
-                // If there's an error adding the image, log it but continue with the report
-                XWPFParagraph errorParagraph = document.createParagraph();
-                XWPFRun errorRun = errorParagraph.createRun();
-                errorRun.setText("Error adding image: " + e.getMessage());
-                errorRun.setColor("FF0000");
-                errorRun.addBreak();
+                document.startParagraph(null, true);
+                document.text("Image:", LABEL_FONT, false);
+                document.endParagraph();
+            } else {
+                document.paragraph("Error adding image: " + error, ERROR_FONT, true);
             }
         }
 
         // Add a separator
-        XWPFParagraph separatorParagraph = document.createParagraph();
-        XWPFRun separatorRun = separatorParagraph.createRun();
-        separatorRun.setText("------------------------------------------------------");
-        separatorRun.addBreak();
+        document.paragraph("------------------------------------------------------", SEPARATOR_FONT, true);
+    }
+
+    /**
+     * Shrinks a picture to at most 600 pixels on its longer side and re-encodes it as JPEG.
+     *
+     * @param in The stored picture
+     * @return The downscaled picture
+     * @throws IOException If the picture cannot be decoded
+     */
+    private static ScaledImage downscale(InputStream in) throws IOException {
+        // Buffer in memory rather than in ImageIO's default temporary file
+        BufferedImage source = ImageIO.read(new MemoryCacheImageInputStream(in));
+        if (source == null) {
+            throw new IOException("Unsupported image format");
+        }
+
+        double scale = Math.min(1.0, (double) IMAGE_MAX_PIXELS / Math.max(source.getWidth(), source.getHeight()));
+        int width = Math.max(1, (int) Math.round(source.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * scale));
+        // Draw onto an opaque RGB image; JPEG has no alpha channel
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = scaled.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(source, 0, 0, width, height, Color.WHITE, null);
+        } finally {
+            graphics.dispose();
+        }
+
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream imageOut = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(imageOut);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(JPEG_QUALITY);
+            writer.write(null, new IIOImage(scaled, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return new ScaledImage(out.toByteArray(), width, height);
     }
 }
@@ -1,161 +1,300 @@
 package com.example.travel.util;
 
+import com.example.travel.model.BulkInsertResult;
+import com.example.travel.model.PictureStore;
+import com.example.travel.model.RecordFilter;
 import com.example.travel.model.TravelRecord;
 import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.JAXBElement;
 import jakarta.xml.bind.JAXBException;
 import jakarta.xml.bind.Marshaller;
 import jakarta.xml.bind.Unmarshaller;
-import jakarta.xml.bind.annotation.*;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.UUID;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
 
-@XmlRootElement(name = "travelRecords")
-@XmlAccessorType(XmlAccessType.FIELD)
+/**
+ * Exports and imports travel records as XML, one {@code <record>} element at a time.
+ * <p>
+ * Records are streamed from a database cursor on export and inserted in batches as they are read on import,
+ * so memory use does not grow with the size of the archive. Pictures are kept in a
+ * {@code <file>_pictures} directory next to the XML file, named after their {@link PictureStore}
+ * hash so each distinct image is written once, and referenced by file name.
+ */
 public class XmlUtils {
-    @XmlElement(name = "record")
-    private List<TravelRecord> records;
+    private static final String ROOT_ELEMENT = "travelRecords";
+    private static final QName RECORD_ELEMENT = new QName("record");
+    private static final int DEFAULT_BATCH_SIZE = Integer.getInteger("travel.import.batchSize", 200);
 
-    public XmlUtils() {
-        records = new ArrayList<>();
-    }
+    private static JAXBContext context;
 
-    public void setRecords(List<TravelRecord> records) {
-        this.records = records;
+    private static synchronized JAXBContext getContext() throws JAXBException {
+        if (context == null) {
+            context = JAXBContext.newInstance(TravelRecord.class);
+        }
+        return context;
     }
 
-    public List<TravelRecord> getRecords() {
-        return records;
+    /**
+     * Writes every record in the database to an XML file.
+     *
+     * @param file The XML file to write
+     * @return The number of records exported
+     */
+    public static int exportToXml(File file) throws JAXBException, SQLException, IOException {
+        return exportToXml(file, JobProgress.NONE);
     }
 
-    public static void exportToXml(List<TravelRecord> records, File file) throws JAXBException, IOException {
-        XmlUtils wrapper = new XmlUtils();
-        wrapper.setRecords(records);
-
-        JAXBContext context = JAXBContext.newInstance(XmlUtils.class, TravelRecord.class);
-        Marshaller marshaller = context.createMarshaller();
+    /**
+     * Writes every record in the database to an XML file, reporting each record and the bytes written.
+     * If the export is cancelled the partial XML file is deleted.
+     *
+     * @param file The XML file to write
+     * @param progress Receives progress and is checked for cancellation after every record
+     * @return The number of records exported
+     * @throws CancellationException If the export was cancelled
+     */
+    public static int exportToXml(File file, JobProgress progress) throws JAXBException, SQLException, IOException {
+        Marshaller marshaller = getContext().createMarshaller();
         marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
+        marshaller.setProperty(Marshaller.JAXB_FRAGMENT, true);
         // Create pictures directory next to the XML file
-        Path picturesDir = file.toPath().getParent().resolve(file.getName() + "_pictures");
+        Path picturesDir = picturesDir(file);
         Files.createDirectories(picturesDir);
 
-        // Save pictures to separate files and update XML references
-        for (TravelRecord record : records) {
-            // Handle picture 1
-            byte[] picture = record.getPicture();
-            if (picture != null && picture.length > 0) {
-                String pictureFileName = UUID.randomUUID().toString() + ".jpg";
-                File pictureFile = picturesDir.resolve(pictureFileName).toFile();
-                try (FileOutputStream fos = new FileOutputStream(pictureFile)) {
-                    fos.write(picture);
-                }
-                record.setPictureFileName(pictureFileName);
-                record.setPicture(null); // Don't store binary data in XML
-            }
+        progress.setTotalRecords(TravelRecord.count(new RecordFilter()));
+        int[] count = {0};
+        Set<String> writtenPictures = new HashSet<>();
+        try (PictureFileIO pictureIO = new PictureFileIO();
+             Writer out = new BufferedWriter(new OutputStreamWriter(
+                     new ProgressOutputStream(new FileOutputStream(file), progress), StandardCharsets.UTF_8))) {
+            out.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n");
+            out.write("<" + ROOT_ELEMENT + ">\n");
 
-            // Handle picture 2
-            byte[] picture2 = record.getPicture2();
-            if (picture2 != null && picture2.length > 0) {
-                String pictureFileName2 = UUID.randomUUID().toString() + ".jpg";
-                File pictureFile2 = picturesDir.resolve(pictureFileName2).toFile();
-                try (FileOutputStream fos = new FileOutputStream(pictureFile2)) {
-                    fos.write(picture2);
-                }
-                record.setPictureFileName2(pictureFileName2);
-                record.setPicture2(null); // Don't store binary data in XML
-            }
+            TravelRecord.forEach(new RecordFilter(), false, record -> {
+                progress.checkCancelled();
+                // Save pictures to separate files named after their hash and reference them from the XML
+                record.setPictureFileName(writePicture(pictureIO, picturesDir, record.getPictureHash(1), writtenPictures, progress));
+                record.setPictureFileName2(writePicture(pictureIO, picturesDir, record.getPictureHash(2), writtenPictures, progress));
+                record.setPictureFileName3(writePicture(pictureIO, picturesDir, record.getPictureHash(3), writtenPictures, progress));
+
+                marshaller.marshal(new JAXBElement<>(RECORD_ELEMENT, TravelRecord.class, record), out);
+                out.write("\n");
+                count[0]++;
+                progress.addRecords(1);
+            });
+
+            out.write("</" + ROOT_ELEMENT + ">\n");
+            pictureIO.finish();
+        } catch (JAXBException | SQLException | IOException e) {
+            throw e;
+        } catch (CancellationException e) {
+            Files.deleteIfExists(file.toPath());
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Failed to export records: " + e.getMessage(), e);
+        }
+        return count[0];
+    }
+
+    /**
+     * Reads the records in an XML file and inserts them as new records, using the default batch size
+     * (the {@code travel.import.batchSize} system property, 200 if unset).
+     *
+     * @param file The XML file to read
+     * @return The number of records imported and the ones that were rejected
+     */
+    public static BulkInsertResult importFromXml(File file) throws JAXBException, XMLStreamException, SQLException, IOException {
+        return importFromXml(file, DEFAULT_BATCH_SIZE, JobProgress.NONE);
+    }
 
-            // Handle picture 3
-            byte[] picture3 = record.getPicture3();
-            if (picture3 != null && picture3.length > 0) {
-                String pictureFileName3 = UUID.randomUUID().toString() + ".jpg";
-                File pictureFile3 = picturesDir.resolve(pictureFileName3).toFile();
-                try (FileOutputStream fos = new FileOutputStream(pictureFile3)) {
-                    fos.write(picture3);
+    /**
+     * Reads the records in an XML file and inserts them as new records, using the default batch size
+     * and reporting each batch and the bytes of XML read. Cancelling stops the import between batches;
+     * the batches inserted so far are kept.
+     *
+     * @param file The XML file to read
+     * @param progress Receives progress and is checked for cancellation after every record
+     * @return The number of records imported and the ones that were rejected
+     * @throws CancellationException If the import was cancelled
+     */
+    public static BulkInsertResult importFromXml(File file, JobProgress progress) throws JAXBException, XMLStreamException, SQLException, IOException {
+        return importFromXml(file, DEFAULT_BATCH_SIZE, progress);
+    }
+
+    /**
+     * Reads the records in an XML file and inserts them as new records in batches of the given size.
+     *
+     * @param file The XML file to read
+     * @param batchSize The number of records inserted per transaction
+     * @return The number of records imported and the ones that were rejected
+     */
+    public static BulkInsertResult importFromXml(File file, int batchSize) throws JAXBException, XMLStreamException, SQLException, IOException {
+        return importFromXml(file, batchSize, JobProgress.NONE);
+    }
+
+    /**
+     * Reads the records in an XML file and inserts them as new records. Records are inserted
+     * in batches as they are read, each batch in its own transaction, so only one batch is
+     * held in memory at a time. Duplicate descriptions are reported rather than aborting the import.
+     *
+     * @param file The XML file to read
+     * @param batchSize The number of records inserted per transaction
+     * @param progress Receives progress and is checked for cancellation after every record
+     * @return The number of records imported and the ones that were rejected
+     * @throws CancellationException If the import was cancelled
+     */
+    public static BulkInsertResult importFromXml(File file, int batchSize, JobProgress progress) throws JAXBException, XMLStreamException, SQLException, IOException {
+        Unmarshaller unmarshaller = getContext().createUnmarshaller();
+        Path picturesDir = picturesDir(file);
+
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+
+        progress.setTotalBytes(Files.size(file.toPath()));
+        BulkInsertResult result = new BulkInsertResult();
+        List<TravelRecord> batch = new ArrayList<>(batchSize);
+        try (InputStream in = new BufferedInputStream(new ProgressInputStream(Files.newInputStream(file.toPath()), progress))) {
+            XMLStreamReader reader = factory.createXMLStreamReader(in);
+            try {
+                while (reader.hasNext()) {
+                    if (reader.isStartElement() && RECORD_ELEMENT.getLocalPart().equals(reader.getLocalName())) {
+                        progress.checkCancelled();
+                        // Unmarshalling leaves the reader just past the record's end tag
+                        TravelRecord record = unmarshaller.unmarshal(reader, TravelRecord.class).getValue();
+                        record.setId(null); // Clear ID to ensure it's saved as a new record
+                        batch.add(record);
+                        if (batch.size() >= batchSize) {
+                            loadPictures(picturesDir, batch);
+                            result.add(TravelRecord.insertAll(batch, batchSize));
+                            progress.addRecords(batch.size());
+                            batch.clear();
+                        }
+                    } else {
+                        reader.next();
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    progress.checkCancelled();
+                    loadPictures(picturesDir, batch);
+                    result.add(TravelRecord.insertAll(batch, batchSize));
+                    progress.addRecords(batch.size());
                 }
-                record.setPictureFileName3(pictureFileName3);
-                record.setPicture3(null); // Don't store binary data in XML
+            } finally {
+                reader.close();
             }
         }
+        return result;
+    }
 
-        marshaller.marshal(wrapper, file);
+    private static Path picturesDir(File file) {
+        return file.toPath().toAbsolutePath().getParent().resolve(file.getName() + "_pictures");
+    }
 
-        // Restore picture data after XML export
-        for (TravelRecord record : records) {
-            // Restore picture 1
-            if (record.getPictureFileName() != null) {
-                File pictureFile = picturesDir.resolve(record.getPictureFileName()).toFile();
-                record.setPicture(Files.readAllBytes(pictureFile.toPath()));
-                record.setPictureFileName(null);
-            }
+    // Writes a picture file unless this export, or an earlier one into the same directory, already did
+    private static String writePicture(PictureFileIO pictureIO, Path picturesDir, String hash,
+                                       Set<String> writtenPictures, JobProgress progress) throws IOException, SQLException {
+        if (hash == null) {
+            return null;
+        }
+        String pictureFileName = hash + ".jpg";
+        Path pictureFile = picturesDir.resolve(pictureFileName);
+        if (writtenPictures.add(hash) && !Files.exists(pictureFile)) {
+            pictureIO.copy(hash, pictureFile, progress);
+        }
+        return pictureFileName;
+    }
 
-            // Restore picture 2
-            if (record.getPictureFileName2() != null) {
-                File pictureFile2 = picturesDir.resolve(record.getPictureFileName2()).toFile();
-                record.setPicture2(Files.readAllBytes(pictureFile2.toPath()));
-                record.setPictureFileName2(null);
-            }
+    // Points the imported records at their picture files, which are streamed into the database as the batch is inserted
+    private static void loadPictures(Path picturesDir, List<TravelRecord> batch) {
+        for (TravelRecord record : batch) {
+            record.setPicture(1, pictureFile(picturesDir, record.getPictureFileName()));
+            record.setPictureFileName(null);
+            record.setPicture(2, pictureFile(picturesDir, record.getPictureFileName2()));
+            record.setPictureFileName2(null);
+            record.setPicture(3, pictureFile(picturesDir, record.getPictureFileName3()));
+            record.setPictureFileName3(null);
+        }
+    }
 
-            // Restore picture 3
-            if (record.getPictureFileName3() != null) {
-                File pictureFile3 = picturesDir.resolve(record.getPictureFileName3()).toFile();
-                record.setPicture3(Files.readAllBytes(pictureFile3.toPath()));
-                record.setPictureFileName3(null);
-            }
+    // The side-file a record refers to, or null if it has none or the file is missing
+    private static Path pictureFile(Path picturesDir, String pictureFileName) {
+        if (pictureFileName == null) {
+            return null;
         }
+        Path pictureFile = picturesDir.resolve(pictureFileName);
+        return Files.exists(pictureFile) ? pictureFile : null;
     }
 
-    public static List<TravelRecord> importFromXml(File file) throws JAXBException, SQLException, IOException {
-        JAXBContext context = JAXBContext.newInstance(XmlUtils.class, TravelRecord.class);
-        Unmarshaller unmarshaller = context.createUnmarshaller();
-        XmlUtils wrapper = (XmlUtils) unmarshaller.unmarshal(file);
-
-        List<TravelRecord> importedRecords = wrapper.getRecords();
-        // Load pictures from the pictures directory
-        Path picturesDir = file.toPath().getParent().resolve(file.getName() + "_pictures");
-        if (Files.exists(picturesDir)) {
-            for (TravelRecord record : importedRecords) {
-                // Import picture 1
-                String pictureFileName = record.getPictureFileName();
-                if (pictureFileName != null) {
-                    File pictureFile = picturesDir.resolve(pictureFileName).toFile();
-                    if (pictureFile.exists()) {
-                        record.setPicture(Files.readAllBytes(pictureFile.toPath()));
-                    }
-                }
-                record.setPictureFileName(null);
-
-                // Import picture 2
-                String pictureFileName2 = record.getPictureFileName2();
-                if (pictureFileName2 != null) {
-                    File pictureFile2 = picturesDir.resolve(pictureFileName2).toFile();
-                    if (pictureFile2.exists()) {
-                        record.setPicture2(Files.readAllBytes(pictureFile2.toPath()));
-                    }
-                }
-                record.setPictureFileName2(null);
-
-                // Import picture 3
-                String pictureFileName3 = record.getPictureFileName3();
-                if (pictureFileName3 != null) {
-                    File pictureFile3 = picturesDir.resolve(pictureFileName3).toFile();
-                    if (pictureFile3.exists()) {
-                        record.setPicture3(Files.readAllBytes(pictureFile3.toPath()));
-                    }
-                }
-                record.setPictureFileName3(null);
+    // Reports the bytes of XML written
+    private static class ProgressOutputStream extends FilterOutputStream {
+        private final JobProgress progress;
 
-                record.setId(null); // Clear ID to ensure it's saved as a new record
-                record.save();
+        ProgressOutputStream(OutputStream out, JobProgress progress) {
+            super(out);
+            this.progress = progress;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            progress.addBytes(1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            progress.addBytes(len);
+        }
+    }
+
+    // Reports the bytes of XML read
+    private static class ProgressInputStream extends FilterInputStream {
+        private final JobProgress progress;
+
+        ProgressInputStream(InputStream in, JobProgress progress) {
+            super(in);
+            this.progress = progress;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) {
+                progress.addBytes(1);
             }
+            return b;
         }
 
-        return importedRecords;
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = in.read(b, off, len);
+            if (count > 0) {
+                progress.addBytes(count);
+            }
+            return count;
+        }
     }
 }
@@ -0,0 +1,108 @@
+package com.example.travel.model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.NullAndEmptySource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class GeoPointTest {
+    private static final double TOLERANCE = 1e-6;
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "36.0544, -112.1401",
+            "36.0544,-112.1401",
+            "  36.0544 -112.1401  ",
+            "36.0544; -112.1401",
+            "+36.0544/-112.1401",
+            "36.0544 N 112.1401 W",
+            "N36.0544, W112.1401",
+            "36.0544n, 112.1401w",
+            "112.1401 W, 36.0544 N",
+            "W 112.1401 N 36.0544",
+            "geo:36.0544,-112.1401",
+    })
+    void parsesDecimalDegrees(String text) {
+        assertPosition(36.0544, -112.1401, GeoPoint.parse(text));
+    }
+
+    @Test
+    void southAndWestAreNegative() {
+        assertPosition(-33.8568, 151.2153, GeoPoint.parse("33.8568 S, 151.2153 E"));
+        assertPosition(-33.8568, 151.2153, GeoPoint.parse("-33.8568, 151.2153"));
+        assertPosition(-33.8568, -70.6693, GeoPoint.parse("33.8568S 70.6693W"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "36°3'15.8\"N 112°8'24.4\"W",
+            "36° 3' 15.8\" N, 112° 8' 24.4\" W",
+            "36º3′15.8″N 112º8′24.4″W",
+            "36°3'15.8''N 112°8'24.4''W",
+            "N 36°3'15.8\" W 112°8'24.4\"",
+    })
+    void parsesDegreesMinutesAndSeconds(String text) {
+        assertPosition(36 + 3 / 60.0 + 15.8 / 3600, -(112 + 8 / 60.0 + 24.4 / 3600), GeoPoint.parse(text));
+    }
+
+    @Test
+    void parsesDegreesAndMinutes() {
+        assertPosition(36.05, -112.5, GeoPoint.parse("36°3'N 112°30'W"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "https://www.google.com/maps/@36.0544,-112.1401,12z",
+            "https://www.google.com/maps/place/Grand+Canyon/@36.0544,-112.1401,15z/data=!3m1",
+            "see @36.0544,-112.1401",
+    })
+    void parsesMapLinks(String text) {
+        assertPosition(36.0544, -112.1401, GeoPoint.parse(text));
+    }
+
+    @ParameterizedTest
+    @NullAndEmptySource
+    @ValueSource(strings = {
+            "   ",
+            "Grand Canyon",
+            "36.0544",
+            "36.0544, -112.1401, 12",
+            "91, 10",
+            "10, 181",
+            "36.0544 N 112.1401 N S",
+            "N36.0544S, 112.1401",
+            "36.0544, W112.1401E",
+            "36°75'N 112°8'W",
+            "https://www.google.com/maps/@95.0,10.0,12z",
+            "abc, def",
+    })
+    void rejectsTextThatIsNotAPosition(String text) {
+        assertNull(GeoPoint.parse(text));
+    }
+
+    @Test
+    void rejectsPositionsOffTheEarth() {
+        assertThrows(IllegalArgumentException.class, () -> new GeoPoint(90.5, 0));
+        assertThrows(IllegalArgumentException.class, () -> new GeoPoint(0, -180.5));
+        assertThrows(IllegalArgumentException.class, () -> new GeoPoint(Double.NaN, 0));
+    }
+
+    @Test
+    void measuresGreatCircleDistance() {
+        GeoPoint london = new GeoPoint(51.5074, -0.1278);
+        GeoPoint paris = new GeoPoint(48.8566, 2.3522);
+        assertEquals(213.5, london.distanceMiles(paris), 0.5);
+        assertEquals(0, london.distanceMiles(london), TOLERANCE);
+    }
+
+    private static void assertPosition(double latitude, double longitude, GeoPoint point) {
+        assertNotNull(point);
+        assertEquals(latitude, point.latitude(), TOLERANCE);
+        assertEquals(longitude, point.longitude(), TOLERANCE);
+    }
+}
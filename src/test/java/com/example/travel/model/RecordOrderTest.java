@@ -0,0 +1,150 @@
+package com.example.travel.model;
+
+import com.example.travel.util.ConnectionPool;
+import com.example.travel.util.DatabaseUpdater;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pages through records by key, as {@link com.example.travel.util.PagedRecordList} does, in every
+ * order the table can be sorted by. The records have NULLs and repeated values in every sortable
+ * column and share creation times, so most positions are only told apart by the tie-breakers.
+ */
+class RecordOrderTest {
+    private static final int RECORDS = 48;
+
+    @BeforeAll
+    static void createRecords() throws SQLException {
+        ConnectionPool.configure("jdbc:h2:mem:record-order;DB_CLOSE_DELAY=-1", "sa", "", 4);
+        DatabaseUpdater.updateSchema();
+        LocalDateTime created = LocalDateTime.of(2024, 5, 1, 12, 0);
+        try (Connection conn = ConnectionPool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("INSERT INTO travel_records (description, url, state,"
+                     + " city, address, zip, geo, date_created, date_updated, visited, plan, tag)"
+                     + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+            for (int i = 0; i < RECORDS; i++) {
+                Timestamp timestamp = Timestamp.valueOf(created.plusMinutes(i % 3));
+                stmt.setString(1, "Record " + (char) ('a' + i % 5) + i);
+                stmt.setString(2, pick(i, null, "https://a.example", "https://b.example", null));
+                stmt.setString(3, pick(i / 2, null, "CA", "NY"));
+                stmt.setString(4, pick(i / 3, "Boise", null, "Austin"));
+                stmt.setString(5, pick(i / 4, "1 Main St", "2 Elm St", null));
+                stmt.setString(6, pick(i, null, "83702"));
+                stmt.setString(7, pick(i / 5, null, "36.0544, -112.1401"));
+                stmt.setTimestamp(8, timestamp);
+                stmt.setTimestamp(9, timestamp);
+                stmt.setBoolean(10, i % 4 < 2);
+                stmt.setBoolean(11, i % 3 == 0);
+                stmt.setString(12, pick(i / 6, "beach", null, "hike", "beach"));
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    @AfterAll
+    static void closePool() {
+        ConnectionPool.shutdown();
+    }
+
+    static Stream<List<RecordOrder.Key>> orders() {
+        List<List<RecordOrder.Key>> orders = new ArrayList<>();
+        orders.add(List.of());
+        for (String column : List.of("description", "url", "state", "city", "address", "zip", "geo", "visited", "plan", "tag")) {
+            orders.add(List.of(new RecordOrder.Key(column, true)));
+            orders.add(List.of(new RecordOrder.Key(column, false)));
+        }
+        orders.add(List.of(new RecordOrder.Key("state", true), new RecordOrder.Key("city", false)));
+        orders.add(List.of(new RecordOrder.Key("tag", false), new RecordOrder.Key("visited", true)));
+        orders.add(List.of(new RecordOrder.Key("plan", false), new RecordOrder.Key("zip", true),
+                new RecordOrder.Key("url", false)));
+        return orders.stream();
+    }
+
+    @ParameterizedTest
+    @MethodSource("orders")
+    void databaseOrderMatchesComparator(List<RecordOrder.Key> keys) throws SQLException {
+        RecordOrder order = new RecordOrder(keys);
+        List<TravelRecord> all = TravelRecord.findPage(new RecordFilter(), order, null, 0, RECORDS + 1);
+
+        assertEquals(RECORDS, all.size());
+        Comparator<TravelRecord> comparator = order.comparator();
+        for (int i = 1; i < all.size(); i++) {
+            assertTrue(comparator.compare(all.get(i - 1), all.get(i)) < 0, "Out of order at row " + i);
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("orders")
+    void seekingAfterAnyRecordContinuesWithTheNextOne(List<RecordOrder.Key> keys) throws SQLException {
+        RecordOrder order = new RecordOrder(keys);
+        List<Long> all = ids(TravelRecord.findPage(new RecordFilter(), order, null, 0, RECORDS));
+
+        List<TravelRecord> rows = TravelRecord.findPage(new RecordFilter(), order, null, 0, RECORDS);
+        for (int i = 0; i < rows.size(); i++) {
+            TravelRecord.PageKey after = TravelRecord.PageKey.of(rows.get(i), order);
+            List<TravelRecord> next = TravelRecord.findPage(new RecordFilter(), order, after, 0, 4);
+            assertEquals(all.subList(i + 1, Math.min(i + 5, RECORDS)), ids(next), "After row " + i);
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("orders")
+    void pagingVisitsEveryRecordOnce(List<RecordOrder.Key> keys) throws SQLException {
+        RecordOrder order = new RecordOrder(keys);
+        RecordFilter filter = new RecordFilter();
+        filter.setHideVisited(true);
+        List<Long> all = ids(TravelRecord.findPage(filter, order, null, 0, RECORDS));
+
+        List<Long> paged = new ArrayList<>();
+        TravelRecord.PageKey after = null;
+        while (true) {
+            List<TravelRecord> page = TravelRecord.findPage(filter, order, after, 0, 5);
+            paged.addAll(ids(page));
+            if (page.size() < 5) {
+                break;
+            }
+            after = TravelRecord.PageKey.of(page.get(page.size() - 1), order);
+        }
+        assertEquals(all, paged);
+    }
+
+    @ParameterizedTest
+    @MethodSource("orders")
+    void pagesSkippedByOffsetFollowTheKnownPage(List<RecordOrder.Key> keys) throws SQLException {
+        RecordOrder order = new RecordOrder(keys);
+        List<Long> all = ids(TravelRecord.findPage(new RecordFilter(), order, null, 0, RECORDS));
+
+        // As when scrolling jumps past pages that were never loaded
+        List<TravelRecord> first = TravelRecord.findPage(new RecordFilter(), order, null, 0, 5);
+        TravelRecord.PageKey after = TravelRecord.PageKey.of(first.get(first.size() - 1), order);
+        for (int skipped = 0; skipped < 4; skipped++) {
+            int from = 5 + skipped * 5;
+            List<TravelRecord> page = TravelRecord.findPage(new RecordFilter(), order, after, skipped * 5, 5);
+            assertEquals(all.subList(from, from + 5), ids(page), "After skipping " + skipped + " pages");
+        }
+    }
+
+    private static String pick(int i, String... values) {
+        return values[i % values.length];
+    }
+
+    private static List<Long> ids(List<TravelRecord> records) {
+        return records.stream().map(TravelRecord::getId).toList();
+    }
+}
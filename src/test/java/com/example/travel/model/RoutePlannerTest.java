@@ -0,0 +1,171 @@
+package com.example.travel.model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Plans routes through points on a plane, with straight-line distances laid out as
+ * {@link RoutePlanner#solve} expects them.
+ */
+class RoutePlannerTest {
+    private static final double EPSILON = 1e-9;
+
+    @Test
+    void keepsUpToTwoStopsInOrder() {
+        for (int n = 0; n <= 2; n++) {
+            assertArrayEquals(IntStream.range(0, n).toArray(), RoutePlanner.solve(n, distances(randomPoints(n, n)), 4));
+        }
+    }
+
+    @Test
+    void solvesThreeStopsExactly() {
+        for (int seed = 0; seed < 200; seed++) {
+            double[] distances = distances(randomPoints(3, seed));
+            int[] path = RoutePlanner.solve(3, distances, 1);
+            double shortest = Double.POSITIVE_INFINITY;
+            for (int[] permutation : new int[][] {{0, 1, 2}, {0, 2, 1}, {1, 0, 2}}) {
+                shortest = Math.min(shortest, length(permutation, distances));
+            }
+            assertEquals(shortest, length(path, distances), EPSILON, "Seed " + seed);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {4, 5, 12, 50, 300})
+    void visitsEveryStopOnce(int n) {
+        for (int seed = 0; seed < 10; seed++) {
+            int[] path = RoutePlanner.solve(n, distances(randomPoints(n, seed)), 4);
+            assertArrayEquals(IntStream.range(0, n).toArray(), IntStream.of(path).sorted().toArray());
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {4, 7, 12, 50, 300})
+    void isNeverLongerThanTheNearestNeighbourSeed(int n) {
+        for (int seed = 0; seed < 20; seed++) {
+            double[] distances = distances(randomPoints(n, seed));
+            // One search seeds from stop 0, four from stops 0, n/4, n/2 and 3n/4
+            assertTrue(length(RoutePlanner.solve(n, distances, 1), distances)
+                    <= length(nearestNeighbour(n, distances, 0), distances) + EPSILON, "Seed " + seed);
+            double bestSeed = Double.POSITIVE_INFINITY;
+            for (int run = 0; run < 4; run++) {
+                bestSeed = Math.min(bestSeed, length(nearestNeighbour(n, distances, run * n / 4), distances));
+            }
+            assertTrue(length(RoutePlanner.solve(n, distances, 4), distances) <= bestSeed + EPSILON, "Seed " + seed);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {4, 6, 8, 11})
+    void leavesNoImprovingTwoOptMove(int n) {
+        // With at most ten neighbours per stop, every 2-opt move is tried on routes this short.
+        // Or-opt only tries neighbours nearer than the move's gain, so it may leave some.
+        for (int seed = 0; seed < 50; seed++) {
+            double[] distances = distances(randomPoints(n, seed));
+            int[] path = RoutePlanner.solve(n, distances, 1);
+            double length = length(path, distances);
+            for (int[] neighbour : twoOptMoves(path)) {
+                assertTrue(length(neighbour, distances) >= length - EPSILON, "Seed " + seed);
+            }
+        }
+    }
+
+    @Test
+    void visitsPointsOnALineInOrder() {
+        double[][] points = new double[40][];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = new double[] {i * 3.0, 0};
+        }
+        List<double[]> shuffled = new ArrayList<>(Arrays.asList(points));
+        Collections.shuffle(shuffled, new Random(7));
+        double[] distances = distances(shuffled.toArray(double[][]::new));
+
+        int[] path = RoutePlanner.solve(points.length, distances, 4);
+        assertEquals(3.0 * (points.length - 1), length(path, distances), EPSILON);
+    }
+
+    @Test
+    void givesTheSameRouteEveryTime() {
+        double[] distances = distances(randomPoints(200, 3));
+        int[] first = RoutePlanner.solve(200, distances, 8);
+        for (int i = 0; i < 5; i++) {
+            assertArrayEquals(first, RoutePlanner.solve(200, distances, 8));
+        }
+    }
+
+    private static double[][] randomPoints(int n, long seed) {
+        Random random = new Random(seed);
+        double[][] points = new double[n][];
+        for (int i = 0; i < n; i++) {
+            points[i] = new double[] {random.nextDouble() * 100, random.nextDouble() * 100};
+        }
+        return points;
+    }
+
+    // The distances between points, with a last row and column of zeros for the extra stop
+    private static double[] distances(double[][] points) {
+        int size = points.length + 1;
+        double[] distances = new double[size * size];
+        for (int a = 0; a < points.length; a++) {
+            for (int b = 0; b < points.length; b++) {
+                distances[a * size + b] = Math.hypot(points[a][0] - points[b][0], points[a][1] - points[b][1]);
+            }
+        }
+        return distances;
+    }
+
+    private static double length(int[] path, double[] distances) {
+        int size = path.length + 1;
+        double length = 0;
+        for (int i = 1; i < path.length; i++) {
+            length += distances[path[i - 1] * size + path[i]];
+        }
+        return length;
+    }
+
+    private static int[] nearestNeighbour(int n, double[] distances, int start) {
+        int[] path = new int[n];
+        boolean[] visited = new boolean[n];
+        path[0] = start;
+        visited[start] = true;
+        for (int i = 1; i < n; i++) {
+            int next = -1;
+            for (int candidate = 0; candidate < n; candidate++) {
+                if (!visited[candidate] && (next < 0
+                        || distances[path[i - 1] * (n + 1) + candidate] < distances[path[i - 1] * (n + 1) + next])) {
+                    next = candidate;
+                }
+            }
+            path[i] = next;
+            visited[next] = true;
+        }
+        return path;
+    }
+
+    // Every path with one run of stops reversed, including runs at either end
+    private static List<int[]> twoOptMoves(int[] path) {
+        List<int[]> moves = new ArrayList<>();
+        for (int from = 0; from < path.length; from++) {
+            for (int to = from + 1; to < path.length; to++) {
+                int[] moved = path.clone();
+                for (int i = 0; i <= to - from; i++) {
+                    moved[from + i] = path[to - i];
+                }
+                moves.add(moved);
+            }
+        }
+        return moves;
+    }
+}
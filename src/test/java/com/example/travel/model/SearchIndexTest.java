@@ -0,0 +1,128 @@
+package com.example.travel.model;
+
+import com.example.travel.util.ConnectionPool;
+import com.example.travel.util.DatabaseUpdater;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Queries the search index built from a handful of saved records.
+ */
+class SearchIndexTest {
+    private static TravelRecord southRim;
+    private static TravelRecord chelly;
+    private static TravelRecord antelope;
+    private static TravelRecord library;
+    private static TravelRecord minster;
+    private static TravelRecord yosemite;
+
+    @BeforeAll
+    static void createRecords() throws SQLException {
+        ConnectionPool.configure("jdbc:h2:mem:search-index;DB_CLOSE_DELAY=-1", "sa", "", 4);
+        DatabaseUpdater.updateSchema();
+        southRim = save("Grand Canyon", "Grand Canyon Village", null, "Sunset at Mather Point");
+        chelly = save("Canyon de Chelly National Monument", "Chinle", null, "Spider Rock overlook on the south rim drive");
+        antelope = save("Antelope", "Page", null, "Slot canyon");
+        library = save("New York Public Library", "New York", "476 Fifth Avenue", null);
+        minster = save("York Minster", "York", "Deangate", "New roof in the south transept");
+        yosemite = save("Yosemite Valley", "Yosemite", null, "Granite walls");
+    }
+
+    @AfterAll
+    static void closePool() {
+        ConnectionPool.shutdown();
+    }
+
+    @Test
+    void ranksByWhereAndHowOftenTheWordAppears() throws SQLException {
+        // In the description and city; in the description of a long record; only in the notes of a short one
+        assertEquals(List.of(southRim.getId(), chelly.getId(), antelope.getId()), ids(SearchIndex.search("canyon ", 10)));
+    }
+
+    @Test
+    void limitsTheHits() throws SQLException {
+        assertEquals(List.of(southRim.getId()), ids(SearchIndex.search("canyon ", 1)));
+    }
+
+    @Test
+    void requiresEveryWord() throws SQLException {
+        assertEquals(List.of(chelly.getId()), ids(SearchIndex.search("canyon rock ", 10)));
+        assertEquals(List.of(), ids(SearchIndex.search("canyon york ", 10)));
+    }
+
+    @Test
+    void lastWordMatchesAsAPrefixWhileTyped() throws SQLException {
+        assertArrayEquals(sorted(southRim, yosemite), SearchIndex.matchingIds("gran"));
+        assertArrayEquals(new long[0], SearchIndex.matchingIds("gran "));
+        assertArrayEquals(sorted(southRim, yosemite), SearchIndex.matchingIds("gran* "));
+        assertArrayEquals(sorted(yosemite), SearchIndex.matchingIds("gran* walls"));
+    }
+
+    @Test
+    void phraseMatchesWordsTogetherAndInOrder() throws SQLException {
+        assertArrayEquals(sorted(library, minster), SearchIndex.matchingIds("new york "));
+        assertArrayEquals(sorted(library), SearchIndex.matchingIds("\"new york\""));
+        assertArrayEquals(sorted(library), SearchIndex.matchingIds("new-york "));
+        assertArrayEquals(new long[0], SearchIndex.matchingIds("\"york new\""));
+        // Words in different fields are not next to each other
+        assertArrayEquals(new long[0], SearchIndex.matchingIds("\"minster york\""));
+    }
+
+    @Test
+    void countsAndIdsAgree() throws SQLException {
+        assertEquals(3, SearchIndex.count("canyon "));
+        assertArrayEquals(sorted(southRim, chelly, antelope), SearchIndex.matchingIds("canyon "));
+        assertEquals(0, SearchIndex.count("   "));
+    }
+
+    @Test
+    void recordMatchesWithoutTheIndex() {
+        assertTrue(SearchIndex.matches("\"slot canyon\"", antelope));
+        assertTrue(SearchIndex.matches("gran", yosemite));
+        assertFalse(SearchIndex.matches("\"canyon slot\"", antelope));
+        assertFalse(SearchIndex.matches("york", southRim));
+    }
+
+    @Test
+    void followsSavesAndDeletes() throws SQLException {
+        TravelRecord record = save("Bryce Canyon", "Bryce", null, "Hoodoos");
+        assertArrayEquals(sorted(record), SearchIndex.matchingIds("hoodoos "));
+
+        record.setNotes("Navajo Loop");
+        record.save();
+        assertArrayEquals(new long[0], SearchIndex.matchingIds("hoodoos "));
+        assertArrayEquals(sorted(record), SearchIndex.matchingIds("navajo loop "));
+
+        record.delete();
+        assertArrayEquals(new long[0], SearchIndex.matchingIds("navajo "));
+        assertEquals(3, SearchIndex.count("canyon "));
+    }
+
+    private static TravelRecord save(String description, String city, String address, String notes) throws SQLException {
+        TravelRecord record = new TravelRecord();
+        record.setDescription(description);
+        record.setCity(city);
+        record.setAddress(address);
+        record.setNotes(notes);
+        record.save();
+        return record;
+    }
+
+    private static List<Long> ids(List<SearchIndex.Hit> hits) {
+        return hits.stream().map(SearchIndex.Hit::id).toList();
+    }
+
+    private static long[] sorted(TravelRecord... records) {
+        return Arrays.stream(records).mapToLong(TravelRecord::getId).sorted().toArray();
+    }
+}
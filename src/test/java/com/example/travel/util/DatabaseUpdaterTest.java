@@ -0,0 +1,173 @@
+package com.example.travel.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Migrates empty, current, tampered and unversioned databases, each test in a new in-memory database.
+ */
+class DatabaseUpdaterTest {
+    // The checksum recorded for each migration. A database that recorded one refuses to start if
+    // the migration's SQL no longer matches, so these must never change.
+    private static final Map<Integer, Long> CHECKSUMS = Map.of(
+            1, 3011395271L,
+            2, 2068108516L,
+            3, 3059725176L,
+            4, 4235088555L,
+            5, 1481451163L,
+            6, 1774230156L);
+
+    private static final AtomicInteger databases = new AtomicInteger();
+
+    @BeforeEach
+    void createDatabase() {
+        ConnectionPool.configure("jdbc:h2:mem:updater-" + databases.incrementAndGet() + ";DB_CLOSE_DELAY=-1", "sa", "", 2);
+    }
+
+    @AfterEach
+    void closePool() {
+        ConnectionPool.shutdown();
+    }
+
+    @Test
+    void recordsEveryMigrationWithItsChecksum() throws SQLException {
+        DatabaseUpdater.updateSchema();
+
+        assertEquals(CHECKSUMS, checksums());
+    }
+
+    @Test
+    void runsNothingOnACurrentDatabase() throws SQLException {
+        DatabaseUpdater.updateSchema();
+        List<List<Object>> recorded = rows("SELECT * FROM schema_version ORDER BY version");
+
+        DatabaseUpdater.updateSchema();
+        assertEquals(recorded, rows("SELECT * FROM schema_version ORDER BY version"));
+    }
+
+    @Test
+    void refusesAMigrationChangedSinceItRan() throws SQLException {
+        DatabaseUpdater.updateSchema();
+        execute("UPDATE schema_version SET checksum = checksum + 1 WHERE version = 3");
+
+        SQLException e = assertThrows(SQLException.class, DatabaseUpdater::updateSchema);
+        assertTrue(e.getMessage().startsWith("Migration 3 "), e.getMessage());
+    }
+
+    @Test
+    void refusesADatabaseFromANewerVersion() throws SQLException {
+        DatabaseUpdater.updateSchema();
+        execute("INSERT INTO schema_version (version, description, checksum, applied_at, execution_ms)"
+                + " VALUES (99, 'From the future', 0, CURRENT_TIMESTAMP, 0)");
+
+        SQLException e = assertThrows(SQLException.class, DatabaseUpdater::updateSchema);
+        assertTrue(e.getMessage().contains("newer"), e.getMessage());
+    }
+
+    @Test
+    void upgradesADatabaseCreatedBeforeVersioning() throws SQLException {
+        createLegacyDatabase();
+
+        DatabaseUpdater.updateSchema();
+
+        assertEquals(CHECKSUMS, checksums());
+        assertEquals(List.of(Arrays.asList("Grand Canyon", 36.0544, -112.1401), Arrays.asList("Zion", null, null)),
+                rows("SELECT description, latitude, longitude FROM travel_records ORDER BY id"));
+        assertEquals(2L, single("SELECT COUNT(*) FROM pictures"));
+        assertEquals(0L, single("SELECT COUNT(*) FROM travel_records WHERE picture_hash IS NULL"));
+        assertEquals(0L, single("SELECT COUNT(*) FROM INFORMATION_SCHEMA.COLUMNS"
+                + " WHERE TABLE_NAME = 'TRAVEL_RECORDS' AND COLUMN_NAME IN ('PICTURE', 'PICTURE2', 'PICTURE3')"));
+    }
+
+    @Test
+    void rollsBackAFailedMigrationAndRunsItAgainNextTime() throws SQLException {
+        createLegacyDatabase();
+        // Only the first record's picture fits, so moving the pictures fails after the first is moved
+        execute("CREATE TABLE pictures (hash CHAR(64) PRIMARY KEY, data BLOB NOT NULL, size BIGINT NOT NULL,"
+                + " CONSTRAINT small_pictures CHECK (size < 100))");
+
+        assertThrows(SQLException.class, DatabaseUpdater::updateSchema);
+        assertEquals(List.of(1, 2, 3), new ArrayList<>(checksums().keySet()));
+        assertEquals(0L, single("SELECT COUNT(*) FROM pictures"));
+        assertEquals(2L, single("SELECT COUNT(*) FROM travel_records WHERE picture IS NOT NULL AND picture_hash IS NULL"));
+
+        execute("ALTER TABLE pictures DROP CONSTRAINT small_pictures");
+        DatabaseUpdater.updateSchema();
+        assertEquals(CHECKSUMS, checksums());
+        assertEquals(2L, single("SELECT COUNT(*) FROM pictures"));
+    }
+
+    // The table as the application created it before migrations were recorded, with a small and a large picture
+    private static void createLegacyDatabase() throws SQLException {
+        execute("CREATE TABLE travel_records (id BIGINT PRIMARY KEY AUTO_INCREMENT, description VARCHAR(255) UNIQUE NOT NULL,"
+                + " url VARCHAR(1024), state VARCHAR(255), city VARCHAR(255), address VARCHAR(255), zip VARCHAR(10),"
+                + " geo VARCHAR(255), picture BLOB, notes TEXT, date_created TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,"
+                + " date_updated TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP)");
+        try (Connection conn = ConnectionPool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("INSERT INTO travel_records (description, geo, picture) VALUES (?, ?, ?)")) {
+            stmt.setString(1, "Grand Canyon");
+            stmt.setString(2, "36.0544, -112.1401");
+            stmt.setBytes(3, new byte[10]);
+            stmt.executeUpdate();
+            stmt.setString(1, "Zion");
+            stmt.setString(2, null);
+            stmt.setBytes(3, new byte[1000]);
+            stmt.executeUpdate();
+        }
+    }
+
+    private static Map<Integer, Long> checksums() throws SQLException {
+        Map<Integer, Long> checksums = new LinkedHashMap<>();
+        for (List<Object> row : rows("SELECT version, checksum FROM schema_version ORDER BY version")) {
+            checksums.put((Integer) row.get(0), (Long) row.get(1));
+        }
+        return checksums;
+    }
+
+    private static void execute(String sql) throws SQLException {
+        try (Connection conn = ConnectionPool.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    private static Object single(String sql) throws SQLException {
+        List<List<Object>> rows = rows(sql);
+        assertEquals(1, rows.size());
+        return rows.get(0).get(0);
+    }
+
+    private static List<List<Object>> rows(String sql) throws SQLException {
+        List<List<Object>> rows = new ArrayList<>();
+        try (Connection conn = ConnectionPool.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            int columns = rs.getMetaData().getColumnCount();
+            while (rs.next()) {
+                List<Object> row = new ArrayList<>();
+                for (int i = 1; i <= columns; i++) {
+                    row.add(rs.getObject(i));
+                }
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+}